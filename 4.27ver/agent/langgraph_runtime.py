@@ -1,8 +1,15 @@
+import copy
+import threading
 from typing import Dict, Any
 from agent.main_graph import create_main_graph
 from agent.state import TripState
 from agent.context_manager import TripContextManager
 
+
+class ChatCancelled(Exception):
+    """客户端已取消或用新请求取代了本次请求"""
+
+
 class LangGraphApp:
     """LangGraph应用程序运行时"""
     
@@ -12,6 +19,8 @@ class LangGraphApp:
         self.state = self._initialize_state()
         self.context_manager = context_manager
         self.initialized = False  # 添加初始化标志
+        # 同一会话的请求逐个处理：取消时的恢复会整体替换 state 和 context_manager 的内容
+        self._turn_lock = threading.Lock()
     
     def _initialize_state(self) -> TripState:
         """初始化状态"""
@@ -48,26 +57,62 @@ class LangGraphApp:
             
         return result
     
-    def process_input(self, user_input: str) -> str:
-        """处理用户输入并返回响应"""
+    def process_input(self, user_input: str, cancel_event=None) -> str:
+        """
+        处理用户输入并返回响应
+
+        同一会话上的调用逐个执行，后到的请求等前一个完成或回滚后才开始。
+        cancel_event 被设置时在图的下一步之前抛出 ChatCancelled，
+        不再为没有人接收的回答继续调用模型。
+        图的节点会原地修改对话历史和 context_manager 中的推荐列表、流程状态，
+        取消时整体恢复到本次请求之前的快照；本轮的用户和助手消息只在完整处理后才记入上下文
+        """
         # 检查是否已初始化行程
         if not self.initialized:
             return "请先设置行程ID，再进行其他操作。"
-        
+
+        with self._turn_lock:
+            return self._process_turn(user_input, cancel_event)
+
+    def _process_turn(self, user_input: str, cancel_event) -> str:
+        # 等待前一个请求期间已被取代的，不再开始
+        if cancel_event is not None and cancel_event.is_set():
+            raise ChatCancelled()
+
+        saved_state = copy.deepcopy(self.state)
+        saved_context = copy.deepcopy(self.context_manager.__dict__)
+
         # 更新状态
         self.state = {
             **self.state,
             "user_input": user_input,
             "completed": False
         }
-        
-        # 添加到上下文管理器
-        self.context_manager.add_message("user", user_input)
-        # 调用图
-        result = self.graph.invoke(self.state)
-        
+
+        try:
+            # 逐步执行图，每一步之间检查请求是否已被取消
+            result = self.state
+            for result in self.graph.stream(self.state, stream_mode="values"):
+                if cancel_event is not None and cancel_event.is_set():
+                    raise ChatCancelled()
+            # 最后一步之后才取消的，回答同样不会被接收
+            if cancel_event is not None and cancel_event.is_set():
+                raise ChatCancelled()
+        except ChatCancelled:
+            self.state = saved_state
+            # 节点通过 AppContext 持有同一个 context_manager，只替换其内容而不替换对象
+            self.context_manager.__dict__.clear()
+            self.context_manager.__dict__.update(saved_context)
+            raise
+
         # 更新状态
         self.state = result
-        
+
+        # 添加到上下文管理器
+        response = result["response"]
+        self.context_manager.add_message("user", user_input)
+        self.context_manager.add_message(
+            "assistant", response.get("response", "") if isinstance(response, dict) else response)
+
         # 返回响应
-        return result["response"]
+        return response
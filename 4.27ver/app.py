@@ -1,9 +1,15 @@
-from flask import Flask, request, jsonify
+from flask import Flask, Response, request, jsonify
 from main import process_message, clear_session, clear_all_sessions
+from agent.langgraph_runtime import ChatCancelled
+from utils.itinerary_codec import COLUMNAR_CONTENT_TYPE, apply_delta, decode_payload
+from utils import sse
 import sqlite3
 import logging
 import json
+import threading
+import time
 import traceback
+from collections import OrderedDict
 from flask_cors import CORS
 
 app = Flask(__name__)
@@ -14,6 +20,182 @@ logging.basicConfig(level=logging.INFO,
                    format='%(asctime)s - %(name)s - %(levelname)s - %(message)s')
 logger = logging.getLogger(__name__)
 
+# 客户端增量同步的行程快照：trip_id -> {'version': 版本号, 'data': itinerary_data}
+itinerary_snapshots = {}
+
+# 正在处理的聊天请求：trip_id -> {'request_id', 'cancel': 取消信号, 'done': 处理结束信号}
+active_chat_requests = {}
+chat_requests_lock = threading.Lock()
+
+# 已完成的聊天请求：幂等键 -> 响应内容，客户端重试同一条消息时直接返回，不再让会话重复处理
+completed_chat_responses = OrderedDict()
+MAX_COMPLETED_CHAT_RESPONSES = 200
+
+# 客户端已断开或取消时返回的状态码
+HTTP_CLIENT_CLOSED_REQUEST = 499
+
+# 流式响应等待模型期间发送保持连接注释的间隔（秒），需小于客户端的读超时
+SSE_KEEPALIVE_SECONDS = 10
+
+
+def begin_chat_request(trip_id, request_id, timeout=30):
+    """
+    登记新的聊天请求；同一行程上仍在处理的旧请求被它取代并收到取消信号。
+
+    旧请求和新请求共用同一个会话实例，先等旧请求在下一步检查到取消、恢复会话状态并结束，
+    再登记新请求，避免两次处理同时修改会话。超时后仍然登记，由会话自身的锁保证串行
+    """
+    entry = {'request_id': request_id, 'cancel': threading.Event(), 'done': threading.Event()}
+    deadline = time.monotonic() + timeout
+    while True:
+        with chat_requests_lock:
+            previous = active_chat_requests.get(trip_id)
+            if not previous:
+                active_chat_requests[trip_id] = entry
+                return entry
+            logger.info(f"行程 {trip_id} 的请求 {previous['request_id']} 被新请求 {request_id} 取代")
+            previous['cancel'].set()
+        remaining = deadline - time.monotonic()
+        if remaining <= 0 or not previous['done'].wait(remaining):
+            logger.warning(f"行程 {trip_id} 的请求 {previous['request_id']} 未在 {timeout} 秒内结束")
+            with chat_requests_lock:
+                active_chat_requests[trip_id] = entry
+            return entry
+
+
+def wait_for_same_request(trip_id, request_id, timeout=120):
+    """
+    客户端连接断开后重试时，同一个请求的上一次尝试可能仍在处理；
+    等它结束并返回它的结果，而不是取消后重新执行一遍
+    """
+    if not request_id:
+        return None
+    with chat_requests_lock:
+        current = active_chat_requests.get(trip_id)
+    if not current or current['request_id'] != request_id:
+        return None
+    logger.info(f"请求 {request_id} 正在处理中，等待上一次尝试完成")
+    current['done'].wait(timeout)
+    return find_chat_response(request_id)
+
+
+def find_chat_response(idempotency_key):
+    if not idempotency_key:
+        return None
+    with chat_requests_lock:
+        return completed_chat_responses.get(idempotency_key)
+
+
+def remember_chat_response(idempotency_key, payload):
+    if not idempotency_key:
+        return
+    with chat_requests_lock:
+        completed_chat_responses[idempotency_key] = payload
+        completed_chat_responses.move_to_end(idempotency_key)
+        while len(completed_chat_responses) > MAX_COMPLETED_CHAT_RESPONSES:
+            completed_chat_responses.popitem(last=False)
+
+
+def end_chat_request(trip_id, entry):
+    with chat_requests_lock:
+        if active_chat_requests.get(trip_id) is entry:
+            del active_chat_requests[trip_id]
+    entry['done'].set()
+
+
+def resolve_itinerary_data(data):
+    """
+    根据请求中的 itinerary_data / itinerary_ref / itinerary_delta 还原完整行程数据。
+
+    返回 (itinerary_data, version)；客户端引用的基础版本不存在时返回 (None, None)，
+    此时应返回409让客户端重新发送完整快照。
+    以列式编码发送的景点列表先还原为普通格式。
+    """
+    if request.mimetype == COLUMNAR_CONTENT_TYPE:
+        decode_payload(data)
+
+    if data.get('itinerary_data'):
+        itinerary_data = data['itinerary_data']
+        version = data.get('itinerary_version')
+        if version:
+            itinerary_snapshots[str(itinerary_data.get('itinerary_id'))] = {'version': version, 'data': itinerary_data}
+        return itinerary_data, version
+
+    ref = data.get('itinerary_ref') or data.get('itinerary_delta')
+    if not ref:
+        return None, None
+
+    trip_id = str(ref.get('itinerary_id'))
+    snapshot = itinerary_snapshots.get(trip_id)
+    if not snapshot or snapshot['version'] != ref.get('base_version'):
+        logger.info(f"行程 {trip_id} 的基础版本不存在，要求客户端发送完整快照")
+        return None, None
+
+    if 'itinerary_ref' in data:
+        return snapshot['data'], snapshot['version']
+
+    # 在基础版本上应用增量
+    delta = data['itinerary_delta']
+    itinerary_data = apply_delta(snapshot['data'], delta)
+
+    version = delta.get('version')
+    itinerary_snapshots[trip_id] = {'version': version, 'data': itinerary_data}
+    return itinerary_data, version
+
+
+def wants_event_stream():
+    """客户端在 Accept 中声明接受 text/event-stream 时以 SSE 返回回复"""
+    return 'text/event-stream' in request.headers.get('Accept', '')
+
+
+def build_chat_payload(response, itinerary_version):
+    """把 process_message 的返回值整理为 /chat 的响应内容"""
+    # 检查response是否是字典类型（新格式）
+    if isinstance(response, dict):
+        logger.info(f"AI 返回了数据: {str(response)[:100]}...")
+        return {
+            'success': True,
+            'response': response.get('message', '处理完成'),
+            'data': response.get('data'),
+            'data_type': response.get('data_type'),
+            'itinerary_version': itinerary_version
+        }
+    # 处理旧格式（字符串）响应
+    logger.info(f"AI 响应: {response[:100]}...")
+    return {
+        'success': True,
+        'response': response,
+        'data': None,
+        'data_type': None,
+        'itinerary_version': itinerary_version
+    }
+
+
+def stream_chat(run, cancel_event, trip_id, idempotency_key):
+    """
+    以 SSE 返回一次聊天：会话处理期间定期发送保持连接的注释，完成后把回复文本分段作为 token 事件发送，
+    最后发送 done 事件和 [DONE]。客户端中途断开时取消会话处理。
+    响应头已经发出，处理失败或被取消时改为发送 error 事件
+    """
+    for item in sse.run_with_keepalive(run, SSE_KEEPALIVE_SECONDS, cancel_event):
+        if isinstance(item, str):
+            yield item
+            continue
+        if isinstance(item.error, ChatCancelled):
+            logger.info(f"行程 {trip_id} 的请求 {idempotency_key} 已取消")
+            yield sse.event({'error': '请求已取消', 'cancelled': True}, 'error')
+            return
+        if item.error is not None:
+            logger.error(f"流式处理请求时出错: {item.error}", exc_info=item.error)
+            yield sse.event({'error': str(item.error)}, 'error')
+            return
+        payload = item.value
+        yield from sse.text_events(payload['response'])
+        yield sse.event({'data_type': payload['data_type'],
+                         'itinerary_version': payload['itinerary_version']}, 'done')
+        yield sse.DONE
+
+
 @app.route('/chat', methods=['POST'])
 def chat():
     try:
@@ -35,8 +217,18 @@ def chat():
         if not message:
             logger.warning("消息内容为空")
             return jsonify({'error': '消息内容不能为空'}), 400
-        
-        itinerary_data = data.get('itinerary_data')
+
+        # 客户端重试已经处理过的消息时直接返回上次的结果
+        idempotency_key = request.headers.get('Idempotency-Key') or data.get('request_id')
+        completed = find_chat_response(idempotency_key)
+        if completed is not None:
+            logger.info(f"请求 {idempotency_key} 已处理过，返回已有结果")
+            return jsonify(completed)
+        
+        has_itinerary = any(data.get(key) for key in ('itinerary_data', 'itinerary_ref', 'itinerary_delta'))
+        itinerary_data, itinerary_version = resolve_itinerary_data(data)
+        if has_itinerary and itinerary_data is None:
+            return jsonify({'error': '行程版本不存在，请发送完整行程', 'sync': 'miss'}), 409
         
         logger.info(f"请求参数: message={message}")
         if itinerary_data:
@@ -46,28 +238,34 @@ def chat():
             return jsonify({'response': '抱歉，请提供行程信息或行程ID'}), 400
 
         logger.info("调用 AI 处理函数")
-        # 将itinerary_data传递给AI处理函数
-        response = process_message(message, itinerary_data)
-        
-        # 检查response是否是字典类型（新格式）
-        if isinstance(response, dict):
-            logger.info(f"AI 返回了数据: {str(response)[:100]}...")
-            return jsonify({
-                'success': True,
-                'response': response.get('message', '处理完成'),
-                'data': response.get('data'),
-                'data_type': response.get('data_type')
-            })
-            
-        else:
-            # 处理旧格式（字符串）响应
-            logger.info(f"AI 响应: {response[:100]}...")
-            return jsonify({
-                'success': True,
-                'response': response,
-                'data': None,
-                'data_type': None
-            })
+        # 将itinerary_data传递给AI处理函数，请求被取消时尽早停止调用模型
+        trip_id = str(itinerary_data.get('itinerary_id'))
+        completed = wait_for_same_request(trip_id, idempotency_key)
+        if completed is not None:
+            return jsonify(completed)
+        chat_request = begin_chat_request(trip_id, idempotency_key)
+
+        def run():
+            # 先记下结果再结束登记，等待同一请求的重试在结束信号之后一定能取到结果
+            try:
+                response = process_message(message, itinerary_data, chat_request['cancel'])
+                payload = build_chat_payload(response, itinerary_version)
+                remember_chat_response(idempotency_key, payload)
+                return payload
+            finally:
+                end_chat_request(trip_id, chat_request)
+
+        if wants_event_stream():
+            return Response(stream_chat(run, chat_request['cancel'], trip_id, idempotency_key),
+                            mimetype='text/event-stream',
+                            headers={'Cache-Control': 'no-cache', 'X-Accel-Buffering': 'no'})
+
+        try:
+            payload = run()
+        except ChatCancelled:
+            logger.info(f"行程 {trip_id} 的请求 {idempotency_key} 已取消")
+            return jsonify({'error': '请求已取消', 'cancelled': True}), HTTP_CLIENT_CLOSED_REQUEST
+        return jsonify(payload)
             
     except json.JSONDecodeError as e:
         logger.error(f"JSON解析错误: {str(e)}")
@@ -292,6 +490,205 @@ def refresh_recommendations():
         logger.error(f"错误详情: {error_traceback}")
         return jsonify({'success': False, 'error': str(e)}), 500
 
+# 默认的餐厅偏好，与 get_res_preference 在用户未提任何偏好时的输出一致
+DEFAULT_RES_PREFERENCES = {
+    'budget': None,
+    'cuisine_preference': '美食',
+    'special_requirement': None,
+    'rating': 'default'
+}
+
+
+def _coordinates(attraction):
+    if attraction and attraction.get('latitude') is not None and attraction.get('longitude') is not None:
+        return [attraction['latitude'], attraction['longitude']]
+    return None
+
+
+def build_meal_slot_target(itinerary_data, day, order):
+    """
+    按 (day, order) 找到行程中的餐厅及其前后景点，构造 generate_res_recommendation 需要的 target_info；
+    找不到该位置时返回 None
+    """
+    same_day = sorted((a for a in itinerary_data.get('attractions', []) if int(a.get('day', 0)) == day),
+                      key=lambda a: int(a.get('order', 0)))
+    target = prev_poi = next_poi = None
+    for attraction in same_day:
+        visit_order = int(attraction.get('order', 0))
+        if visit_order < order:
+            prev_poi = attraction
+        elif visit_order == order:
+            target = attraction
+        elif next_poi is None:
+            next_poi = attraction
+    if target is None:
+        return None
+
+    target_info = {
+        'res_info': {'poi_type': '餐厅', 'name': target.get('name')},
+        'day_info': {'day': day, 'order': order}
+    }
+    if _coordinates(target):
+        target_info['res_info']['coordinates'] = _coordinates(target)
+    for key, poi in (('prev_poi', prev_poi), ('next_poi', next_poi)):
+        if _coordinates(poi):
+            target_info[key] = {'name': poi.get('name'), 'coordinates': _coordinates(poi)}
+    return target_info
+
+
+# 新增API：单个用餐时段的餐厅推荐
+# 不经过会话，同一行程的多个时段可以并发请求，客户端据此把“全程餐厅推荐”拆成按时段并行的子请求
+@app.route('/recommend_meal_slot', methods=['POST'])
+def recommend_meal_slot():
+    try:
+        data = request.get_json(silent=True)
+        if not data:
+            return jsonify({'success': False, 'error': '请求必须是JSON格式'}), 400
+
+        day = data.get('day')
+        order = data.get('order')
+        if day is None or order is None:
+            return jsonify({'success': False, 'error': '缺少必要参数day或order'}), 400
+
+        itinerary_data, itinerary_version = resolve_itinerary_data(data)
+        if itinerary_data is None:
+            return jsonify({'success': False, 'error': '行程版本不存在，请发送完整行程', 'sync': 'miss'}), 409
+
+        target_info = build_meal_slot_target(itinerary_data, int(day), int(order))
+        if target_info is None:
+            return jsonify({'success': False, 'error': f'第{day}天第{order}个位置不存在'}), 404
+
+        logger.info(f"为第{day}天第{order}个位置推荐餐厅: {target_info['res_info'].get('name')}")
+        from travel_tools.recommendRestaurant import generate_res_recommendation
+        recommendations = generate_res_recommendation(target_info, dict(DEFAULT_RES_PREFERENCES))
+        if not isinstance(recommendations, list):
+            # 坐标不足或没有候选时返回的是提示文本
+            logger.info(f"第{day}天第{order}个位置没有推荐结果: {recommendations}")
+            recommendations = []
+
+        return jsonify({
+            'success': True,
+            'data_type': 'restaurant_recommendations',
+            'day_info': target_info['day_info'],
+            'recommendations': recommendations,
+            'itinerary_version': itinerary_version
+        })
+
+    except Exception as e:
+        logger.error(f"处理用餐时段推荐请求时出错: {str(e)}", exc_info=True)
+        return jsonify({'success': False, 'error': str(e)}), 500
+
+# 按天推荐时每天返回的候选数和搜索半径（公里）
+DAY_POI_CANDIDATES = 5
+DAY_POI_RADIUS_KM = 5
+
+
+def _rating(poi):
+    try:
+        return float(poi.get('rating'))
+    except (TypeError, ValueError):
+        return 0.0
+
+
+def build_day_poi_center(itinerary_data, day):
+    """
+    取第 day 天非餐厅景点坐标的中心作为搜索中心；
+    返回 (center, 当天已有的最大顺序号, 行程中已有的景点名集合)，当天没有带坐标的景点时 center 为 None
+    """
+    attractions = itinerary_data.get('attractions', [])
+    same_day = [a for a in attractions if int(a.get('day', 0)) == day]
+    points = [_coordinates(a) for a in same_day if a.get('type') != '餐厅' and _coordinates(a)]
+    last_order = max((int(a.get('order', 0)) for a in same_day), default=0)
+    existing = {a.get('name') for a in attractions}
+    if not points:
+        return None, last_order, existing
+    center = [sum(p[0] for p in points) / len(points), sum(p[1] for p in points) / len(points)]
+    return center, last_order, existing
+
+
+def select_day_pois(searched_pois, existing_names, day, last_order, limit=DAY_POI_CANDIDATES):
+    """去掉行程中已有的景点，按评分取前 limit 个，转换成客户端 poi_recommendations 的格式，位置为当天末尾"""
+    candidates = [poi for poi in searched_pois if poi.get('name') not in existing_names and poi.get('coordinates')]
+    candidates.sort(key=_rating, reverse=True)
+    recommendations = []
+    for poi in candidates[:limit]:
+        reason = f"靠近第{day}天的行程"
+        try:
+            reason += f"，距当天景点中心约{float(poi.get('distance')) / 1000:.1f}公里"
+        except (TypeError, ValueError):
+            pass
+        if _rating(poi) > 0:
+            reason += f"，评分{poi['rating']}"
+        recommendations.append({
+            'uid': poi.get('poi_id', ''),
+            'name': poi.get('name', ''),
+            'type': poi.get('type', ''),
+            'rating': poi.get('rating', ''),
+            'address': poi.get('address', ''),
+            'tel': poi.get('tel', '无电话'),
+            'opentime_week': poi.get('opentime_week', '无营业时间'),
+            'lat': poi['coordinates'][0],
+            'lng': poi['coordinates'][1],
+            'recommendation_reason': reason,
+            'day': day,
+            'order': last_order + 1
+        })
+    return recommendations
+
+
+# 新增API：单日的景点推荐
+# 与 /recommend_meal_slot 一样不经过会话，客户端把“每天推荐景点”拆成按天并行的子请求
+@app.route('/recommend_day_pois', methods=['POST'])
+def recommend_day_pois():
+    try:
+        data = request.get_json(silent=True)
+        if not data:
+            return jsonify({'success': False, 'error': '请求必须是JSON格式'}), 400
+
+        day = data.get('day')
+        if day is None:
+            return jsonify({'success': False, 'error': '缺少必要参数day'}), 400
+        day = int(day)
+
+        itinerary_data, itinerary_version = resolve_itinerary_data(data)
+        if itinerary_data is None:
+            return jsonify({'success': False, 'error': '行程版本不存在，请发送完整行程', 'sync': 'miss'}), 409
+
+        center, last_order, existing = build_day_poi_center(itinerary_data, day)
+        recommendations = []
+        if center is None:
+            logger.info(f"第{day}天没有带坐标的景点，无法推荐")
+        else:
+            from travel_tools.schedule import search_pois_by_center
+            searched = search_pois_by_center(center, radius=DAY_POI_RADIUS_KM)
+            recommendations = select_day_pois(searched, existing, day, last_order)
+            logger.info(f"第{day}天推荐景点 {len(recommendations)} 个")
+
+        return jsonify({
+            'success': True,
+            'data_type': 'poi_recommendations',
+            'recommendations': recommendations,
+            'itinerary_version': itinerary_version
+        })
+
+    except Exception as e:
+        logger.error(f"处理单日景点推荐请求时出错: {str(e)}", exc_info=True)
+        return jsonify({'success': False, 'error': str(e)}), 500
+
+# 新增API：只同步行程，不做其他处理
+# 客户端在并发的子请求之前先同步一次，子请求随后只带 itinerary_ref；
+# 否则每个子请求都带着同一份增量，第一个应用后其余的基础版本都已过期，只能重发完整快照
+@app.route('/sync_itinerary', methods=['POST'])
+def sync_itinerary():
+    data = request.get_json(silent=True)
+    if not data:
+        return jsonify({'success': False, 'error': '请求必须是JSON格式'}), 400
+
+    itinerary_data, itinerary_version = resolve_itinerary_data(data)
+    if itinerary_data is None:
+        return jsonify({'success': False, 'error': '行程版本不存在，请发送完整行程', 'sync': 'miss'}), 409
+    return jsonify({'success': True, 'itinerary_version': itinerary_version})
+
 # 修改确认餐厅推荐API
 @app.route('/confirm_recommendation', methods=['POST'])
 def confirm_recommendation():
@@ -466,6 +863,24 @@ def test():
 def health():
     return jsonify({'status': 'healthy', 'version': '1.0.0'})
 
+# 客户端取消进行中的聊天请求；request_id 为空时取消该行程当前的请求
+@app.route('/cancel_chat', methods=['POST'])
+def cancel_chat():
+    data = request.get_json(silent=True) or {}
+    if 'trip_id' not in data:
+        return jsonify({'error': '必须提供trip_id参数'}), 400
+
+    trip_id = str(data['trip_id'])
+    request_id = data.get('request_id')
+    cancelled = False
+    with chat_requests_lock:
+        current = active_chat_requests.get(trip_id)
+        if current and (not request_id or current['request_id'] == request_id):
+            current['cancel'].set()
+            cancelled = True
+    logger.info(f"取消行程 {trip_id} 的请求 {request_id}: {cancelled}")
+    return jsonify({'cancelled': cancelled})
+
 # 添加清除会话的API接口，在test路由之前
 @app.route('/clear_session', methods=['POST'])
 def api_clear_session():
@@ -475,6 +890,7 @@ def api_clear_session():
             return jsonify({'error': '必须提供trip_id参数'}), 400
         
         trip_id = data['trip_id']
+        itinerary_snapshots.pop(str(trip_id), None)
         result = clear_session(trip_id)
         logger.info(f"清除会话结果: {result}")
         return jsonify({'result': result})
@@ -485,6 +901,7 @@ def api_clear_session():
 @app.route('/clear_all_sessions', methods=['POST'])
 def api_clear_all_sessions():
     try:
+        itinerary_snapshots.clear()
         result = clear_all_sessions()
         logger.info(f"清除所有会话结果: {result}")
         return jsonify({'result': result})
@@ -13,7 +13,7 @@ logger = logging.getLogger(__name__)
 # 添加全局会话管理
 active_sessions = {}  # 存储活跃的会话，键为trip_id，值为LangGraphApp实例
 
-def process_message(message, itinerary_info: dict) -> str:
+def process_message(message, itinerary_info: dict, cancel_event=None) -> str:
     """
     Flask 调用的消息处理接口，
     将单次用户输入和行程信息转成 TripContextManager 需要的格式并驱动 LangGraphApp.
@@ -21,6 +21,7 @@ def process_message(message, itinerary_info: dict) -> str:
     参数:
     - message: 用户输入的消息
     - itinerary_info: 行程信息，可能来自Android客户端或数据库
+    - cancel_event: 可选的 threading.Event，被设置后停止处理并抛出 ChatCancelled
     
     返回:
     - 如果是普通响应，返回字符串
@@ -50,7 +51,7 @@ def process_message(message, itinerary_info: dict) -> str:
             logger.warning(f"⚠️ 无法获取行程数据，请检查行程ID: {trip_id}")
         
         # 处理用户输入
-        response = app.process_input(message)
+        response = app.process_input(message, cancel_event)
         print(f"处理后的响应: {response}")
         # 检查是否有更新的行程数据或其他类型的数据
         if isinstance(response, dict):
@@ -214,7 +215,7 @@ def process_message(message, itinerary_info: dict) -> str:
     active_sessions[trip_id] = app
     
     # 4. 处理用户输入
-    response = app.process_input(message)
+    response = app.process_input(message, cancel_event)
     
     # 检查是否有更新的行程数据或其他类型的数据
     if isinstance(response, dict):
@@ -0,0 +1,135 @@
+import importlib
+import sys
+import threading
+import time
+import types
+import unittest
+from unittest import mock
+
+from agent.context_manager import TripContextManager
+
+
+class FakeGraph:
+    """像真实节点一样原地修改对话历史和 context_manager，每一步之间可以被取消"""
+
+    def __init__(self, context_manager, steps=3, on_step=None):
+        self.context_manager = context_manager
+        self.steps = steps
+        self.on_step = on_step
+
+    def stream(self, state, stream_mode=None):
+        for step in range(self.steps):
+            state["conversation_history"].append({"role": "assistant", "content": f"第{step}步"})
+            self.context_manager.attraction_flow.current_recommendations.append({"name": f"推荐{step}"})
+            self.context_manager.update_city("北京")
+            if self.on_step:
+                self.on_step(step)
+            yield {**state, "response": "为您推荐以下景点"}
+
+
+def load_runtime():
+    """替换依赖 langgraph/pydantic 的模块后导入运行时"""
+    graph_stub = types.ModuleType('agent.main_graph')
+    graph_stub.create_main_graph = lambda: None
+    state_stub = types.ModuleType('agent.state')
+    state_stub.TripState = dict
+    with mock.patch.dict(sys.modules, {'agent.main_graph': graph_stub, 'agent.state': state_stub}):
+        sys.modules.pop('agent.langgraph_runtime', None)
+        module = importlib.import_module('agent.langgraph_runtime')
+    sys.modules.pop('agent.langgraph_runtime', None)
+    return module
+
+
+class TestCancelRollback(unittest.TestCase):
+    def setUp(self):
+        self.runtime = load_runtime()
+        self.cm = TripContextManager({"travel_itineraries": [{"metadata": {"trip_id": "1", "days": 1}, "days": []}]})
+        self.cm.add_message("user", "上一轮")
+        self.app = self.runtime.LangGraphApp("test", self.cm)
+        self.app.initialized = True
+
+    def test_completed_turn_records_both_messages(self):
+        self.app.graph = FakeGraph(self.cm)
+        self.assertEqual("为您推荐以下景点", self.app.process_input("推荐景点"))
+        self.assertEqual(["上一轮", "推荐景点", "为您推荐以下景点"],
+                         [m["content"] for m in self.cm.conversation_history])
+        self.assertEqual(["user", "user", "assistant"], [m["role"] for m in self.cm.conversation_history])
+
+    def test_cancel_restores_state_and_context(self):
+        cancel = threading.Event()
+        self.app.graph = FakeGraph(self.cm, on_step=lambda step: step == 1 and cancel.set())
+        state_before = self.app.state
+        history_before = list(state_before["conversation_history"])
+
+        with self.assertRaises(self.runtime.ChatCancelled):
+            self.app.process_input("推荐景点", cancel)
+
+        self.assertEqual(history_before, self.app.state["conversation_history"])
+        self.assertEqual("", self.app.state["user_input"])
+        self.assertEqual(["上一轮"], [m["content"] for m in self.cm.conversation_history])
+        self.assertEqual([], self.cm.attraction_flow.current_recommendations)
+        self.assertIsNone(self.cm.current_city)
+
+    def test_cancel_after_last_step_is_rolled_back(self):
+        cancel = threading.Event()
+        self.app.graph = FakeGraph(self.cm, steps=1, on_step=lambda step: cancel.set())
+
+        with self.assertRaises(self.runtime.ChatCancelled):
+            self.app.process_input("推荐景点", cancel)
+        self.assertEqual(1, len(self.cm.conversation_history))
+
+    def test_turn_after_cancel_starts_from_clean_state(self):
+        cancel = threading.Event()
+        cancel.set()
+        self.app.graph = FakeGraph(self.cm)
+        with self.assertRaises(self.runtime.ChatCancelled):
+            self.app.process_input("推荐景点", cancel)
+
+        self.app.process_input("推荐景点")
+        self.assertEqual(3, len(self.cm.attraction_flow.current_recommendations))
+        self.assertEqual(3, len(self.app.state["conversation_history"]))
+
+    def test_overlapping_turns_do_not_corrupt_each_other(self):
+        first_running = threading.Event()
+        release_first = threading.Event()
+        cancel_first = threading.Event()
+
+        def on_step(step):
+            if step == 0 and self.app.state["user_input"] == "第一轮":
+                first_running.set()
+                release_first.wait(2)
+        self.app.graph = FakeGraph(self.cm, on_step=on_step)
+
+        first_errors = []
+
+        def first_turn():
+            try:
+                self.app.process_input("第一轮", cancel_first)
+            except self.runtime.ChatCancelled as e:
+                first_errors.append(e)
+
+        first = threading.Thread(target=first_turn)
+        first.start()
+        self.assertTrue(first_running.wait(2))
+
+        # 新请求取代第一轮：取消第一轮并马上开始第二轮
+        cancel_first.set()
+        second_results = []
+        second = threading.Thread(target=lambda: second_results.append(self.app.process_input("第二轮")))
+        second.start()
+        # 第二轮若此时已经开始，第一轮随后恢复快照会抹掉它的结果
+        time.sleep(0.1)
+        release_first.set()
+        first.join(2)
+        second.join(2)
+
+        self.assertEqual(1, len(first_errors))
+        self.assertEqual(["为您推荐以下景点"], second_results)
+        self.assertEqual("第二轮", self.app.state["user_input"])
+        self.assertEqual(3, len(self.cm.attraction_flow.current_recommendations))
+        self.assertEqual(["上一轮", "第二轮", "为您推荐以下景点"],
+                         [m["content"] for m in self.cm.conversation_history])
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,165 @@
+import importlib
+import json
+import sys
+import threading
+import time
+import types
+import unittest
+from unittest import mock
+
+from utils import sse
+
+try:
+    import flask  # noqa: F401
+    HAS_FLASK = True
+except ImportError:
+    HAS_FLASK = False
+
+
+REPLY = "为您推荐以下餐厅，点击卡片查看详情。" + '\n<!--JSON_DATA:{"data_type": "restaurant_recommendations", "data": []}-->'
+
+
+def parse_events(chunks):
+    """把 SSE 文本拆成 (event 名, data) 列表，忽略保持连接的注释"""
+    events = []
+    for block in "".join(chunks).split("\n\n"):
+        name, data = None, []
+        for line in block.split("\n"):
+            if line.startswith("event: "):
+                name = line[len("event: "):]
+            elif line.startswith("data: "):
+                data.append(line[len("data: "):])
+        if data:
+            events.append((name, "\n".join(data)))
+    return events
+
+
+def tokens_of(events):
+    return "".join(json.loads(data).get('token', '') for name, data in events
+                   if name is None and data != '[DONE]')
+
+
+class TestSseHelpers(unittest.TestCase):
+    def test_event_formats_json_and_multiline_text(self):
+        self.assertEqual('data: {"token": "你好"}\n\n', sse.event({'token': '你好'}))
+        self.assertEqual('event: error\ndata: a\ndata: b\n\n', sse.event('a\nb', 'error'))
+
+    def test_text_events_rebuild_reply_and_keep_json_block_whole(self):
+        events = parse_events(sse.text_events(REPLY, chunk_size=5))
+        self.assertEqual(REPLY, tokens_of(events))
+        # 结构化数据整体作为最后一个事件
+        self.assertTrue(json.loads(events[-1][1])['token'].startswith(sse.JSON_DATA_START))
+        for _, data in events[:-1]:
+            self.assertLessEqual(len(json.loads(data)['token']), 5)
+
+    def test_keepalive_is_sent_before_work_finishes(self):
+        release = threading.Event()
+        stream = sse.run_with_keepalive(lambda: release.wait(5) and 'ok', interval=0.05)
+        self.assertEqual(sse.KEEPALIVE, next(stream))
+        self.assertEqual(sse.KEEPALIVE, next(stream))
+        release.set()
+        items = list(stream)
+        self.assertEqual('ok', items[-1].value)
+        self.assertIsNone(items[-1].error)
+
+    def test_error_is_returned_as_outcome(self):
+        def fail():
+            raise ValueError('模型调用失败')
+        outcome = list(sse.run_with_keepalive(fail, interval=0.05))[-1]
+        self.assertIsInstance(outcome.error, ValueError)
+
+    def test_closing_stream_sets_cancel_event(self):
+        cancel = threading.Event()
+        stream = sse.run_with_keepalive(lambda: cancel.wait(5), interval=0.05, cancel_event=cancel)
+        next(stream)
+        stream.close()
+        self.assertTrue(cancel.is_set())
+
+
+def load_app(process_message):
+    """用替身替换会话处理模块后导入 app，不加载模型和 LangGraph"""
+    class ChatCancelled(Exception):
+        pass
+
+    main_stub = types.ModuleType('main')
+    main_stub.process_message = process_message
+    main_stub.clear_session = lambda trip_id: True
+    main_stub.clear_all_sessions = lambda: 0
+    runtime_stub = types.ModuleType('agent.langgraph_runtime')
+    runtime_stub.ChatCancelled = ChatCancelled
+    with mock.patch.dict(sys.modules, {'main': main_stub, 'agent.langgraph_runtime': runtime_stub}):
+        sys.modules.pop('app', None)
+        module = importlib.import_module('app')
+    sys.modules.pop('app', None)
+    return module
+
+
+def chat_body(trip_id):
+    return {
+        'message': '推荐餐厅',
+        'itinerary_data': {'itinerary_id': trip_id, 'title': '北京之旅', 'days': 1, 'attractions': []},
+    }
+
+
+@unittest.skipUnless(HAS_FLASK, "需要安装 Flask")
+class TestChatStreaming(unittest.TestCase):
+    MODEL_SECONDS = 0.3
+
+    def setUp(self):
+        self.cancelled = threading.Event()
+
+        def slow_process_message(message, itinerary_data, cancel_event=None):
+            # 模拟模型耗时；被取消时像真实会话一样抛出 ChatCancelled
+            if cancel_event is not None and cancel_event.wait(self.MODEL_SECONDS):
+                self.cancelled.set()
+                raise self.app_module.ChatCancelled()
+            return REPLY
+
+        self.app_module = load_app(slow_process_message)
+        self.app_module.SSE_KEEPALIVE_SECONDS = 0.05
+        self.client = self.app_module.app.test_client()
+
+    def test_event_stream_sends_tokens_and_done(self):
+        response = self.client.post('/chat', json=chat_body(1), headers={'Accept': 'text/event-stream'})
+        self.assertEqual(200, response.status_code)
+        self.assertTrue(response.content_type.startswith('text/event-stream'))
+        events = parse_events([response.get_data(as_text=True)])
+        self.assertEqual(REPLY, tokens_of(events))
+        self.assertEqual('done', events[-2][0])
+        self.assertEqual('[DONE]', events[-1][1])
+
+    def test_first_bytes_arrive_before_model_finishes(self):
+        start = time.monotonic()
+        response = self.client.post('/chat', json=chat_body(2), headers={'Accept': 'text/event-stream'},
+                                    buffered=False)
+        chunks = iter(response.response)
+        first = next(chunks)
+        time_to_first_byte = time.monotonic() - start
+        first_token_at = None
+        for chunk in chunks:
+            text = chunk.decode('utf-8') if isinstance(chunk, bytes) else chunk
+            if '"token"' in text:
+                first_token_at = time.monotonic() - start
+                break
+        response.close()
+        print(f"\n首个字节 {time_to_first_byte * 1000:.0f}ms，首个 token {first_token_at * 1000:.0f}ms，"
+              f"模型耗时 {self.MODEL_SECONDS * 1000:.0f}ms")
+        self.assertIn(b'keep-alive', first if isinstance(first, bytes) else first.encode('utf-8'))
+        self.assertLess(time_to_first_byte, self.MODEL_SECONDS)
+        self.assertIsNotNone(first_token_at)
+
+    def test_client_disconnect_cancels_turn(self):
+        response = self.client.post('/chat', json=chat_body(3), headers={'Accept': 'text/event-stream'},
+                                    buffered=False)
+        next(iter(response.response))
+        response.close()
+        self.assertTrue(self.cancelled.wait(2))
+
+    def test_json_when_event_stream_not_accepted(self):
+        response = self.client.post('/chat', json=chat_body(4))
+        self.assertEqual(200, response.status_code)
+        self.assertEqual(REPLY, response.get_json()['response'])
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,130 @@
+import json
+import time
+import unittest
+
+from utils.itinerary_codec import apply_delta, decode_attractions, decode_payload, encode_attractions
+
+
+def make_attractions(days=7, stops_per_day=6):
+    """构造与客户端快照字段一致的景点列表，每天最后一站没有站点信息"""
+    attractions = []
+    for day in range(1, days + 1):
+        for order in range(1, stops_per_day + 1):
+            attraction = {
+                'seq': 0,
+                'name': f'第{day}天景点{order}',
+                'day': day,
+                'order': order,
+                'transport': '地铁',
+                'type': '餐厅' if order in (3, 6) else '景点',
+            }
+            if order < stops_per_day:
+                attraction.update({
+                    'poi_id': f'B000A{day:02d}{order:03d}',
+                    'latitude': 39.9 + day * 0.011 + order * 0.000123,
+                    'longitude': 116.3 + day * 0.013 + order * 0.000456,
+                    'address': f'北京市东城区示例路{day * 10 + order}号',
+                    'type_desc': '风景名胜;风景名胜相关;旅游景点',
+                    'tel': '010-12345678'
+                })
+            attractions.append(attraction)
+    return attractions
+
+
+class TestItineraryCodec(unittest.TestCase):
+    def assert_same_attractions(self, expected, actual):
+        self.assertEqual(len(expected), len(actual))
+        for original, decoded in zip(expected, actual):
+            self.assertEqual(set(original), set(decoded))
+            for key, value in original.items():
+                if key in ('latitude', 'longitude'):
+                    self.assertAlmostEqual(value, decoded[key], places=6)
+                else:
+                    self.assertEqual(value, decoded[key])
+
+    def test_round_trip(self):
+        attractions = make_attractions()
+        encoded = json.loads(json.dumps(encode_attractions(attractions)))
+        self.assert_same_attractions(attractions, decode_attractions(encoded))
+
+    def test_plain_list_is_unchanged(self):
+        attractions = make_attractions(days=1)
+        self.assertIs(decode_attractions(attractions), attractions)
+
+    def test_decode_payload_snapshot_and_delta(self):
+        attractions = make_attractions(days=2)
+        payload = {
+            'itinerary_data': {'itinerary_id': 1, 'attractions': encode_attractions(attractions)},
+            'itinerary_delta': {'itinerary_id': 1, 'upsert': encode_attractions(attractions[:2])}
+        }
+        decode_payload(payload)
+        self.assert_same_attractions(attractions, payload['itinerary_data']['attractions'])
+        self.assert_same_attractions(attractions[:2], payload['itinerary_delta']['upsert'])
+
+    def test_benchmark_payload_size(self):
+        """对比7天行程的普通JSON与列式编码的大小和编码耗时"""
+        attractions = make_attractions()
+        rounds = 200
+
+        start = time.perf_counter()
+        for _ in range(rounds):
+            plain = json.dumps(attractions, ensure_ascii=False, separators=(',', ':'))
+        plain_ms = (time.perf_counter() - start) * 1000 / rounds
+
+        start = time.perf_counter()
+        for _ in range(rounds):
+            columnar = json.dumps(encode_attractions(attractions), ensure_ascii=False, separators=(',', ':'))
+        columnar_ms = (time.perf_counter() - start) * 1000 / rounds
+
+        plain_size = len(plain.encode('utf-8'))
+        columnar_size = len(columnar.encode('utf-8'))
+        print(f"\n{len(attractions)}个景点 普通JSON: {plain_size}字节 {plain_ms:.3f}ms，"
+              f"列式编码: {columnar_size}字节 {columnar_ms:.3f}ms，"
+              f"大小为原来的{columnar_size / plain_size:.0%}")
+        self.assertLess(columnar_size, plain_size)
+
+
+class TestApplyDelta(unittest.TestCase):
+    def setUp(self):
+        self.base = {'itinerary_id': 1, 'title': '北京之旅', 'days': 1, 'attractions': [
+            {'seq': 0, 'name': '故宫', 'day': 1, 'order': 1},
+            {'seq': 0, 'name': '景山', 'day': 1, 'order': 2},
+            {'seq': 1, 'name': '北海', 'day': 1, 'order': 2},
+        ]}
+
+    def names(self, data):
+        return [a['name'] for a in data['attractions']]
+
+    def test_attractions_sharing_a_slot_are_kept(self):
+        updated = apply_delta(self.base, {'upsert': [{'seq': 2, 'name': '南锣鼓巷', 'day': 1, 'order': 2}]})
+        self.assertEqual(['故宫', '景山', '北海', '南锣鼓巷'], self.names(updated))
+
+    def test_remove_only_drops_matching_attraction(self):
+        updated = apply_delta(self.base, {'remove': [{'day': 1, 'order': 2, 'seq': 1}]})
+        self.assertEqual(['故宫', '景山'], self.names(updated))
+
+    def test_upsert_replaces_attraction_at_same_seq(self):
+        updated = apply_delta(self.base, {'upsert': [{'seq': 0, 'name': '景山公园', 'day': 1, 'order': 2}]})
+        self.assertEqual(['故宫', '景山公园', '北海'], self.names(updated))
+
+    def test_move_and_update_fields(self):
+        updated = apply_delta(self.base, {
+            'fields': {'title': '北京两日游', 'days': 2},
+            'remove': [{'day': 1, 'order': 1, 'seq': 0}],
+            'upsert': [{'seq': 0, 'name': '故宫', 'day': 2, 'order': 1}],
+        })
+        self.assertEqual('北京两日游', updated['title'])
+        self.assertEqual(['景山', '北海', '故宫'], self.names(updated))
+        self.assertEqual(3, len(self.base['attractions']))
+        self.assertEqual('北京之旅', self.base['title'])
+
+    def test_columnar_delta_round_trip(self):
+        upsert = [{'seq': 0, 'name': '什刹海', 'day': 1, 'order': 3, 'latitude': 39.94, 'longitude': 116.38}]
+        payload = decode_payload({'itinerary_delta': {'upsert': encode_attractions(upsert)}})
+        updated = apply_delta(self.base, payload['itinerary_delta'])
+        self.assertEqual('什刹海', updated['attractions'][-1]['name'])
+        self.assertAlmostEqual(39.94, updated['attractions'][-1]['latitude'])
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,85 @@
+"""
+客户端行程快照的列式编码（Content-Type: application/vnd.trave.columnar+json）
+
+景点列表 itinerary_data.attractions 和 itinerary_delta.upsert 编码为
+    {"count": n, "columns": {"name": [...], "day": [...], ..., "latitude_e6": [...], "longitude_e6": [...]}}
+字段名只出现一次，坐标为整数微度（乘以 10^6），缺少的字段为 null。
+解码后与普通JSON格式完全一致，后续处理不需要区分两种格式。
+"""
+
+COLUMNAR_CONTENT_TYPE = 'application/vnd.trave.columnar+json'
+
+ATTRACTION_FIELDS = ['seq', 'name', 'day', 'order', 'transport', 'type', 'poi_id',
+                     'latitude', 'longitude', 'address', 'type_desc', 'tel']
+COORDINATE_FIELDS = ('latitude', 'longitude')
+COORDINATE_SCALE = 1e6
+SCALED_SUFFIX = '_e6'
+
+
+def encode_attractions(attractions):
+    """与客户端 ItinerarySync.encodeColumnar 相同的编码，供测试和基准对比使用"""
+    columns = {}
+    for field in ATTRACTION_FIELDS:
+        values = []
+        for attraction in attractions:
+            value = attraction.get(field)
+            if value is not None and field in COORDINATE_FIELDS:
+                value = round(value * COORDINATE_SCALE)
+            values.append(value)
+        columns[field + SCALED_SUFFIX if field in COORDINATE_FIELDS else field] = values
+    return {'count': len(attractions), 'columns': columns}
+
+
+def decode_attractions(encoded):
+    """列式编码还原为景点字典列表；已经是列表时原样返回"""
+    if not isinstance(encoded, dict):
+        return encoded
+    columns = encoded.get('columns') or {}
+    count = encoded.get('count', 0)
+    attractions = []
+    for i in range(count):
+        attraction = {}
+        for column, values in columns.items():
+            value = values[i] if i < len(values) else None
+            if value is None:
+                continue
+            if column.endswith(SCALED_SUFFIX):
+                attraction[column[:-len(SCALED_SUFFIX)]] = value / COORDINATE_SCALE
+            else:
+                attraction[column] = value
+        attractions.append(attraction)
+    return attractions
+
+
+def decode_payload(data):
+    """就地解码请求体中的列式景点列表并返回该请求体"""
+    itinerary_data = data.get('itinerary_data')
+    if isinstance(itinerary_data, dict) and 'attractions' in itinerary_data:
+        itinerary_data['attractions'] = decode_attractions(itinerary_data['attractions'])
+    delta = data.get('itinerary_delta')
+    if isinstance(delta, dict) and 'upsert' in delta:
+        delta['upsert'] = decode_attractions(delta['upsert'])
+    return data
+
+
+def attraction_key(attraction):
+    """
+    景点在增量中的标识：(day, order, seq)。
+    同一位置上可以有多个景点，seq 是它在该位置上的序号（从 0 开始）。
+    客户端保存行程时会重建所有景点行，数据库ID每次都变，不能用作标识；不带 seq 时按 0 处理
+    """
+    return (int(attraction.get('day', 0)), int(attraction.get('order', 0)),
+            int(attraction.get('seq') or 0))
+
+
+def apply_delta(base_data, delta):
+    """在基础版本的行程数据上应用 itinerary_delta，返回新的行程数据，不修改 base_data"""
+    itinerary_data = dict(base_data)
+    itinerary_data.update(delta.get('fields') or {})
+    attractions = {attraction_key(a): a for a in base_data.get('attractions', [])}
+    for removed in delta.get('remove') or []:
+        attractions.pop(attraction_key(removed), None)
+    for attraction in delta.get('upsert') or []:
+        attractions[attraction_key(attraction)] = attraction
+    itinerary_data['attractions'] = [attractions[key] for key in sorted(attractions)]
+    return itinerary_data
@@ -0,0 +1,75 @@
+"""
+Server-Sent Events（text/event-stream）的格式化和后台执行工具，/chat 的流式响应使用。
+
+客户端按 SSE 读取：每个事件的 data 为 {"token": "..."}，"[DONE]" 表示结束，
+以冒号开头的注释行只用于保持连接，客户端忽略。
+"""
+import json
+import threading
+
+# 保持连接的注释行；客户端断开后写入失败，服务器借此得知请求已没有人接收
+KEEPALIVE = ": keep-alive\n\n"
+DONE = "data: [DONE]\n\n"
+
+JSON_DATA_START = "<!--JSON_DATA:"
+
+
+class Outcome:
+    """后台任务的结果：value 为返回值，error 为抛出的异常"""
+
+    def __init__(self, value=None, error=None):
+        self.value = value
+        self.error = error
+
+
+def event(payload, name=None):
+    """格式化一个事件；payload 为字符串时原样作为 data，否则序列化为 JSON"""
+    data = payload if isinstance(payload, str) else json.dumps(payload, ensure_ascii=False)
+    lines = [f"event: {name}"] if name else []
+    lines.extend(f"data: {line}" for line in data.split("\n"))
+    return "\n".join(lines) + "\n\n"
+
+
+def text_events(text, chunk_size=24):
+    """
+    把回复文本拆成若干 token 事件。
+    可见文本按 chunk_size 个字符切分；<!--JSON_DATA:...--> 及之后的内容作为一个事件整体发送，
+    结构化数据不会被拆成很多小事件
+    """
+    marker_at = text.find(JSON_DATA_START)
+    visible = text if marker_at < 0 else text[:marker_at]
+    for start in range(0, len(visible), chunk_size):
+        yield event({'token': visible[start:start + chunk_size]})
+    if marker_at >= 0:
+        yield event({'token': text[marker_at:]})
+
+
+def run_with_keepalive(work, interval, cancel_event=None):
+    """
+    在后台线程执行 work()，立即产出一次 KEEPALIVE 让响应头尽快发出，
+    之后每隔 interval 秒再产出一次，直到 work 结束，最后产出一个 Outcome。
+
+    生成器在结束前被关闭（客户端断开，写入失败）时设置 cancel_event，
+    work 应当据此尽早停止。
+    """
+    outcome = Outcome()
+    finished = threading.Event()
+
+    def target():
+        try:
+            outcome.value = work()
+        except Exception as e:
+            outcome.error = e
+        finally:
+            finished.set()
+
+    threading.Thread(target=target, name="sse-worker", daemon=True).start()
+    try:
+        yield KEEPALIVE
+        while not finished.wait(interval):
+            yield KEEPALIVE
+    except GeneratorExit:
+        if cancel_event is not None:
+            cancel_event.set()
+        raise
+    yield outcome
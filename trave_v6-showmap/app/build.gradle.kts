@@ -43,6 +43,7 @@ dependencies {
     implementation ("com.amap.api:search:latest.integration")
 
     implementation ("com.google.code.gson:gson:2.10.1")
+    implementation ("com.squareup.okhttp3:okhttp:4.12.0")
     implementation ("com.github.bumptech.glide:glide:4.16.0")
     implementation ("com.google.android.material:material:1.0.0")
 }
\ No newline at end of file
@@ -0,0 +1,286 @@
+package com.example.trave;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 从第 1 版数据库开始执行所有升级步骤，检查结果与全新安装的表结构一致且原有数据不丢失；
+ * 并用 EXPLAIN QUERY PLAN 检查常用查询在全新安装和升级后的数据库上都走索引。
+ * 使用内存数据库，不影响应用自己的数据库文件。
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseMigrationTest {
+    // 第 1 版的建表语句，照当时的结构固定写在这里，之后不随 DatabaseHelper 修改
+    private static final String[] V1_SCHEMA = {
+            "CREATE TABLE itineraries (id INTEGER PRIMARY KEY AUTOINCREMENT, title TEXT, location TEXT," +
+                    " days INTEGER, user_id INTEGER, status INTEGER DEFAULT 0)",
+            "CREATE TABLE users (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT, password TEXT)",
+            "CREATE TABLE Itineraryattractions (id INTEGER PRIMARY KEY AUTOINCREMENT, itinerary_id INTEGER," +
+                    " site_id INTEGER, day_number INTEGER, visit_order INTEGER, name TEXT, transport TEXT," +
+                    " type TEXT," +
+                    " FOREIGN KEY (itinerary_id) REFERENCES itineraries(id)," +
+                    " FOREIGN KEY (site_id) REFERENCES sites(id))",
+            "CREATE TABLE sites (id INTEGER PRIMARY KEY AUTOINCREMENT, poi_id TEXT UNIQUE, name TEXT," +
+                    " latitude REAL, longitude REAL, address TEXT, business_area TEXT, tel TEXT, website TEXT," +
+                    " type_desc TEXT, photos TEXT)",
+    };
+    private static final String[] TABLES = {"itineraries", "users", "Itineraryattractions", "sites"};
+
+    private DatabaseHelper helper;
+    private final List<SQLiteDatabase> opened = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        helper = DatabaseHelper.getInstance(context);
+    }
+
+    @After
+    public void tearDown() {
+        for (SQLiteDatabase db : opened) {
+            db.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromV1MatchesFreshInstall() {
+        SQLiteDatabase upgraded = createV1WithData();
+        upgrade(upgraded, 1, DatabaseHelper.DATABASE_VERSION);
+
+        SQLiteDatabase fresh = memoryDatabase();
+        helper.onCreate(fresh);
+
+        for (String table : TABLES) {
+            assertEquals("列不一致: " + table, columns(fresh, table), columns(upgraded, table));
+        }
+        assertEquals(indexes(fresh), indexes(upgraded));
+    }
+
+    @Test
+    public void upgradeKeepsExistingRows() {
+        SQLiteDatabase db = createV1WithData();
+        upgrade(db, 1, DatabaseHelper.DATABASE_VERSION);
+
+        try (Cursor cursor = db.rawQuery("SELECT name, is_ai_recommended, ai_recommend_reason" +
+                " FROM Itineraryattractions WHERE itinerary_id = 1 ORDER BY day_number, visit_order", null)) {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals("故宫", cursor.getString(0));
+            // 新增的列对旧数据取默认值
+            assertEquals(0, cursor.getInt(1));
+            assertTrue(cursor.isNull(2));
+        }
+        assertEquals(1, count(db, "itineraries"));
+        assertEquals(1, count(db, "sites"));
+        assertEquals(1, count(db, "users"));
+    }
+
+    // 用户可能停留在任意一个旧版本，分段升级的结果必须与一次升级到底相同
+    @Test
+    public void upgradeFromEveryIntermediateVersion() {
+        SQLiteDatabase direct = createV1WithData();
+        upgrade(direct, 1, DatabaseHelper.DATABASE_VERSION);
+
+        for (int start = 2; start < DatabaseHelper.DATABASE_VERSION; start++) {
+            SQLiteDatabase stepped = createV1WithData();
+            upgrade(stepped, 1, start);
+            upgrade(stepped, start, DatabaseHelper.DATABASE_VERSION);
+            for (String table : TABLES) {
+                assertEquals("从版本 " + start + " 升级后列不一致: " + table,
+                        columns(direct, table), columns(stepped, table));
+            }
+            assertEquals(indexes(direct), indexes(stepped));
+        }
+    }
+
+    // 升级中途失败会整体回滚，下次打开从头执行，步骤必须可以重复执行而不因列或索引已存在报错
+    @Test
+    public void migrationsAreIdempotent() {
+        SQLiteDatabase db = createV1WithData();
+        upgrade(db, 1, DatabaseHelper.DATABASE_VERSION);
+        upgrade(db, 1, DatabaseHelper.DATABASE_VERSION);
+        assertEquals(2, count(db, "Itineraryattractions"));
+    }
+
+    @Test
+    public void missingMigrationStepFails() {
+        SQLiteDatabase db = createV1WithData();
+        try {
+            helper.onUpgrade(db, 1, DatabaseHelper.DATABASE_VERSION + 1);
+            fail("缺少升级步骤时应当抛出异常");
+        } catch (IllegalStateException expected) {
+            // 预期的异常
+        }
+    }
+
+    // 行程详情：按行程取景点并按天、顺序排列，索引同时省掉排序
+    @Test
+    public void attractionsByItineraryUseDayOrderIndex() {
+        String sql = "SELECT * FROM Itineraryattractions WHERE itinerary_id = ? ORDER BY day_number, visit_order";
+        for (SQLiteDatabase db : freshAndUpgraded()) {
+            String plan = queryPlan(db, sql, "1");
+            assertTrue(plan, plan.contains("idx_attractions_itinerary_day_order"));
+            assertFalse(plan, plan.contains("TEMP B-TREE"));
+        }
+    }
+
+    // 与 getItineraryAttractionsWithSites 相同的联表查询
+    @Test
+    public void attractionsWithSitesJoinUsesIndexes() {
+        String sql = "SELECT a.id, s.name FROM Itineraryattractions a" +
+                " LEFT JOIN sites s ON a.site_id = s.id" +
+                " WHERE a.itinerary_id = ? ORDER BY a.day_number, a.visit_order, a.id";
+        for (SQLiteDatabase db : freshAndUpgraded()) {
+            String plan = queryPlan(db, sql, "1");
+            assertTrue(plan, plan.contains("idx_attractions_itinerary_day_order"));
+            assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+            assertFalse(plan, plan.contains("TEMP B-TREE"));
+        }
+    }
+
+    @Test
+    public void itinerariesByUserUseUserIndex() {
+        String sql = "SELECT * FROM itineraries WHERE user_id = ?";
+        for (SQLiteDatabase db : freshAndUpgraded()) {
+            String plan = queryPlan(db, sql, "1");
+            assertTrue(plan, plan.contains("idx_itineraries_user_id"));
+        }
+    }
+
+    // 已发布行程分页：status 索引隐含 id，按 id 范围扫描且不需要排序
+    @Test
+    public void publishedPageUsesStatusIndexWithoutSort() {
+        String sql = "SELECT * FROM itineraries WHERE status = ? AND id > ? ORDER BY id LIMIT 20";
+        for (SQLiteDatabase db : freshAndUpgraded()) {
+            String plan = queryPlan(db, sql, "1", "0");
+            assertTrue(plan, plan.contains("idx_itineraries_status"));
+            assertFalse(plan, plan.contains("TEMP B-TREE"));
+        }
+    }
+
+    @Test
+    public void attractionsBySiteUseSiteIndex() {
+        String sql = "SELECT id FROM Itineraryattractions WHERE site_id = ?";
+        for (SQLiteDatabase db : freshAndUpgraded()) {
+            String plan = queryPlan(db, sql, "1");
+            assertTrue(plan, plan.contains("idx_attractions_site_id"));
+        }
+    }
+
+    private List<SQLiteDatabase> freshAndUpgraded() {
+        SQLiteDatabase fresh = memoryDatabase();
+        helper.onCreate(fresh);
+        SQLiteDatabase upgraded = createV1WithData();
+        upgrade(upgraded, 1, DatabaseHelper.DATABASE_VERSION);
+        List<SQLiteDatabase> databases = new ArrayList<>();
+        databases.add(fresh);
+        databases.add(upgraded);
+        return databases;
+    }
+
+    // 查询计划各行的 detail 列，换行连接
+    private static String queryPlan(SQLiteDatabase db, String sql, String... args) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailIndex)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+
+    private SQLiteDatabase createV1WithData() {
+        SQLiteDatabase db = memoryDatabase();
+        for (String sql : V1_SCHEMA) {
+            db.execSQL(sql);
+        }
+        db.execSQL("INSERT INTO users (username, password) VALUES ('hhh', '123')");
+        db.execSQL("INSERT INTO itineraries (title, location, days, user_id, status)" +
+                " VALUES ('行程单1', '北京', 2, 1, 1)");
+        db.execSQL("INSERT INTO sites (poi_id, name, latitude, longitude, type_desc)" +
+                " VALUES ('B000A8UIN8', '故宫博物院', 39.916, 116.397, '风景名胜')");
+        db.execSQL("INSERT INTO Itineraryattractions (itinerary_id, site_id, day_number, visit_order, name," +
+                " transport, type) VALUES (1, 1, 1, 1, '故宫', '地铁', '景点')");
+        db.execSQL("INSERT INTO Itineraryattractions (itinerary_id, site_id, day_number, visit_order, name," +
+                " transport, type) VALUES (1, 1, 2, 1, '景山公园', '步行', '景点')");
+        db.setVersion(1);
+        return db;
+    }
+
+    private SQLiteDatabase memoryDatabase() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        opened.add(db);
+        return db;
+    }
+
+    private void upgrade(SQLiteDatabase db, int from, int to) {
+        helper.onUpgrade(db, from, to);
+        db.setVersion(to);
+    }
+
+    // 列名 -> 类型和默认值；只比较内容，不比较列的先后顺序
+    private static Map<String, String> columns(SQLiteDatabase db, String table) {
+        Map<String, String> columns = new TreeMap<>();
+        try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null)) {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            int typeIndex = cursor.getColumnIndexOrThrow("type");
+            int defaultIndex = cursor.getColumnIndexOrThrow("dflt_value");
+            while (cursor.moveToNext()) {
+                columns.put(cursor.getString(nameIndex),
+                        cursor.getString(typeIndex) + " DEFAULT " + cursor.getString(defaultIndex));
+            }
+        }
+        return columns;
+    }
+
+    // 显式创建的索引及其列，不含 UNIQUE 约束自动生成的索引
+    private static TreeSet<String> indexes(SQLiteDatabase db) {
+        TreeSet<String> indexes = new TreeSet<>();
+        try (Cursor cursor = db.rawQuery("SELECT name, tbl_name FROM sqlite_master" +
+                " WHERE type = 'index' AND sql IS NOT NULL", null)) {
+            while (cursor.moveToNext()) {
+                indexes.add(cursor.getString(1) + "." + cursor.getString(0) + indexColumns(db, cursor.getString(0)));
+            }
+        }
+        return indexes;
+    }
+
+    private static String indexColumns(SQLiteDatabase db, String index) {
+        List<String> columns = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("PRAGMA index_info(" + index + ")", null)) {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(nameIndex));
+            }
+        }
+        return columns.toString();
+    }
+
+    private static long count(SQLiteDatabase db, String table) {
+        try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + table, null)) {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.trave;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.trave.Domains.Itinerary;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 已发布行程单的键集分页：依次用上一页最后一条的 id 取下一页，
+ * 结果与一次性按 id 读出的已发布行程完全一致，翻页期间插入或删除行程也不会重复或漏读。
+ * 5 万条已发布行程时，列表只按页占用内存。
+ * 使用内存数据库，不影响应用自己的数据库文件。
+ */
+@RunWith(AndroidJUnit4.class)
+public class PublishedItineraryPagingTest {
+    private static final int PAGE_SIZE = 20;
+    private static final int LARGE_FEED_SIZE = 50_000;
+    // 列表滑过几页后持有的行程所允许占用的堆内存；一次性读出 5 万条远超这个值
+    private static final long PAGED_MEMORY_BUDGET_BYTES = 512 * 1024;
+
+    private DatabaseHelper helper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        helper = DatabaseHelper.getInstance(context);
+        db = SQLiteDatabase.create(null);
+        helper.onCreate(db);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void pagesCoverEveryPublishedItineraryOnceInIdOrder() {
+        List<Long> published = new ArrayList<>();
+        for (int i = 0; i < 95; i++) {
+            // 每三条中有一条草稿，分页结果里不应出现
+            boolean isPublished = i % 3 != 0;
+            long id = insertItinerary("行程" + i, isPublished);
+            if (isPublished) {
+                published.add(id);
+            }
+        }
+
+        List<Long> paged = new ArrayList<>();
+        long afterId = 0;
+        int pages = 0;
+        while (true) {
+            ArrayList<Itinerary> page = helper.getPublishedItinerariesPage(db, afterId, PAGE_SIZE);
+            assertTrue(page.size() <= PAGE_SIZE);
+            if (page.isEmpty()) {
+                break;
+            }
+            for (Itinerary itinerary : page) {
+                assertEquals(1, itinerary.getStatus());
+                paged.add(itinerary.getId());
+            }
+            afterId = page.get(page.size() - 1).getId();
+            pages++;
+        }
+
+        assertEquals(published, paged);
+        assertEquals((published.size() + PAGE_SIZE - 1) / PAGE_SIZE, pages);
+    }
+
+    @Test
+    public void changesDuringPagingDoNotDuplicateOrSkipRows() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            ids.add(insertItinerary("行程" + i, true));
+        }
+
+        ArrayList<Itinerary> first = helper.getPublishedItinerariesPage(db, 0, PAGE_SIZE);
+        long afterId = first.get(first.size() - 1).getId();
+
+        // 读完第一页后删除其中一条、新发布一条；OFFSET 分页此时会跳过或重复一行
+        db.delete("itineraries", "id=?", new String[]{String.valueOf(ids.get(0))});
+        long added = insertItinerary("新发布", true);
+
+        ArrayList<Itinerary> second = helper.getPublishedItinerariesPage(db, afterId, PAGE_SIZE);
+        List<Long> secondIds = new ArrayList<>();
+        for (Itinerary itinerary : second) {
+            secondIds.add(itinerary.getId());
+        }
+        List<Long> expected = new ArrayList<>(ids.subList(PAGE_SIZE, ids.size()));
+        expected.add(added);
+        assertEquals(expected, secondIds);
+    }
+
+    @Test
+    public void pageAfterLastIdIsEmpty() {
+        long last = insertItinerary("唯一", true);
+        assertEquals(1, helper.getPublishedItinerariesPage(db, 0, PAGE_SIZE).size());
+        assertTrue(helper.getPublishedItinerariesPage(db, last, PAGE_SIZE).isEmpty());
+    }
+
+    @Test
+    public void largeFeedStaysWithinMemoryBudget() {
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO itineraries (title, location, days, user_id, status) VALUES (?, '北京', 2, 1, 1)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < LARGE_FEED_SIZE; i++) {
+                insert.bindString(1, "行程" + i);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+
+        // 像列表一样滑过前三页，持有已加载的部分
+        long before = usedHeap();
+        List<Itinerary> loaded = new ArrayList<>();
+        long afterId = 0;
+        for (int i = 0; i < 3; i++) {
+            ArrayList<Itinerary> page = helper.getPublishedItinerariesPage(db, afterId, PAGE_SIZE);
+            loaded.addAll(page);
+            afterId = page.get(page.size() - 1).getId();
+        }
+        long held = usedHeap() - before;
+        assertEquals(3 * PAGE_SIZE, loaded.size());
+        assertTrue("已加载三页占用 " + held + " 字节", held < PAGED_MEMORY_BUDGET_BYTES);
+
+        // 逐页翻到底只保留当前页，读完后占用的内存不随总数增长
+        int total = loaded.size();
+        loaded.clear();
+        while (true) {
+            ArrayList<Itinerary> page = helper.getPublishedItinerariesPage(db, afterId, PAGE_SIZE);
+            if (page.isEmpty()) {
+                break;
+            }
+            assertTrue(page.size() <= PAGE_SIZE);
+            total += page.size();
+            afterId = page.get(page.size() - 1).getId();
+        }
+        long retained = usedHeap() - before;
+        assertEquals(LARGE_FEED_SIZE, total);
+        assertTrue("翻完 " + LARGE_FEED_SIZE + " 条后仍占用 " + retained + " 字节",
+                retained < PAGED_MEMORY_BUDGET_BYTES);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            System.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private long insertItinerary(String title, boolean published) {
+        ContentValues values = new ContentValues();
+        values.put("title", title);
+        values.put("location", "北京");
+        values.put("days", 2);
+        values.put("user_id", 1);
+        values.put("status", published ? 1 : 0);
+        return db.insertOrThrow("itineraries", null, values);
+    }
+}
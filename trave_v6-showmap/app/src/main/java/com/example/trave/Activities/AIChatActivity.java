@@ -16,24 +16,31 @@ import com.example.trave.Adapters.ChatAdapter;
 import com.example.trave.Adapters.ChatItineraryAdapter;
 import com.example.trave.Adapters.ItineraryDetailAdapter;
 import com.example.trave.Adapters.POIRecommendationAdapter;
+import com.example.trave.Adapters.RecommendationCardViewHolder;
 import com.example.trave.Adapters.RestaurantRecommendationAdapter;
+import com.example.trave.Adapters.ViewHolderPrewarmer;
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.ChatMessage;
+import com.example.trave.Domains.ChatResponse;
 import com.example.trave.Domains.ItineraryAttraction;
+import com.example.trave.Domains.OptimizedItinerary;
+import com.example.trave.Domains.PoiRecommendations;
 import com.example.trave.Domains.RecommendedPOI;
 import com.example.trave.Domains.RecommendedRestaurant;
+import com.example.trave.Domains.Sites;
+import com.example.trave.ItineraryRepository;
 import com.example.trave.R;
 import com.example.trave.Services.AIService;
+import com.example.trave.Services.ChatOutbox;
 import com.example.trave.Services.RestaurantRecommendService;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
@@ -53,12 +60,28 @@ public class AIChatActivity extends AppCompatActivity implements
     private EditText messageInput;
     private Button sendButton;
     private Button saveButton;
+    private Button tripMealsButton;
+    private Button dailyPoisButton;
     private ChatAdapter chatAdapter;
     private RestaurantRecommendationAdapter recommendationsAdapter;
     private ItineraryDetailAdapter itineraryDetailAdapter;
     private ArrayList<ChatMessage> chatMessages;
     private List<ItineraryAttraction> itineraryAttractions;
     private AIService aiService;
+    private AIService.ChatCall currentChat;  // 仍在进行的聊天请求，仅在主线程访问
+    private volatile AIService.ChatCall replayingChat;  // 正在重放的离线消息
+    private ChatOutbox chatOutbox;
+    private final ChatOutbox.Deliverer outboxDeliverer = new ChatOutbox.Deliverer() {
+        @Override
+        public void deliver(ChatOutbox.PendingMessage message) throws Exception {
+            replayQueuedMessage(message);
+        }
+
+        @Override
+        public void onFailed(ChatOutbox.PendingMessage message, String reason) {
+            mainHandler.post(() -> addMessage("抱歉，消息「" + message.getMessage() + "」发送失败，请重新发送: " + reason, false));
+        }
+    };
     private ExecutorService executorService;
     private Handler mainHandler;
     private long itineraryId;
@@ -66,6 +89,15 @@ public class AIChatActivity extends AppCompatActivity implements
     private ItemTouchHelper itemTouchHelper;
     private boolean hasChanges = false;
     private POIRecommendationAdapter poiRecommendationsAdapter;
+    private ItineraryRepository itineraryRepository;
+
+    // 当前行程的景点变更后重新加载行程面板
+    private final ItineraryRepository.Listener itineraryChangeListener = change -> {
+        if (change.getType() == ItineraryRepository.Change.Type.ATTRACTIONS && change.affects(itineraryId)
+                && !executorService.isShutdown()) {
+            loadItineraryData();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -80,7 +112,10 @@ public class AIChatActivity extends AppCompatActivity implements
         aiService = new AIService();
         executorService = Executors.newSingleThreadExecutor();
         mainHandler = new Handler(Looper.getMainLooper());
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
+        itineraryRepository = ItineraryRepository.getInstance(this);
+        itineraryRepository.addListener(itineraryChangeListener);
+        chatOutbox = ChatOutbox.getInstance(this);
 
         initializeViews();
         setupRecyclerViews();
@@ -89,6 +124,8 @@ public class AIChatActivity extends AppCompatActivity implements
 
         addMessage("您好！我是您的AI旅行助手。我可以帮您优化行程，推荐景点和餐厅，或者回答旅行相关的问题。请问有什么可以帮您的吗？", false);
         loadItineraryData();
+        // 之后开始重放该行程离线时保存的消息
+        chatOutbox.attach(itineraryId, outboxDeliverer);
     }
 
     private void initializeViews() {
@@ -98,6 +135,8 @@ public class AIChatActivity extends AppCompatActivity implements
         messageInput = findViewById(R.id.messageInput);
         sendButton = findViewById(R.id.sendButton);
         saveButton = findViewById(R.id.saveButton);
+        tripMealsButton = findViewById(R.id.tripMealsButton);
+        dailyPoisButton = findViewById(R.id.dailyPoisButton);
     }
 
     private void setupRecyclerViews() {
@@ -105,6 +144,7 @@ public class AIChatActivity extends AppCompatActivity implements
         chatAdapter = new ChatAdapter(chatMessages);
         chatRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         chatRecyclerView.setAdapter(chatAdapter);
+        chatAdapter.prewarmBubbles(chatRecyclerView, 3);
 
         // 设置水平布局管理器，用于横向滚动推荐卡片
         LinearLayoutManager horizontalLayoutManager = new LinearLayoutManager(
@@ -117,6 +157,11 @@ public class AIChatActivity extends AppCompatActivity implements
         
         // 默认使用餐厅推荐适配器
         recommendationsRecyclerView.setAdapter(recommendationsAdapter);
+        // 两个推荐适配器使用同一种卡片，回收池里的卡片切换适配器后仍可复用；
+        // 空闲时先备好一屏卡片，第一批推荐到达时不用再 inflate
+        recommendationsRecyclerView.setItemViewCacheSize(4);
+        ViewHolderPrewarmer.prewarm(recommendationsRecyclerView, recommendationsAdapter,
+                RecommendationCardViewHolder.VIEW_TYPE, 3);
 
         // 设置行程列表
         itineraryDetailAdapter = new ItineraryDetailAdapter(new ArrayList<>());
@@ -139,6 +184,9 @@ public class AIChatActivity extends AppCompatActivity implements
         saveButton.setOnClickListener(v -> {
             saveOptimizedItinerary();
         });
+
+        tripMealsButton.setOnClickListener(v -> runTripWideAction(AIService.TripWideAction.MEAL_SLOTS));
+        dailyPoisButton.setOnClickListener(v -> runTripWideAction(AIService.TripWideAction.DAILY_POIS));
     }
     
     private void setupItemTouchHelper() {
@@ -196,27 +244,21 @@ public class AIChatActivity extends AppCompatActivity implements
     }
 
     private void loadItineraryData() {
-        executorService.execute(() -> {
-            try {
-                ArrayList<ItineraryAttraction> attractions = dbHelper.getItineraryAttractions(itineraryId);
-                mainHandler.post(() -> {
-                    itineraryAttractions = attractions;
-                    itineraryDetailAdapter.updateAttractions(new ArrayList<>(attractions));
-                });
-            } catch (Exception e) {
-                Log.e(TAG, "加载行程数据失败", e);
-                mainHandler.post(() -> 
-                    Toast.makeText(this, "加载行程数据失败: " + e.getMessage(), Toast.LENGTH_SHORT).show()
-                );
+        DatabaseExecutor.read(() -> dbHelper.getItineraryAttractionsWithSites(itineraryId), attractions -> {
+            if (attractions == null) {
+                Toast.makeText(this, "加载行程数据失败", Toast.LENGTH_SHORT).show();
+                return;
             }
+            itineraryAttractions = attractions;
+            itineraryDetailAdapter.updateAttractions(new ArrayList<>(attractions));
         });
     }
     
     private void saveItineraryChanges() {
-        executorService.execute(() -> {
+        // 在主线程取出当前顺序，写线程上只访问数据库
+        ArrayList<ItineraryAttraction> attractions = new ArrayList<>(itineraryDetailAdapter.getAttractions());
+        DatabaseExecutor.write(() -> {
             try {
-                ArrayList<ItineraryAttraction> attractions = itineraryDetailAdapter.getAttractions();
-                
                 // 更新数据库中的顺序
                 for (ItineraryAttraction attraction : attractions) {
                     dbHelper.updateAttractionOrder(
@@ -226,11 +268,10 @@ public class AIChatActivity extends AppCompatActivity implements
                     );
                 }
                 
-                hasChanges = false;
-                
-                mainHandler.post(() -> 
-                    Toast.makeText(this, "行程顺序已更新", Toast.LENGTH_SHORT).show()
-                );
+                mainHandler.post(() -> {
+                    hasChanges = false;
+                    Toast.makeText(this, "行程顺序已更新", Toast.LENGTH_SHORT).show();
+                });
             } catch (Exception e) {
                 Log.e(TAG, "保存行程更改失败", e);
                 mainHandler.post(() -> 
@@ -244,67 +285,169 @@ public class AIChatActivity extends AppCompatActivity implements
         addMessage(message, true);
         messageInput.setText("");
 
+        // 新消息取代尚未完成的请求，旧请求的连接直接关闭
+        if (currentChat != null) {
+            currentChat.cancel();
+        }
+        AIService.ChatCall chat = aiService.newChatCall(message, itineraryId, dbHelper);
+        currentChat = chat;
+
         executorService.execute(() -> {
+            if (chat.isCanceled()) {
+                return;
+            }
+            // 前面还有没送达的消息时排在它们后面，保持发送顺序
+            if (chatOutbox.hasPending(itineraryId)) {
+                queueOffline(chat, "前面还有消息在等待发送，这条消息会排在它们之后自动发送。");
+                return;
+            }
             try {
+                executeChat(chat);
+            } catch (Exception e) {
+                if (chat.isCanceled()) {
+                    Log.d(TAG, "聊天请求已取消: " + message);
+                    return;
+                }
+                if (ChatOutbox.isRetriable(e)) {
+                    Log.w(TAG, "发送失败，消息进入待发送队列: " + e.getMessage());
+                    queueOffline(chat, e instanceof AIService.ServerErrorException
+                            ? "服务器暂时不可用，消息已保存，稍后会自动重试。"
+                            : "网络暂时不可用，消息已保存，恢复连接后会自动发送。");
+                    return;
+                }
                 mainHandler.post(() -> {
-                    recommendationsRecyclerView.setVisibility(View.GONE);
-                    // 清除当前适配器的数据，避免显示旧数据
-                    if (recommendationsAdapter != null) {
-                        recommendationsAdapter.updateRecommendations(new ArrayList<>());
-                    }
-                    if (poiRecommendationsAdapter != null) {
-                        poiRecommendationsAdapter.updateRecommendations(new ArrayList<>());
+                    if (currentChat == chat) {
+                        currentChat = null;
                     }
-                    Toast.makeText(AIChatActivity.this, "正在处理您的请求...", Toast.LENGTH_SHORT).show();
+                    Log.e(TAG, "发生错误", e);
+                    Toast.makeText(AIChatActivity.this, "错误: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    addMessage("抱歉，发生错误: " + e.getMessage(), false);
                 });
+            }
+        });
+    }
 
-                AIService.AIResponseData responseData = aiService.getAIResponse(message, itineraryId, dbHelper);
-                
-                mainHandler.post(() -> {
-                    // 添加AI文本响应
-                    addMessage(responseData.getCleanText(), false);
-                    
-                    // 处理结构化数据
-                    if (responseData.hasStructuredData()) {
-                        processAIResponse(responseData);
-                    }
-                });
+    // 全程推荐不经过会话，连不上时直接提示，不进入离线队列（重放时会被当成普通消息发给会话）
+    private void runTripWideAction(AIService.TripWideAction action) {
+        addMessage(action.getLabel(), true);
+        if (currentChat != null) {
+            currentChat.cancel();
+        }
+        AIService.ChatCall chat = aiService.newTripWideCall(action, itineraryId, dbHelper);
+        currentChat = chat;
+
+        executorService.execute(() -> {
+            if (chat.isCanceled()) {
+                return;
+            }
+            try {
+                executeChat(chat);
             } catch (Exception e) {
+                if (chat.isCanceled()) {
+                    return;
+                }
                 mainHandler.post(() -> {
-                    Log.e(TAG, "发生错误", e);
-                    Toast.makeText(AIChatActivity.this, "错误: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    addMessage("抱歉，发生错误: " + e.getMessage(), false);
+                    if (currentChat == chat) {
+                        currentChat = null;
+                    }
+                    Log.e(TAG, "全程推荐失败", e);
+                    addMessage("抱歉，" + action.getLabel() + "失败: " + e.getMessage(), false);
                 });
             }
         });
     }
 
-    private void processAIResponse(AIService.AIResponseData responseData) {
-        // 添加AI消息到聊天列表
-        addMessage(responseData.getCleanText(), false);
+    // notice 说明消息为什么没有立即发送
+    private void queueOffline(AIService.ChatCall chat, String notice) {
+        chatOutbox.enqueue(itineraryId, chat.getMessage(), chat.getRequestId());
+        mainHandler.post(() -> {
+            if (currentChat == chat) {
+                currentChat = null;
+            }
+            addMessage(notice, false);
+        });
+    }
+
+    // 在当前线程执行聊天请求，文本边到达边显示，完成后处理结构化数据
+    private void executeChat(AIService.ChatCall chat) throws Exception {
+        mainHandler.post(() -> {
+            recommendationsRecyclerView.setVisibility(View.GONE);
+            // 清除当前适配器的数据，避免显示旧数据
+            if (recommendationsAdapter != null) {
+                recommendationsAdapter.updateRecommendations(new ArrayList<>());
+            }
+            if (poiRecommendationsAdapter != null) {
+                poiRecommendationsAdapter.updateRecommendations(new ArrayList<>());
+            }
+            Toast.makeText(AIChatActivity.this, "正在处理您的请求...", Toast.LENGTH_SHORT).show();
+        });
+
+        // 流式接收AI响应，文本边到达边显示在同一条消息中
+        ChatMessage streamingMessage = new ChatMessage("", false);
+        AIService.AIResponseData responseData = chat.execute(text -> mainHandler.post(() -> {
+            if (!chat.isCanceled()) {
+                appendToStreamingMessage(streamingMessage, text);
+            }
+        }));
         
-        // 检查是否有结构化数据
+        mainHandler.post(() -> {
+            if (chat.isCanceled()) {
+                return;
+            }
+            if (currentChat == chat) {
+                currentChat = null;
+            }
+            // 用完整的纯文本校正流式显示的内容
+            int position = chatMessages.indexOf(streamingMessage);
+            if (position >= 0) {
+                streamingMessage.setMessage(responseData.getCleanText());
+                chatAdapter.notifyItemChanged(position);
+            } else {
+                addMessage(responseData.getCleanText(), false);
+            }
+            
+            // 处理结构化数据
+            if (responseData.hasStructuredData()) {
+                handleStructuredData(responseData);
+            }
+        });
+    }
+
+    // 在 outbox 线程上重放离线时保存的消息，沿用原来的幂等键
+    private void replayQueuedMessage(ChatOutbox.PendingMessage pending) throws Exception {
+        AIService.ChatCall chat = aiService.newChatCall(pending.getMessage(), itineraryId, dbHelper,
+                pending.getIdempotencyKey());
+        replayingChat = chat;
+        try {
+            executeChat(chat);
+        } finally {
+            replayingChat = null;
+        }
+    }
+
+    // 根据数据类型处理AI返回的结构化数据
+    private void handleStructuredData(AIService.AIResponseData responseData) {
         if (responseData.hasStructuredData()) {
             String dataType = responseData.getDataType();
-            JSONObject structuredData = responseData.getStructuredData();
+            ChatResponse structuredData = responseData.getStructuredData();
             Log.d(TAG, "收到结构化数据，类型: " + dataType);
             
             try {
                 switch (dataType) {
-                    case "restaurant_recommendations":
-                        handleRestaurantRecommendations(structuredData);
+                    case ChatResponse.RESTAURANT_RECOMMENDATIONS:
+                        handleRestaurantRecommendations(structuredData.getRestaurantRecommendations().getRecommendations());
                         break;
-                    case "poi_recommendations":
-                        handlePOIRecommendations(structuredData);
+                    case ChatResponse.POI_RECOMMENDATIONS:
+                        handlePOIRecommendations(structuredData.getPoiRecommendations(), responseData.isSessionless());
                         break;
-                    case "poi_replace":
-                        handlePOIReplacement(structuredData);
+                    case ChatResponse.POI_REPLACE:
+                        handlePOIReplacement(structuredData.getPoiRecommendations());
                         break;
-                    case "itinerary_update":
-                        handleItineraryUpdate(structuredData);
+                    case ChatResponse.ITINERARY_UPDATE:
+                        handleItineraryUpdate();
                         break;
-                    case "optimized_itinerary":
-                        handleOptimizedItinerary(structuredData);
+                    case ChatResponse.OPTIMIZED_ITINERARY:
+                        handleOptimizedItinerary(structuredData.getOptimizedItinerary());
                         break;
                     default:
                         Log.d(TAG, "未知的数据类型: " + dataType);
@@ -316,35 +459,28 @@ public class AIChatActivity extends AppCompatActivity implements
         }
     }
 
-    private void handleRestaurantRecommendations(JSONObject data) throws JSONException {
-        JSONArray recommendations = data.getJSONArray("recommendations");
-        List<RecommendedRestaurant> items = new ArrayList<>();
-        
-        for (int i = 0; i < recommendations.length(); i++) {
-            JSONObject rec = recommendations.getJSONObject(i);
-            items.add(new RecommendedRestaurant(rec));
-        }
-
+    private void handleRestaurantRecommendations(List<RecommendedRestaurant> items) {
         // 确保使用餐厅推荐适配器
-        recommendationsRecyclerView.setAdapter(recommendationsAdapter);
+        showRecommendationAdapter(recommendationsAdapter);
         recommendationsRecyclerView.setVisibility(View.VISIBLE);
         recommendationsAdapter.updateRecommendations(items);
         
         Log.d(TAG, "已更新餐厅推荐，数量: " + items.size());
     }
 
-    private void handlePOIRecommendations(JSONObject data) throws JSONException {
-        JSONArray recommendations = data.getJSONArray("recommendations");
-        List<RecommendedPOI> items = new ArrayList<>();
-        
-        for (int i = 0; i < recommendations.length(); i++) {
-            JSONObject rec = recommendations.getJSONObject(i);
-            if (i == 0) {
-                // 为第一个POI添加日和序号，确保能正确更新行程
-                rec.put("day", 1);  // 默认添加到第1天
-                rec.put("order", 1); // 默认作为第1个景点
-            }
-            items.add(new RecommendedPOI(rec));
+    // 切换推荐列表的适配器；用 swapAdapter 并保留已有卡片，setAdapter 会清空回收池
+    private void showRecommendationAdapter(RecyclerView.Adapter<?> adapter) {
+        if (recommendationsRecyclerView.getAdapter() != adapter) {
+            recommendationsRecyclerView.swapAdapter(adapter, false);
+        }
+    }
+
+    // sessionless 为 true 时推荐来自按天并发的子请求，后端会话不知道这些候选，选择后不再通知会话
+    private void handlePOIRecommendations(PoiRecommendations data, boolean sessionless) {
+        List<RecommendedPOI> items = data.getRecommendations();
+        if (!items.isEmpty() && !items.get(0).hasSlot()) {
+            // 为第一个POI添加日和序号，确保能正确更新行程
+            items.get(0).setSlot(1, 1);  // 默认添加到第1天的第1个景点
         }
 
         // 使用新的POI推荐对话框替代列表显示
@@ -352,7 +488,7 @@ public class AIChatActivity extends AppCompatActivity implements
             @Override
             public void onPOIsSelected(List<RecommendedPOI> selectedPOIs) {
                 // 处理用户选择的多个POI
-                processPOISelections(selectedPOIs);
+                processPOISelections(selectedPOIs, !sessionless);
             }
 
             @Override
@@ -374,39 +510,43 @@ public class AIChatActivity extends AppCompatActivity implements
     }
 
     // 添加处理多个POI选择的新方法
-    private void processPOISelections(List<RecommendedPOI> selectedPOIs) {
+    private void processPOISelections(List<RecommendedPOI> selectedPOIs, boolean notifySession) {
         if (selectedPOIs == null || selectedPOIs.isEmpty()) {
             Log.w(TAG, "未选择任何POI");
             return;
         }
+        if (!notifySession) {
+            // 按天推荐的候选都指向当天末尾，同一天选了多个时依次往后排，不要写到同一个位置上
+            Map<Integer, Integer> usedOrders = new HashMap<>();
+            for (RecommendedPOI poi : selectedPOIs) {
+                Integer previous = usedOrders.get(poi.getDay());
+                if (previous != null && poi.getOrder() <= previous) {
+                    poi.setSlot(poi.getDay(), previous + 1);
+                }
+                usedOrders.put(poi.getDay(), poi.getOrder());
+            }
+        }
         
-        executorService.execute(() -> {
+        DatabaseExecutor.write(() -> {
             boolean allSuccess = true;
             StringBuilder resultMessage = new StringBuilder("已添加以下景点到您的行程：\n");
             
             for (RecommendedPOI poi : selectedPOIs) {
                 try {
-                    // 获取POI的原始JSON数据
-                    JSONObject poiData = poi.getOriginalData();
-                    if (poiData != null) {
-                        // 确保有day和order字段
-                        int day = poiData.optInt("day", 1);
-                        int order = poiData.optInt("order", 1);
-                        Log.d(TAG, "处理POI - " + poi.getName() + ", day: " + day + ", order: " + order);
-                        
-                        // 更新到行程中
-                        boolean success = aiService.updateItineraryWithPOIRecommendation(
-                            itineraryId, 
-                            poiData,
-                            dbHelper
-                        );
-                        
-                        if (success) {
-                            resultMessage.append("• ").append(poi.getName()).append("\n");
-                        } else {
-                            allSuccess = false;
-                            Log.e(TAG, "添加POI失败: " + poi.getName());
-                        }
+                    Log.d(TAG, "处理POI - " + poi.getName() + ", day: " + poi.getDay() + ", order: " + poi.getOrder());
+                    
+                    // 更新到行程中
+                    boolean success = aiService.updateItineraryWithPOIRecommendation(
+                        itineraryId, 
+                        poi,
+                        dbHelper
+                    );
+                    
+                    if (success) {
+                        resultMessage.append("• ").append(poi.getName()).append("\n");
+                    } else {
+                        allSuccess = false;
+                        Log.e(TAG, "添加POI失败: " + poi.getName());
                     }
                 } catch (Exception e) {
                     allSuccess = false;
@@ -416,9 +556,6 @@ public class AIChatActivity extends AppCompatActivity implements
             
             final boolean finalSuccess = allSuccess;
             mainHandler.post(() -> {
-                // 重新加载行程数据
-                loadItineraryData();
-                
                 // 显示结果消息
                 if (finalSuccess) {
                     addMessage(resultMessage.toString(), false);
@@ -427,9 +564,7 @@ public class AIChatActivity extends AppCompatActivity implements
                 }
                 StringBuilder selectedNames = new StringBuilder();
                 for (RecommendedPOI poi : selectedPOIs) {
-                    // 获取POI的原始JSON数据
-                    JSONObject poiData = poi.getOriginalData();
-                    String name = poiData.optString("name");
+                    String name = poi.getName();
                     // 将名称添加到字符串构建器中
                     if (selectedNames.length() > 0) {
                         selectedNames.append(", "); // 添加逗号分隔
@@ -437,81 +572,84 @@ public class AIChatActivity extends AppCompatActivity implements
                     selectedNames.append(name);
                 }
                 // 向AI发送确认消息
-                sendMessage("我已选择了" +selectedNames.toString());
+                if (notifySession) {
+                    sendMessage("我已选择了" +selectedNames.toString());
+                }
             });
         });
     }
 
-    private void handleItineraryUpdate(JSONObject data) {
+    private void handleItineraryUpdate() {
         loadItineraryData();  // 重新加载行程数据
     }
 
     // 处理优化后的行程
-    private void handleOptimizedItinerary(JSONObject data) {
-        try {
-            JSONObject itineraryData = data.getJSONObject("itinerary");
-            Log.d(TAG, "收到优化行程数据: " + itineraryData.toString());
-            
-            // 从JSON提取行程景点数据
-            ArrayList<ItineraryAttraction> optimizedAttractions = new ArrayList<>();
-            JSONArray attractions = itineraryData.getJSONArray("attractions");
-            
-            for (int i = 0; i < attractions.length(); i++) {
-                JSONObject attraction = attractions.getJSONObject(i);
-                
-                String name = attraction.getString("name");
-                int day = attraction.getInt("day");
-                int order = attraction.getInt("order");
-                String type = attraction.optString("type", "景点");
-                String transport = attraction.optString("transport", "步行");
-                String poi_id=attraction.getString("poi_id");
-                double latitude=attraction.getDouble("latitude");
-                double longitude=attraction.getDouble("longitude");
-                String address=attraction.getString("address");
-                String tel=attraction.getString("tel");
-                String type_desc=attraction.getString("type_desc");
-                Long uid=dbHelper.addOrGetSite(poi_id,name,latitude,longitude,address,"",tel,"",type_desc,"");
-                                // 创建新的ItineraryAttraction对象
-                ItineraryAttraction item = new ItineraryAttraction(
-                    itineraryId,
-                    uid, // 景点ID可能需要从其他地方获取
-                    day,
-                    order,
-                    name,
-                    transport,
-                    type
-                );
-                
-                // 如果有推荐理由，设置为AI推荐
-                if (attraction.has("reason") && !attraction.optString("reason").isEmpty()) {
-                    item.setAiRecommended(true);
-                    item.setAiRecommendReason(attraction.optString("reason"));
-                }
-                
-                optimizedAttractions.add(item);
+    private void handleOptimizedItinerary(OptimizedItinerary data) {
+        if (data == null) {
+            Log.e(TAG, "优化行程数据为空");
+            return;
+        }
+        Log.d(TAG, "收到优化行程数据，景点数: " + data.getAttractions().size());
+
+        ArrayList<ItineraryAttraction> optimizedAttractions = new ArrayList<>();
+        List<Sites> sites = new ArrayList<>();
+        for (OptimizedItinerary.Attraction attraction : data.getAttractions()) {
+            Sites site = new Sites();
+            site.setPoiId(attraction.getPoiId());
+            site.setName(attraction.getName());
+            site.setLatitude(attraction.getLatitude());
+            site.setLongitude(attraction.getLongitude());
+            site.setAddress(attraction.getAddress());
+            site.setTel(attraction.getTel());
+            site.setTypeDesc(attraction.getTypeDesc());
+            sites.add(site);
+            // 创建新的ItineraryAttraction对象，siteId 在批量获取后回填
+            ItineraryAttraction item = new ItineraryAttraction(
+                itineraryId,
+                -1,
+                attraction.getDay(),
+                attraction.getOrder(),
+                attraction.getName(),
+                attraction.getTransport(),
+                attraction.getType()
+            );
+
+            // 如果有推荐理由，设置为AI推荐
+            String reason = attraction.getReason();
+            if (reason != null && !reason.isEmpty()) {
+                item.setAiRecommended(true);
+                item.setAiRecommendReason(reason);
             }
-            
+
+            optimizedAttractions.add(item);
+        }
+
+        // 在后台一次性添加或获取所有景点的 siteId，完成后更新界面
+        DatabaseExecutor.write(() -> dbHelper.addOrGetSites(sites), siteIds -> {
+            if (siteIds == null) {
+                Toast.makeText(this, "保存景点信息失败，请重试", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            for (int i = 0; i < siteIds.length; i++) {
+                optimizedAttractions.get(i).setSiteId(siteIds[i]);
+            }
+
             // 使用现有适配器更新数据
             itineraryDetailAdapter.updateAttractions(optimizedAttractions);
-            
+
             // 显示保存按钮
             saveButton.setVisibility(View.VISIBLE);
-            
-        } catch (JSONException e) {
-            Log.e(TAG, "解析优化行程数据出错", e);
-        }
+        });
     }
     
     // 保存优化后的行程
     private void saveOptimizedItinerary() {
-        executorService.execute(() -> {
+        DatabaseExecutor.write(() -> {
             final boolean success = aiService.saveOptimizedItinerary(itineraryId, dbHelper);
             
             mainHandler.post(() -> {
                 if (success) {
                     Toast.makeText(this, "行程保存成功！", Toast.LENGTH_SHORT).show();
-                    // 重新加载行程数据
-                    loadItineraryData();
                     // 通知AI用户已保存行程
                     sendMessage("我已保存了优化后的行程");
                 } else {
@@ -523,26 +661,20 @@ public class AIChatActivity extends AppCompatActivity implements
 
     @Override
     public void onSelectClick(RecommendedRestaurant restaurant) {
-        executorService.execute(() -> {
+        DatabaseExecutor.write(() -> {
             try {
                 // 保存原始行程内容
                 String originalName = "";
                 
                 // 获取日期和顺序
-                int day = 0;
-                int order = 0;
+                int day = restaurant.getDay();
+                int order = restaurant.getOrder();
                 
-                // 从restaurant对象的原始数据中获取day和order
-                if (restaurant.getOriginalData() != null) {
-                    day = restaurant.getOriginalData().optInt("day", 0);
-                    order = restaurant.getOriginalData().optInt("order", 0);
-                    
-                    // 根据日子和序号获取被替换的景点名称
-                    for (ItineraryAttraction attraction : itineraryAttractions) {
-                        if (attraction.getDayNumber() == day && attraction.getVisitOrder() == order) {
-                            originalName = attraction.getAttractionName();
-                            break;
-                        }
+                // 根据日子和序号获取被替换的景点名称
+                for (ItineraryAttraction attraction : itineraryAttractions) {
+                    if (attraction.getDayNumber() == day && attraction.getVisitOrder() == order) {
+                        originalName = attraction.getAttractionName();
+                        break;
                     }
                 }
                 
@@ -573,9 +705,6 @@ public class AIChatActivity extends AppCompatActivity implements
                         // 隐藏推荐列表
                         recommendationsRecyclerView.setVisibility(View.GONE);
                         
-                        // 重新加载行程数据
-                        loadItineraryData();
-                        
                         // 标记有变更
                         hasChanges = true;
                     } else {
@@ -584,21 +713,6 @@ public class AIChatActivity extends AppCompatActivity implements
                     }
                 });
                 
-                executorService.execute(() -> {
-                    try {
-                        // 延迟一下等待数据库刷新
-                        Thread.sleep(500);
-                        
-                        // 获取新添加的餐厅景点ID
-                        ArrayList<ItineraryAttraction> updatedAttractions = 
-                            dbHelper.getItineraryAttractions(itineraryId);
-                        
-                        
-                    } catch (Exception e) {
-                        Log.e(TAG, "保存AI推荐记录失败", e);
-                    }
-                });
-                
                 recommendationsRecyclerView.setVisibility(View.GONE);
             } catch (Exception e) {
                 mainHandler.post(() -> {
@@ -673,74 +787,49 @@ public class AIChatActivity extends AppCompatActivity implements
 
     @Override
     public void onSelectClick(RecommendedPOI poi) {
-        executorService.execute(() -> {
+        DatabaseExecutor.write(() -> {
             try {
                 // 保存原始行程内容
                 String originalName = "";
                 
-                // 获取POI的原始JSON数据
-                JSONObject poiData = poi.getOriginalData();
-                if (poiData != null) {
-                    // 确保有day和order字段
-                    int day = poiData.optInt("day", 1);
-                    int order = poiData.optInt("order", 1);
-                    Log.d(TAG, "选择POI - day: " + day + ", order: " + order);
-                    
-                    for (ItineraryAttraction attraction : itineraryAttractions) {
-                        if (attraction.getDayNumber() == day && attraction.getVisitOrder() == order) {
-                            originalName = attraction.getAttractionName();
-                            break;
-                        }
+                int day = poi.getDay();
+                int order = poi.getOrder();
+                Log.d(TAG, "选择POI - day: " + day + ", order: " + order);
+                
+                for (ItineraryAttraction attraction : itineraryAttractions) {
+                    if (attraction.getDayNumber() == day && attraction.getVisitOrder() == order) {
+                        originalName = attraction.getAttractionName();
+                        break;
                     }
-                    
-                    boolean success = aiService.updateItineraryWithPOIRecommendation(
-                        itineraryId, 
-                        poiData,
-                        dbHelper
-                    );
-
-                    final String finalOriginalName = originalName;
-                    
-                    mainHandler.post(() -> {
-                        if (success) {
-                            // 重新加载行程数据
-                            loadItineraryData();
-                            
-                            // 添加一条AI消息，确认修改
-                            String aiMessage = String.format(
-                                "已将 Day %d 的「%s」修改为「%s」",
-                                day,
-                                finalOriginalName.isEmpty() ? "原项目" : finalOriginalName,
-                                poi.getName()
-                            );
-                            addMessage(aiMessage, false);
-                            
-                            // 保存推荐理由到数据库
-                            executorService.execute(() -> {
-                                try {
-                                    // 延迟一下等待数据库刷新
-                                    Thread.sleep(500);
-                                    // 获取新添加的景点ID
-                                    ArrayList<ItineraryAttraction> updatedAttractions = 
-                                        dbHelper.getItineraryAttractions(itineraryId);
-                                } catch (Exception e) {
-                                    Log.e(TAG, "保存AI推荐记录失败", e);
-                                }
-                            });
-                            
-                            // 向后端发送确认选择的消息
-                            sendMessage("我选择了景点：" + poi.getName());
-                            
-                            recommendationsRecyclerView.setVisibility(View.GONE);
-                        } else {
-                            Toast.makeText(this, "更新行程失败: 请检查景点信息是否完整", Toast.LENGTH_SHORT).show();
-                        }
-                    });
-                } else {
-                    mainHandler.post(() -> 
-                        Toast.makeText(this, "更新行程失败: 缺少景点数据", Toast.LENGTH_SHORT).show()
-                    );
                 }
+                
+                boolean success = aiService.updateItineraryWithPOIRecommendation(
+                    itineraryId, 
+                    poi,
+                    dbHelper
+                );
+
+                final String finalOriginalName = originalName;
+                
+                mainHandler.post(() -> {
+                    if (success) {
+                        // 添加一条AI消息，确认修改
+                        String aiMessage = String.format(
+                            "已将 Day %d 的「%s」修改为「%s」",
+                            day,
+                            finalOriginalName.isEmpty() ? "原项目" : finalOriginalName,
+                            poi.getName()
+                        );
+                        addMessage(aiMessage, false);
+                        
+                        // 向后端发送确认选择的消息
+                        sendMessage("我选择了景点：" + poi.getName());
+                        
+                        recommendationsRecyclerView.setVisibility(View.GONE);
+                    } else {
+                        Toast.makeText(this, "更新行程失败: 请检查景点信息是否完整", Toast.LENGTH_SHORT).show();
+                    }
+                });
             } catch (Exception e) {
                 mainHandler.post(() -> {
                     Log.e(TAG, "更新行程失败", e);
@@ -785,6 +874,21 @@ public class AIChatActivity extends AppCompatActivity implements
         chatAdapter.notifyItemInserted(chatMessages.size() - 1);
         chatRecyclerView.scrollToPosition(chatMessages.size() - 1);
     }
+
+    // 收到第一段文本时插入AI消息，之后只刷新这一条
+    private void appendToStreamingMessage(ChatMessage streamingMessage, String text) {
+        int position = chatMessages.indexOf(streamingMessage);
+        if (position < 0) {
+            streamingMessage.setMessage(text);
+            chatMessages.add(streamingMessage);
+            position = chatMessages.size() - 1;
+            chatAdapter.notifyItemInserted(position);
+        } else {
+            streamingMessage.setMessage(streamingMessage.getMessage() + text);
+            chatAdapter.notifyItemChanged(position);
+        }
+        chatRecyclerView.scrollToPosition(position);
+    }
     
     @Override
     public void onBackPressed() {
@@ -794,32 +898,37 @@ public class AIChatActivity extends AppCompatActivity implements
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        itineraryRepository.removeListener(itineraryChangeListener);
+        // 离开页面时放弃进行中的聊天请求，不再回调已销毁的界面；未送达的离线消息留在队列中
+        chatOutbox.detach(itineraryId, outboxDeliverer);
+        if (currentChat != null) {
+            currentChat.cancel();
+            currentChat = null;
+        }
+        AIService.ChatCall replaying = replayingChat;
+        if (replaying != null) {
+            replaying.cancel();
+        }
         executorService.shutdown();
     }
 
-    private void handlePOIReplacement(JSONObject data) throws JSONException {
+    private void handlePOIReplacement(PoiRecommendations data) {
         // 获取推荐列表
-        JSONArray recommendations = data.getJSONArray("recommendations");
-        List<RecommendedPOI> items = new ArrayList<>();
+        List<RecommendedPOI> items = data.getRecommendations();
         
         // 获取替换POI的信息
-        JSONObject replaceInfo = data.getJSONObject("replace_poi_info");
-        JSONObject targetPoi = replaceInfo.getJSONObject("target_poi");
-        
-        // 预先提取目标POI的名称，避免在匿名类中处理异常
-        final String targetPoiName = targetPoi.getString("name");
+        PoiRecommendations.TargetPoi targetPoi = data.getTargetPoi();
+        if (targetPoi == null) {
+            Log.e(TAG, "缺少被替换景点的信息");
+            return;
+        }
+        final String targetPoiName = targetPoi.getName();
         
-        // 处理推荐数据
-        for (int i = 0; i < recommendations.length(); i++) {
-            JSONObject rec = recommendations.getJSONObject(i);
-            // 确保每个推荐都包含day和order信息(与被替换景点相同)
-            if (!rec.has("day") || !rec.has("order")) {
-                int day = targetPoi.getInt("day");
-                int order = targetPoi.getInt("order");
-                rec.put("day", day);
-                rec.put("order", order);
-            }
-            items.add(new RecommendedPOI(rec));
+        // 确保每个推荐都包含day和order信息(与被替换景点相同)
+        for (RecommendedPOI poi : items) {
+            if (!poi.hasSlot()) {
+                poi.setSlot(targetPoi.getDay(), targetPoi.getOrder());
+            }
         }
 
         // 使用POI替换对话框
@@ -849,48 +958,37 @@ public class AIChatActivity extends AppCompatActivity implements
     }
 
     private void processReplacementSelection(RecommendedPOI selectedPOI, String originalName) {
-        executorService.execute(() -> {
+        DatabaseExecutor.write(() -> {
             try {
-                // 获取POI的原始JSON数据
-                JSONObject poiData = selectedPOI.getOriginalData();
-                if (poiData != null) {
-                    // 获取day和order字段
-                    int day = poiData.optInt("day", 1);
-                    int order = poiData.optInt("order", 1);
-                    Log.d(TAG, "替换POI - 将替换day: " + day + ", order: " + order + "的景点");
-                    
-                    // 更新到行程中
-                    boolean success = aiService.updateItineraryWithPOIRecommendation(
-                        itineraryId, 
-                        poiData,
-                        dbHelper
-                    );
+                // 获取day和order字段
+                int day = selectedPOI.getDay();
+                int order = selectedPOI.getOrder();
+                Log.d(TAG, "替换POI - 将替换day: " + day + ", order: " + order + "的景点");
+                
+                // 更新到行程中
+                boolean success = aiService.updateItineraryWithPOIRecommendation(
+                    itineraryId, 
+                    selectedPOI,
+                    dbHelper
+                );
 
-                    mainHandler.post(() -> {
-                        if (success) {
-                            // 重新加载行程数据
-                            loadItineraryData();
-                            
-                            // 添加一条AI消息，确认替换
-                            String aiMessage = String.format(
-                                "已将第%d天的「%s」替换为「%s」✓",
-                                day,
-                                originalName,
-                                selectedPOI.getName()
-                            );
-                            addMessage(aiMessage, false);
-                            
-                            // 向AI发送确认选择的消息
-                            sendMessage("我已选择替换为" + selectedPOI.getName());
-                        } else {
-                            Toast.makeText(this, "替换景点失败，请重试", Toast.LENGTH_SHORT).show();
-                        }
-                    });
-                } else {
-                    mainHandler.post(() -> 
-                        Toast.makeText(this, "替换景点失败: 缺少景点数据", Toast.LENGTH_SHORT).show()
-                    );
-                }
+                mainHandler.post(() -> {
+                    if (success) {
+                        // 添加一条AI消息，确认替换
+                        String aiMessage = String.format(
+                            "已将第%d天的「%s」替换为「%s」✓",
+                            day,
+                            originalName,
+                            selectedPOI.getName()
+                        );
+                        addMessage(aiMessage, false);
+                        
+                        // 向AI发送确认选择的消息
+                        sendMessage("我已选择替换为" + selectedPOI.getName());
+                    } else {
+                        Toast.makeText(this, "替换景点失败，请重试", Toast.LENGTH_SHORT).show();
+                    }
+                });
             } catch (Exception e) {
                 mainHandler.post(() -> {
                     Log.e(TAG, "替换景点失败", e);
@@ -31,6 +31,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.amap.api.services.core.ServiceSettings;
 
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.Itinerary;
 import com.example.trave.Domains.ItineraryAttraction;
@@ -81,7 +82,7 @@ public class CreateItineraryActivity extends AppCompatActivity implements Inputt
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_create_itinerary);
 
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
         itineraryNameEditText = findViewById(R.id.itineraryNameEditText);
         itineraryLocationEditText=findViewById(R.id.itineraryLocationEditText);
         dayNumberEditText = findViewById(R.id.dayNumberEditText);
@@ -233,37 +234,45 @@ public class CreateItineraryActivity extends AppCompatActivity implements Inputt
             Log.d("CreateItineraryActivity", "景点名称: " + attractionName);
             Log.d("CreateItineraryActivity", "类型描述: " + typeDesc);
 
-            // 保存或获取景点
-            long siteId = dbHelper.addOrGetSite(selectedPoi, attractionName, latitude, longitude, address,
-                    rating, tel, website, typeDesc, photos);
-            Log.d("CreateItineraryActivity", "获取到的 siteId: " + siteId);
+            String name = attractionName;
+            DatabaseExecutor.write(() -> {
+                // 保存或获取景点
+                long siteId = dbHelper.addOrGetSite(selectedPoi, name, latitude, longitude, address,
+                        rating, tel, website, typeDesc, photos);
+                Log.d("CreateItineraryActivity", "获取到的 siteId: " + siteId);
 
-            if (siteId == -1) {
-                Toast.makeText(this, "添加景点失败", Toast.LENGTH_SHORT).show();
-                return;
-            }
+                if (siteId == -1) {
+                    return null;
+                }
 
-            // 创建ItineraryAttraction对象
-            ItineraryAttraction itineraryAttraction = new ItineraryAttraction(siteId, dayNumber, visitOrder, attractionName, transport);
+                // 创建ItineraryAttraction对象
+                ItineraryAttraction itineraryAttraction = new ItineraryAttraction(siteId, dayNumber, visitOrder, name, transport);
             
-            // 获取景点类型
-            Sites site = dbHelper.getSiteBySiteId(siteId);
-            if (site != null) {
-                String type = dbHelper.determineAttractionType(site.getTypeDesc());
-                itineraryAttraction.setType(type);
-                Log.d("CreateItineraryActivity", "设置景点类型: " + type);
-            }
+                // 获取景点类型
+                Sites site = dbHelper.getSiteBySiteId(siteId);
+                if (site != null) {
+                    String type = dbHelper.determineAttractionType(site.getTypeDesc());
+                    itineraryAttraction.setType(type);
+                    Log.d("CreateItineraryActivity", "设置景点类型: " + type);
+                }
+                return itineraryAttraction;
+            }, itineraryAttraction -> {
+                if (itineraryAttraction == null) {
+                    Toast.makeText(this, "添加景点失败", Toast.LENGTH_SHORT).show();
+                    return;
+                }
 
-            itineraryAttractionList.add(itineraryAttraction);
-            Log.d("CreateItineraryActivity", "添加到列表的景点: " + itineraryAttraction.toString());
+                itineraryAttractionList.add(itineraryAttraction);
+                Log.d("CreateItineraryActivity", "添加到列表的景点: " + itineraryAttraction.toString());
 
-            // 清空输入框
-            dayNumberEditText.setText("");
-            visitOrderEditText.setText("");
-            attractionNameEditText.setText("");
-            transportEditText.setText("");
+                // 清空输入框
+                dayNumberEditText.setText("");
+                visitOrderEditText.setText("");
+                attractionNameEditText.setText("");
+                transportEditText.setText("");
 
-            Toast.makeText(this, "景点已添加", Toast.LENGTH_SHORT).show();
+                Toast.makeText(this, "景点已添加", Toast.LENGTH_SHORT).show();
+            });
         } catch (Exception e) {
             Log.e("CreateItineraryActivity", "添加景点时出错: " + e.getMessage());
             Toast.makeText(this, "添加景点失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
@@ -287,7 +296,7 @@ public class CreateItineraryActivity extends AppCompatActivity implements Inputt
             }
 
             // 获取用户ID
-            SharedPreferences prefs = getSharedPreferences("login_prefs", MODE_PRIVATE);
+            SharedPreferences prefs = getApplicationContext().getSharedPreferences("login_prefs", MODE_PRIVATE);
             long userId = prefs.getLong("user_id", -1);
             if (userId == -1) {
                 Toast.makeText(this, "请先登录", Toast.LENGTH_SHORT).show();
@@ -298,51 +307,58 @@ public class CreateItineraryActivity extends AppCompatActivity implements Inputt
             int status = 0; // 默认为草稿状态
             Itinerary newItinerary = new Itinerary(itineraryName, itineraryLocation, "pic3", userId, status);
             
-            // 保存行程单并获取ID
-            newItinerary_id = dbHelper.addItinerary(newItinerary);
-            Log.d("CreateItineraryActivity", "创建的行程单ID: " + newItinerary_id);
+            DatabaseExecutor.write(() -> {
+                // 保存行程单并获取ID
+                newItinerary_id = dbHelper.addItinerary(newItinerary);
+                Log.d("CreateItineraryActivity", "创建的行程单ID: " + newItinerary_id);
 
-            if (newItinerary_id == -1) {
-                Toast.makeText(this, "创建行程单失败", Toast.LENGTH_SHORT).show();
-                return;
-            }
-
-            // 保存所有景点
-            int days = 0;
-            for (ItineraryAttraction attraction : itineraryAttractionList) {
-                // 设置行程单ID
-                attraction.setItineraryId(newItinerary_id);
-                Log.d("CreateItineraryActivity", "保存景点 - 行程单ID: " + attraction.getItineraryId() + ", 景点ID: " + attraction.getSiteId());
-
-                // 保存景点
-                long attractionId = dbHelper.addAttraction(attraction);
-                if (attractionId == -1) {
-                    Log.e("CreateItineraryActivity", "保存景点失败: " + attraction.getAttractionName());
+                if (newItinerary_id == -1) {
+                    return -1;
                 }
 
-                // 更新天数
-                if (attraction.getDayNumber() > days) {
-                    days = attraction.getDayNumber();
+                // 保存所有景点
+                int days = 0;
+                for (ItineraryAttraction attraction : itineraryAttractionList) {
+                    // 设置行程单ID
+                    attraction.setItineraryId(newItinerary_id);
+                    Log.d("CreateItineraryActivity", "保存景点 - 行程单ID: " + attraction.getItineraryId() + ", 景点ID: " + attraction.getSiteId());
+
+                    // 保存景点
+                    long attractionId = dbHelper.addAttraction(attraction);
+                    if (attractionId == -1) {
+                        Log.e("CreateItineraryActivity", "保存景点失败: " + attraction.getAttractionName());
+                    }
+
+                    // 更新天数
+                    if (attraction.getDayNumber() > days) {
+                        days = attraction.getDayNumber();
+                    }
                 }
-            }
 
-            // 更新行程单天数
-            newItinerary.setDays(days);
-            if (!dbHelper.updateItinerary(newItinerary)) {
-                Log.e("CreateItineraryActivity", "更新行程单天数失败");
-            }
+                // 更新行程单天数
+                newItinerary.setDays(days);
+                if (!dbHelper.updateItinerary(newItinerary)) {
+                    Log.e("CreateItineraryActivity", "更新行程单天数失败");
+                }
+                return days;
+            }, days -> {
+                if (days == -1) {
+                    Toast.makeText(this, "创建行程单失败", Toast.LENGTH_SHORT).show();
+                    return;
+                }
 
-            // 返回结果
-            Intent resultIntent = new Intent();
-            resultIntent.putExtra("itineraryId", newItinerary_id);
-            resultIntent.putExtra("itineraryLocation", itineraryLocation);
-            resultIntent.putExtra("itineraryName", itineraryName);
-            resultIntent.putExtra("days", days);
-            resultIntent.putParcelableArrayListExtra("itineraryAttractions", itineraryAttractionList);
-            setResult(RESULT_OK, resultIntent);
-
-            Toast.makeText(this, "行程单保存成功", Toast.LENGTH_SHORT).show();
-            finish();
+                // 返回结果
+                Intent resultIntent = new Intent();
+                resultIntent.putExtra("itineraryId", newItinerary_id);
+                resultIntent.putExtra("itineraryLocation", itineraryLocation);
+                resultIntent.putExtra("itineraryName", itineraryName);
+                resultIntent.putExtra("days", days);
+                resultIntent.putParcelableArrayListExtra("itineraryAttractions", itineraryAttractionList);
+                setResult(RESULT_OK, resultIntent);
+
+                Toast.makeText(this, "行程单保存成功", Toast.LENGTH_SHORT).show();
+                finish();
+            });
 
         } catch (Exception e) {
             Log.e("CreateItineraryActivity", "保存行程单时出错: " + e.getMessage());
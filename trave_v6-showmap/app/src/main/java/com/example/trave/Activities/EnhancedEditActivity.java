@@ -35,6 +35,7 @@ import com.amap.api.services.poisearch.Photo;
 import com.amap.api.services.poisearch.PoiResult;
 import com.amap.api.services.poisearch.PoiSearch;
 import com.example.trave.Adapters.CollapsibleDayAdapter;
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.ItineraryAttraction;
 import com.example.trave.R;
@@ -84,7 +85,7 @@ public class EnhancedEditActivity extends AppCompatActivity implements Inputtips
         setContentView(R.layout.activity_enhanced_edit);
         
         // 初始化数据库
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
 
         // 初始化视图
         initViews();
@@ -250,25 +251,25 @@ public class EnhancedEditActivity extends AppCompatActivity implements Inputtips
                     
                     // 创建新的景点对象
                     ItineraryAttraction newAttraction;
+                    Sites poiSite = null;
                     
                     if (selectedPoi != null && !selectedPoi.isEmpty()) {
-                        // 如果使用了POI搜索
-                        long siteId = dbHelper.addOrGetSite(
-                                selectedPoi,
-                                attractionName != null ? attractionName : name,
-                                latitude,
-                                longitude,
-                                address,
-                                businessArea,
-                                tel,
-                                website,
-                                typeDesc,
-                                photos
-                        );
+                        // 如果使用了POI搜索，siteId 在后台保存景点时获取
+                        poiSite = new Sites();
+                        poiSite.setPoiId(selectedPoi);
+                        poiSite.setName(attractionName != null ? attractionName : name);
+                        poiSite.setLatitude(latitude);
+                        poiSite.setLongitude(longitude);
+                        poiSite.setAddress(address);
+                        poiSite.setBusinessArea(businessArea);
+                        poiSite.setTel(tel);
+                        poiSite.setWebsite(website);
+                        poiSite.setTypeDesc(typeDesc);
+                        poiSite.setPhotos(photos);
                         
                         newAttraction = new ItineraryAttraction(
                                 itineraryId,
-                                siteId,
+                                -1,
                                 dayNumber,
                                 1, // 默认顺序，会在适配器中更新
                                 attractionName != null ? attractionName : name,
@@ -292,18 +293,35 @@ public class EnhancedEditActivity extends AppCompatActivity implements Inputtips
                     // 添加到适配器
                     collapsibleDayAdapter.addAttraction(newAttraction);
                     
-                    // 保存景点到数据库
-                    long attractionId = dbHelper.addAttraction(newAttraction);
-                    if (attractionId > 0) {
-                        newAttraction.setId(attractionId);
-                        Log.d(TAG, "新增景点保存成功: " + newAttraction.getAttractionName() + ", ID: " + attractionId);
+                    // 在后台保存景点到数据库
+                    final Sites siteToSave = poiSite;
+                    DatabaseExecutor.write(() -> {
+                        if (siteToSave != null) {
+                            newAttraction.setSiteId(dbHelper.addOrGetSite(
+                                    siteToSave.getPoiId(),
+                                    siteToSave.getName(),
+                                    siteToSave.getLatitude(),
+                                    siteToSave.getLongitude(),
+                                    siteToSave.getAddress(),
+                                    siteToSave.getBusinessArea(),
+                                    siteToSave.getTel(),
+                                    siteToSave.getWebsite(),
+                                    siteToSave.getTypeDesc(),
+                                    siteToSave.getPhotos()
+                            ));
+                        }
                         
-                        // 更新数据库中的行程天数
-                        boolean updated = dbHelper.updateItineraryDaysFromAttractions(itineraryId);
-                        Log.d(TAG, "添加景点后更新天数: " + (updated ? "成功" : "失败"));
-                    } else {
-                        Log.e(TAG, "新增景点保存失败: " + newAttraction.getAttractionName());
-                    }
+                        long attractionId = dbHelper.addAttraction(newAttraction);
+                        if (attractionId > 0) {
+                            Log.d(TAG, "新增景点保存成功: " + newAttraction.getAttractionName() + ", ID: " + attractionId);
+                            
+                            // 更新数据库中的行程天数
+                            boolean updated = dbHelper.updateItineraryDaysFromAttractions(itineraryId);
+                            Log.d(TAG, "添加景点后更新天数: " + (updated ? "成功" : "失败"));
+                        } else {
+                            Log.e(TAG, "新增景点保存失败: " + newAttraction.getAttractionName());
+                        }
+                    });
                     
                     // 关闭对话框
                     dialog.dismiss();
@@ -355,49 +373,45 @@ public class EnhancedEditActivity extends AppCompatActivity implements Inputtips
             return;
         }
         
-        // 首先删除原有的景点数据，避免数据冲突
-        dbHelper.deleteAttractionsForItinerary(itineraryId);
-        Log.d(TAG, "已删除行程原有景点数据");
-        
-        // 确保每个景点都有合法的 siteId 并保存到数据库
-        for (ItineraryAttraction attraction : allAttractions) {
-            if (attraction.getSiteId() <= 0) {
-                attraction.setSiteId(1); // 使用默认值1
+        // 在后台保存，完成后再返回结果
+        DatabaseExecutor.write(() -> {
+            // 确保每个景点都有合法的 siteId
+            for (ItineraryAttraction attraction : allAttractions) {
+                if (attraction.getSiteId() <= 0) {
+                    attraction.setSiteId(1); // 使用默认值1
+                }
             }
-            
-            // 确保景点有正确的行程ID
-            attraction.setItineraryId(itineraryId);
-            
-            // 保存景点到数据库
-            long attractionId = dbHelper.addAttraction(attraction);
-            if (attractionId > 0) {
-                attraction.setId(attractionId);
-                Log.d(TAG, "保存景点: " + attraction.getAttractionName() + ", ID: " + attractionId);
+
+            // 在一个事务中替换原有的景点数据
+            boolean saved = dbHelper.replaceAttractionsForItinerary(itineraryId, allAttractions);
+            if (saved) {
+                Log.d(TAG, "已保存行程景点: " + allAttractions.size());
             } else {
-                Log.e(TAG, "保存景点失败: " + attraction.getAttractionName());
+                Log.e(TAG, "保存行程景点失败");
             }
-        }
-        
-        // 现在数据库中的景点数据已经是最新的，可以正确计算天数
-        boolean daysUpdated = dbHelper.updateItineraryDaysFromAttractions(itineraryId);
-        if (daysUpdated) {
-            Log.d(TAG, "行程天数已自动更新");
-        } else {
-            Log.w(TAG, "行程天数更新失败");
-        }
-        
-        Intent resultIntent = new Intent();
-        resultIntent.putExtra("itineraryId", itineraryId);
-        Log.d(TAG, "ResultitineraryId " + itineraryId);
 
-        resultIntent.putExtra("itineraryTittle", itineraryName);
-        resultIntent.putParcelableArrayListExtra("itineraryAttractions", new ArrayList<>(allAttractions));
+            // 现在数据库中的景点数据已经是最新的，可以正确计算天数
+            boolean daysUpdated = dbHelper.updateItineraryDaysFromAttractions(itineraryId);
+            if (daysUpdated) {
+                Log.d(TAG, "行程天数已自动更新");
+            } else {
+                Log.w(TAG, "行程天数更新失败");
+            }
+            return saved;
+        }, saved -> {
+            Intent resultIntent = new Intent();
+            resultIntent.putExtra("itineraryId", itineraryId);
+            Log.d(TAG, "ResultitineraryId " + itineraryId);
 
-        Log.d(TAG, "Returning Itinerary ID: " + itineraryId);
-        Log.d(TAG, "Returning Attractions: " + allAttractions.size());
+            resultIntent.putExtra("itineraryTittle", itineraryName);
+            resultIntent.putParcelableArrayListExtra("itineraryAttractions", new ArrayList<>(allAttractions));
 
-        setResult(RESULT_OK, resultIntent);
-        finish();
+            Log.d(TAG, "Returning Itinerary ID: " + itineraryId);
+            Log.d(TAG, "Returning Attractions: " + allAttractions.size());
+
+            setResult(RESULT_OK, resultIntent);
+            finish();
+        });
     }
     
     @Override
@@ -490,8 +504,10 @@ public class EnhancedEditActivity extends AppCompatActivity implements Inputtips
         
         // 确保每次返回到编辑界面时都会更新天数
         if (itineraryId > 0 && dbHelper != null) {
-            boolean updated = dbHelper.updateItineraryDaysFromAttractions(itineraryId);
-            Log.d(TAG, "onResume中更新行程天数: " + (updated ? "成功" : "失败"));
+            DatabaseExecutor.write(() -> {
+                boolean updated = dbHelper.updateItineraryDaysFromAttractions(itineraryId);
+                Log.d(TAG, "onResume中更新行程天数: " + (updated ? "成功" : "失败"));
+            });
         }
     }
 } 
\ No newline at end of file
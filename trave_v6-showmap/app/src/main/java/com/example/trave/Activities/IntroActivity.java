@@ -20,7 +20,7 @@ public class IntroActivity extends AppCompatActivity {
         introBtn.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                SharedPreferences sharedPreferences = getSharedPreferences("login_prefs", MODE_PRIVATE);
+                SharedPreferences sharedPreferences = getApplicationContext().getSharedPreferences("login_prefs", MODE_PRIVATE);
                 long userId = sharedPreferences.getLong("user_id", -1);  // 获取用户ID
 
                 if (userId != -1) {
@@ -12,6 +12,7 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.constraintlayout.widget.ConstraintLayout;
 
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.R;
 
@@ -29,11 +30,13 @@ public class LoginActivity extends AppCompatActivity {
         passwordEditText = findViewById(R.id.passwordEditText);
         loginButton = findViewById(R.id.loginButton);
 
-        dbHelper = new DatabaseHelper(this);
-        if (dbHelper.getUserSize() == 0){
-            dbHelper.addUser("hhh","123");
-            dbHelper.addUser("jjj","123");
-        }
+        dbHelper = DatabaseHelper.getInstance(this);
+        DatabaseExecutor.write(() -> {
+            if (dbHelper.getUserSize() == 0){
+                dbHelper.addUser("hhh","123");
+                dbHelper.addUser("jjj","123");
+            }
+        });
 
         loginButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -41,24 +44,26 @@ public class LoginActivity extends AppCompatActivity {
                 String username = usernameEditText.getText().toString();
                 String password = passwordEditText.getText().toString();
 
-                if (dbHelper.validateUser(username, password)) {
-
-                    long userId = dbHelper.getUserId(username); // 获取用户ID
-                    saveLoginState(userId); // 保存登录状态
+                // 验证成功返回用户ID，失败返回-1
+                DatabaseExecutor.read(() -> dbHelper.validateUser(username, password)
+                        ? dbHelper.getUserId(username) : -1L, userId -> {
+                    if (userId != null && userId != -1) {
+                        saveLoginState(userId); // 保存登录状态
 
-                    // 跳转到MainActivity
-                    Intent intent = new Intent(LoginActivity.this, MainActivity.class);
-                    startActivity(intent);
-                    finish();
-                } else {
-                    Toast.makeText(LoginActivity.this, "用户名或密码错误", Toast.LENGTH_SHORT).show();
-                }
+                        // 跳转到MainActivity
+                        Intent intent = new Intent(LoginActivity.this, MainActivity.class);
+                        startActivity(intent);
+                        finish();
+                    } else {
+                        Toast.makeText(LoginActivity.this, "用户名或密码错误", Toast.LENGTH_SHORT).show();
+                    }
+                });
             }
         });
     }
 
     private void saveLoginState(long userId) {
-        SharedPreferences sharedPreferences = getSharedPreferences("login_prefs", MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getApplicationContext().getSharedPreferences("login_prefs", MODE_PRIVATE);
         SharedPreferences.Editor editor = sharedPreferences.edit();
         editor.putLong("user_id", userId);  // 存储用户ID
         editor.apply();
@@ -18,6 +18,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.trave.Adapters.ItineraryAdapter;
 import com.example.trave.Adapters.MyrouteItineraryAdapeter;
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.Itinerary;
 import com.example.trave.Domains.ItineraryAttraction;
@@ -44,11 +45,11 @@ public class MyRouteActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_myroute); // 设置布局文件
 
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
         items= new ArrayList<>();
 
         // 获取当前用户ID
-        SharedPreferences sharedPreferences = getSharedPreferences("login_prefs", MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getApplicationContext().getSharedPreferences("login_prefs", MODE_PRIVATE);
         userId = sharedPreferences.getLong("user_id", -1);  // 获取用户ID
         recyclerViewItinerary = findViewById(R.id.view_Useritinerary);
         recyclerViewItinerary.setLayoutManager(new GridLayoutManager(this, 2));
@@ -89,16 +90,19 @@ public class MyRouteActivity extends AppCompatActivity {
         });
     }
     private void clearLoginState() {
-        SharedPreferences sharedPreferences = getSharedPreferences("login_prefs", MODE_PRIVATE);
+        SharedPreferences sharedPreferences = getApplicationContext().getSharedPreferences("login_prefs", MODE_PRIVATE);
         SharedPreferences.Editor editor = sharedPreferences.edit();
         editor.clear(); // 清除登录状态
         editor.apply();
     }
     private void loadUserItineraries() {
-        items.clear();
-        ArrayList<Itinerary> userItineraries = dbHelper.getUserItineraries(userId);
-
-        items.addAll(userItineraries);
+        DatabaseExecutor.read(() -> dbHelper.getUserItineraries(userId), userItineraries -> {
+            if (userItineraries == null) {
+                return;
+            }
+            items.clear();
+            items.addAll(userItineraries);
+        });
         myrouteItineraryAdapeter.updateData();  // 调用适配器的更新数据方法
     }
 
@@ -120,10 +124,14 @@ public class MyRouteActivity extends AppCompatActivity {
         if (requestCode == REQUEST_CODE_CREATE_ITINERARY && resultCode == RESULT_OK && data != null) {
             long itineraryId = data.getIntExtra("itineraryId", -1); // 获取新行程单的ID
             ArrayList<ItineraryAttraction> newAttractions = data.getParcelableArrayListExtra("itineraryAttractions");
-            Itinerary newItinerary = dbHelper.getItineraryById(itineraryId);
-            items.add(newItinerary);
             itineraryMap.put(itineraryId, newAttractions);
-            myrouteItineraryAdapeter.updateData();
+            DatabaseExecutor.read(() -> dbHelper.getItineraryById(itineraryId), newItinerary -> {
+                if (newItinerary == null) {
+                    return;
+                }
+                items.add(newItinerary);
+                myrouteItineraryAdapeter.updateData();
+            });
         }
     }
 
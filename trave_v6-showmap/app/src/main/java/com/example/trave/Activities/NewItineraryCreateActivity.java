@@ -36,9 +36,11 @@ import com.amap.api.services.help.Tip;
 import com.amap.api.services.poisearch.Photo;
 import com.amap.api.services.poisearch.PoiResult;
 import com.amap.api.services.poisearch.PoiSearch;
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.Itinerary;
 import com.example.trave.Domains.ItineraryAttraction;
+import com.example.trave.Domains.Sites;
 import com.example.trave.R;
 import com.google.gson.Gson;
 
@@ -87,7 +89,7 @@ public class NewItineraryCreateActivity extends AppCompatActivity implements Inp
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_new_itinerary_create);
         
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
         
         // 初始化UI元素
         itineraryNameEditText = findViewById(R.id.itineraryNameEditText);
@@ -402,7 +404,7 @@ public class NewItineraryCreateActivity extends AppCompatActivity implements Inp
         }
         
         // 获取当前用户ID
-        SharedPreferences prefs = getSharedPreferences("login_prefs", MODE_PRIVATE);
+        SharedPreferences prefs = getApplicationContext().getSharedPreferences("login_prefs", MODE_PRIVATE);
         long userId = prefs.getLong("user_id", -1);
         
         if (userId == -1) {
@@ -413,70 +415,81 @@ public class NewItineraryCreateActivity extends AppCompatActivity implements Inp
         // 创建行程对象
         Itinerary newItinerary = new Itinerary(itineraryName, itineraryLocation, "pic3", userId, 0);
         
-        // 保存行程到数据库
-        long itineraryId = dbHelper.addItinerary(newItinerary);
+        // 在后台保存行程、景点和天数，完成后返回结果
+        DatabaseExecutor.write(() -> {
+            // 保存行程到数据库
+            long itineraryId = dbHelper.addItinerary(newItinerary);
+        
+            // 收集所有景点的基本信息，一次性保存或获取 siteId
+            List<Sites> sites = new ArrayList<>();
+            for (DayData dayData : daysList) {
+                for (AttractionData attraction : dayData.attractions) {
+                    Sites site = new Sites();
+                    site.setPoiId(attraction.poiId);
+                    site.setName(attraction.name);
+                    site.setLatitude(attraction.latitude);
+                    site.setLongitude(attraction.longitude);
+                    site.setAddress(attraction.address);
+                    site.setBusinessArea(attraction.businessArea);
+                    site.setTel(attraction.tel);
+                    site.setWebsite(attraction.website);
+                    site.setTypeDesc(attraction.typeDesc);
+                    site.setPhotos(attraction.photos);
+                    sites.add(site);
+                }
+            }
+            long[] siteIds = dbHelper.addOrGetSites(sites);
         
-        // 转换并保存每个景点
-        ArrayList<ItineraryAttraction> itineraryAttractions = new ArrayList<>();
+            // 转换每个景点
+            ArrayList<ItineraryAttraction> itineraryAttractions = new ArrayList<>();
+            int siteIndex = 0;
         
-        for (int dayIndex = 0; dayIndex < daysList.size(); dayIndex++) {
-            DayData dayData = daysList.get(dayIndex);
-            int dayNumber = dayIndex + 1;
+            for (int dayIndex = 0; dayIndex < daysList.size(); dayIndex++) {
+                DayData dayData = daysList.get(dayIndex);
+                int dayNumber = dayIndex + 1;
             
-            for (int orderIndex = 0; orderIndex < dayData.attractions.size(); orderIndex++) {
-                AttractionData attraction = dayData.attractions.get(orderIndex);
-                int visitOrder = orderIndex + 1;
-                
-                // 保存或获取景点基本信息
-                long siteId = dbHelper.addOrGetSite(
-                        attraction.poiId,
-                        attraction.name,
-                        attraction.latitude,
-                        attraction.longitude,
-                        attraction.address,
-                        attraction.businessArea,
-                        attraction.tel,
-                        attraction.website,
-                        attraction.typeDesc,
-                        attraction.photos
-                );
-                
-                // 创建行程景点对象
-                ItineraryAttraction itineraryAttraction = new ItineraryAttraction(
-                        siteId,
-                        dayNumber,
-                        visitOrder,
-                        attraction.name,
-                        attraction.transport
-                );
+                for (int orderIndex = 0; orderIndex < dayData.attractions.size(); orderIndex++) {
+                    AttractionData attraction = dayData.attractions.get(orderIndex);
+                    int visitOrder = orderIndex + 1;
                 
-                itineraryAttraction.setItineraryId(itineraryId);
+                    // 创建行程景点对象
+                    ItineraryAttraction itineraryAttraction = new ItineraryAttraction(
+                            siteIds[siteIndex++],
+                            dayNumber,
+                            visitOrder,
+                            attraction.name,
+                            attraction.transport
+                    );
                 
-                // 保存到数据库
-                dbHelper.addAttraction(itineraryAttraction);
+                    itineraryAttraction.setItineraryId(itineraryId);
                 
-                // 添加到列表用于返回
-                itineraryAttractions.add(itineraryAttraction);
+                    // 添加到列表用于保存和返回
+                    itineraryAttractions.add(itineraryAttraction);
+                }
             }
-        }
         
-        // 更新行程的总天数
-        newItinerary.setId(itineraryId);
-        newItinerary.setDays(daysList.size());
+            // 在一个事务中保存所有景点
+            dbHelper.replaceAttractionsForItinerary(itineraryId, itineraryAttractions);
+        
+            // 更新行程的总天数
+            newItinerary.setId(itineraryId);
+            newItinerary.setDays(daysList.size());
 
-        dbHelper.updateItinerary(newItinerary);
-        
-        // 创建返回结果
-        Intent resultIntent = new Intent();
-        resultIntent.putExtra("itineraryId", itineraryId);
-        resultIntent.putExtra("itineraryLocation", itineraryLocation);
-        resultIntent.putExtra("itineraryName", itineraryName);
-        resultIntent.putExtra("days", daysList.size());
-        resultIntent.putParcelableArrayListExtra("itineraryAttractions", itineraryAttractions);
-        setResult(RESULT_OK, resultIntent);
-        
-        Toast.makeText(this, "行程创建成功", Toast.LENGTH_SHORT).show();
-        finish();
+            dbHelper.updateItinerary(newItinerary);
+            return itineraryAttractions;
+        }, itineraryAttractions -> {
+            // 创建返回结果
+            Intent resultIntent = new Intent();
+            resultIntent.putExtra("itineraryId", newItinerary.getId());
+            resultIntent.putExtra("itineraryLocation", itineraryLocation);
+            resultIntent.putExtra("itineraryName", itineraryName);
+            resultIntent.putExtra("days", daysList.size());
+            resultIntent.putParcelableArrayListExtra("itineraryAttractions", itineraryAttractions);
+            setResult(RESULT_OK, resultIntent);
+        
+            Toast.makeText(this, "行程创建成功", Toast.LENGTH_SHORT).show();
+            finish();
+        });
     }
     
     @Override
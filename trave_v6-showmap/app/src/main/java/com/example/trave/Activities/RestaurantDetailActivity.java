@@ -12,16 +12,14 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.RecommendedRestaurant;
 import com.example.trave.R;
+import com.example.trave.Services.ApiGson;
 import com.example.trave.Services.RestaurantRecommendService;
+import com.google.gson.JsonParseException;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class RestaurantDetailActivity extends AppCompatActivity {
     private RecommendedRestaurant restaurant;
@@ -37,16 +35,14 @@ public class RestaurantDetailActivity extends AppCompatActivity {
     private Button callButton, selectButton;
     
     private RestaurantRecommendService restaurantService;
-    private ExecutorService executorService;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_restaurant_detail);
         
-        // 初始化服务和线程池
+        // 初始化服务
         restaurantService = new RestaurantRecommendService();
-        executorService = Executors.newSingleThreadExecutor();
         
         // 获取Intent中传递的数据
         Intent intent = getIntent();
@@ -58,12 +54,11 @@ public class RestaurantDetailActivity extends AppCompatActivity {
                 mealType = intent.getStringExtra("meal_type");
                 
                 if (restaurantJson != null) {
-                    JSONObject jsonObject = new JSONObject(restaurantJson);
-                    restaurant = new RecommendedRestaurant(jsonObject);
+                    restaurant = ApiGson.get().fromJson(restaurantJson, RecommendedRestaurant.class);
                     initializeViews();
                     populateData();
                 }
-            } catch (JSONException e) {
+            } catch (JsonParseException e) {
                 e.printStackTrace();
                 Toast.makeText(this, "数据解析错误", Toast.LENGTH_SHORT).show();
                 finish();
@@ -130,53 +125,21 @@ public class RestaurantDetailActivity extends AppCompatActivity {
         // 禁用按钮，防止重复点击
         selectButton.setEnabled(false);
         
-        executorService.execute(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    // 根据mealType设置不同的order
-                    int order = "lunch".equals(mealType) ? 2 : 5; // 午餐是第2个位置，晚餐是第5个位置
-                    
-                    // 获取数据库Helper
-                    DatabaseHelper dbHelper = new DatabaseHelper(RestaurantDetailActivity.this);
-                    
-                    // 调用服务确认选择餐厅
-                    final boolean success = restaurantService.confirmRestaurantSelection(
-                            restaurant, itineraryId, dayNumber, order, dbHelper);
-                    
-                    // 回到主线程显示结果
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (success) {
-                                Toast.makeText(RestaurantDetailActivity.this, "已成功选择餐厅", Toast.LENGTH_SHORT).show();
-                                setResult(RESULT_OK);
-                                finish();
-                            } else {
-                                Toast.makeText(RestaurantDetailActivity.this, "选择餐厅失败，请重试", Toast.LENGTH_SHORT).show();
-                                selectButton.setEnabled(true);
-                            }
-                        }
-                    });
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            Toast.makeText(RestaurantDetailActivity.this, "选择餐厅出错: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                            selectButton.setEnabled(true);
-                        }
-                    });
-                }
+        // 根据mealType设置不同的order
+        int order = "lunch".equals(mealType) ? 2 : 5; // 午餐是第2个位置，晚餐是第5个位置
+        DatabaseHelper dbHelper = DatabaseHelper.getInstance(this);
+
+        // 在数据库写线程上确认选择，回调在主线程显示结果
+        DatabaseExecutor.write(() -> restaurantService.confirmRestaurantSelection(
+                restaurant, itineraryId, dayNumber, order, dbHelper), success -> {
+            if (Boolean.TRUE.equals(success)) {
+                Toast.makeText(RestaurantDetailActivity.this, "已成功选择餐厅", Toast.LENGTH_SHORT).show();
+                setResult(RESULT_OK);
+                finish();
+            } else {
+                Toast.makeText(RestaurantDetailActivity.this, "选择餐厅失败，请重试", Toast.LENGTH_SHORT).show();
+                selectButton.setEnabled(true);
             }
         });
     }
-    
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (executorService != null) {
-            executorService.shutdown();
-        }
-    }
-} 
\ No newline at end of file
+}
@@ -13,6 +13,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.trave.Adapters.detailEditADapter;
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.ItineraryAttraction;
 import com.example.trave.Domains.Sites;
@@ -42,7 +43,7 @@ public class SiteDetailActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_detail);
 
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
         addressTxt=findViewById(R.id.addressTxt);
         telTxt=findViewById(R.id.telTxt);
         desTxt=findViewById(R.id.desTxt);
@@ -50,15 +51,19 @@ public class SiteDetailActivity extends AppCompatActivity {
 
         Intent intent = getIntent();
         siteId=intent.getLongExtra("siteId",0);
-        Sites sites=dbHelper.getSiteBySiteId(siteId);
-
-        tel=sites.getTel();
-        address=sites.getAddress();
-        des=sites.getTypeDesc();
-        telTxt.setText(tel);
-        desTxt.setText(des);
-        addressTxt.setText(address);
-        SiteTittle.setText(sites.getName());
+        DatabaseExecutor.read(() -> dbHelper.getSiteBySiteId(siteId), sites -> {
+            if (sites == null) {
+                Toast.makeText(this, "未找到景点信息", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            tel=sites.getTel();
+            address=sites.getAddress();
+            des=sites.getTypeDesc();
+            telTxt.setText(tel);
+            desTxt.setText(des);
+            addressTxt.setText(address);
+            SiteTittle.setText(sites.getName());
+        });
 
 
 
@@ -20,6 +20,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.trave.Adapters.TripDetailAdapter;
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.Itinerary;
 import com.example.trave.Domains.ItineraryAttraction;
@@ -44,23 +45,24 @@ public class TripDetailActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_trip_detail);
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
 
         recyclerViewItinerary = findViewById(R.id.recyclerViewItinerary);
         
-        // 设置水平布局管理器，并启用嵌套滚动
-        LinearLayoutManager layoutManager = new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false);
+        // 天数标题和景点在同一个纵向时间线里
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
         recyclerViewItinerary.setLayoutManager(layoutManager);
-        recyclerViewItinerary.setNestedScrollingEnabled(true);
 
         long itineraryId = getIntent().getLongExtra("itineraryId", 0);
-        ArrayList<ItineraryAttraction> itineraryAttractionList = dbHelper.getItineraryAttractions(itineraryId);
+        // 景点数据在后台加载，加载完成后由适配器填充这个列表
+        ArrayList<ItineraryAttraction> itineraryAttractionList = new ArrayList<>();
 
         String tittle=getIntent().getStringExtra("Tittle");
         String itineraryLocation=getIntent().getStringExtra("itineraryLocation");
 
         tripDetailAdapter=new TripDetailAdapter(itineraryId,this,itineraryAttractionList);
         recyclerViewItinerary.setAdapter(tripDetailAdapter);
+        tripDetailAdapter.refreshAttractionData();
 
         // 初始化AI优化按钮
         aiButton = findViewById(R.id.aiBtn);
@@ -86,14 +88,14 @@ public class TripDetailActivity extends AppCompatActivity {
                         .setPositiveButton("确定", new DialogInterface.OnClickListener() {
                             public void onClick(DialogInterface dialog, int which) {
                                 // 调用删除行程单的方法
-                                boolean isDeleted = dbHelper.deleteItinerary(itineraryId);
-
-                                if (isDeleted) {
-                                    Toast.makeText(TripDetailActivity.this, "行程单已删除", Toast.LENGTH_SHORT).show();
-                                    finish(); // 结束当前活动并返回上一个界面
-                                } else {
-                                    Toast.makeText(TripDetailActivity.this, "删除失败，请重试", Toast.LENGTH_SHORT).show();
-                                }
+                                DatabaseExecutor.write(() -> dbHelper.deleteItinerary(itineraryId), isDeleted -> {
+                                    if (Boolean.TRUE.equals(isDeleted)) {
+                                        Toast.makeText(TripDetailActivity.this, "行程单已删除", Toast.LENGTH_SHORT).show();
+                                        finish(); // 结束当前活动并返回上一个界面
+                                    } else {
+                                        Toast.makeText(TripDetailActivity.this, "删除失败，请重试", Toast.LENGTH_SHORT).show();
+                                    }
+                                });
                             }
                         })
                         .setNegativeButton("取消", null)
@@ -118,33 +120,37 @@ public class TripDetailActivity extends AppCompatActivity {
         Button releaseButton=findViewById(R.id.release);
 
         // 获取行程单的发布状态
-        int itineraryStatus = dbHelper.getItineraryById(itineraryId).getStatus();
-        Log.d("TripDetailAdapter", "itineraryStatus " +  dbHelper.getItineraryById(itineraryId).getLocation());
-
-        // 根据发布状态设置按钮文本和功能
-        if (itineraryStatus == 0) {  // 未发布
-            releaseButton.setText("未发布");
-
-            // 设置点击事件，发布行程单并更改按钮文本
-            releaseButton.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    // 发布行程单
-                    dbHelper.publishItinerary(itineraryId);
-
-                    // 更新按钮文本为"已发布"
-                    releaseButton.setText("已发布");
-
-                    // 提示用户已发布
-                    Toast.makeText(TripDetailActivity.this, "行程单已发布", Toast.LENGTH_SHORT).show();
-                }
-            });
-        } else {  // 已发布
-            releaseButton.setText("已发布");
-
-            // 你可以选择禁用按钮，防止重复点击
-            releaseButton.setEnabled(false);
-        }
+        DatabaseExecutor.read(() -> dbHelper.getItineraryById(itineraryId), itinerary -> {
+            if (itinerary == null) {
+                return;
+            }
+            Log.d("TripDetailAdapter", "itineraryStatus " + itinerary.getLocation());
+
+            // 根据发布状态设置按钮文本和功能
+            if (itinerary.getStatus() == 0) {  // 未发布
+                releaseButton.setText("未发布");
+
+                // 设置点击事件，发布行程单并更改按钮文本
+                releaseButton.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        // 发布行程单
+                        DatabaseExecutor.write(() -> dbHelper.publishItinerary(itineraryId), null);
+
+                        // 更新按钮文本为"已发布"
+                        releaseButton.setText("已发布");
+
+                        // 提示用户已发布
+                        Toast.makeText(TripDetailActivity.this, "行程单已发布", Toast.LENGTH_SHORT).show();
+                    }
+                });
+            } else {  // 已发布
+                releaseButton.setText("已发布");
+
+                // 你可以选择禁用按钮，防止重复点击
+                releaseButton.setEnabled(false);
+            }
+        });
     }
 
     // 处理AI优化按钮点击事件
@@ -169,11 +175,8 @@ public class TripDetailActivity extends AppCompatActivity {
 
             ArrayList<ItineraryAttraction> updatedAttractions = data.getParcelableArrayListExtra("itineraryAttractions");
             if (itineraryId != -1 && updatedAttractions != null) {
-                dbHelper.deleteAttractionsForItinerary(itineraryId);
-               for (ItineraryAttraction attraction : updatedAttractions) {
-                    dbHelper.addAttraction(attraction);
-               }
-                tripDetailAdapter.refreshAttractionData();
+                // 列表由 ItineraryRepository 的变更通知刷新
+                DatabaseExecutor.write(() -> dbHelper.replaceAttractionsForItinerary(itineraryId, updatedAttractions), null);
             }
         }
     }
@@ -16,6 +16,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.trave.Adapters.TripDetailAdapter;
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.ItineraryAttraction;
 import com.example.trave.Domains.Sites;
@@ -43,7 +44,7 @@ public class TripDetailMainActivity extends AppCompatActivity {
         Log.d(TAG, "onCreate: Activity 创建");
         
         // 初始化数据库
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
 
         // 获取传入的参数
         itineraryId = getIntent().getLongExtra("itineraryId", -1);
@@ -77,11 +78,10 @@ public class TripDetailMainActivity extends AppCompatActivity {
         recyclerViewItinerary.setLayoutManager(layoutManager);
         recyclerViewItinerary.setNestedScrollingEnabled(true);
         
-        ArrayList<ItineraryAttraction> itineraryAttractionList = dbHelper.getItineraryAttractions(itineraryId);
-        Log.d(TAG, "获取到的景点数量: " + (itineraryAttractionList != null ? itineraryAttractionList.size() : 0));
-
-        tripDetailAdapter = new TripDetailAdapter(itineraryId, this, itineraryAttractionList);
+        // 景点数据在后台加载，加载完成后刷新列表
+        tripDetailAdapter = new TripDetailAdapter(itineraryId, this, new ArrayList<>());
         recyclerViewItinerary.setAdapter(tripDetailAdapter);
+        tripDetailAdapter.refreshAttractionData();
     }
 
     private void initButtons() {
@@ -134,7 +134,7 @@ public class TripDetailMainActivity extends AppCompatActivity {
 
     private void handleSaveButtonClick() {
         try {
-            SharedPreferences sharedPreferences = getSharedPreferences("login_prefs", MODE_PRIVATE);
+            SharedPreferences sharedPreferences = getApplicationContext().getSharedPreferences("login_prefs", MODE_PRIVATE);
             long userId = sharedPreferences.getLong("user_id", -1);
             Log.i(TAG, "当前用户ID: " + userId);
             
@@ -143,8 +143,13 @@ public class TripDetailMainActivity extends AppCompatActivity {
                 return;
             }
 
-            dbHelper.copyItineraryToCurrentUser(itineraryId, userId);
-            Toast.makeText(this, "行程单已保存", Toast.LENGTH_SHORT).show();
+            DatabaseExecutor.write(() -> dbHelper.copyItineraryToCurrentUser(itineraryId, userId), newId -> {
+                if (newId != null && newId > 0) {
+                    Toast.makeText(this, "行程单已保存", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(this, "保存失败，请重试", Toast.LENGTH_SHORT).show();
+                }
+            });
         } catch (Exception e) {
             Log.e(TAG, "保存行程失败", e);
             Toast.makeText(this, "保存失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
@@ -160,11 +165,8 @@ public class TripDetailMainActivity extends AppCompatActivity {
 
             ArrayList<ItineraryAttraction> updatedAttractions = data.getParcelableArrayListExtra("itineraryAttractions");
             if (itineraryId != -1 && updatedAttractions != null) {
-                dbHelper.deleteAttractionsForItinerary(itineraryId);
-               for (ItineraryAttraction attraction : updatedAttractions) {
-                    dbHelper.addAttraction(attraction);
-               }
-                tripDetailAdapter.refreshAttractionData();
+                // 列表由 ItineraryRepository 的变更通知刷新
+                DatabaseExecutor.write(() -> dbHelper.replaceAttractionsForItinerary(itineraryId, updatedAttractions), null);
             }
         }
     }
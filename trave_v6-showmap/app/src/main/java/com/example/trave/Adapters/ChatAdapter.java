@@ -34,6 +34,12 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         this.listener = listener;
     }
 
+    // 空闲时预先创建用户和AI气泡各 count 个，第一轮对话不必临时 inflate
+    public void prewarmBubbles(RecyclerView recyclerView, int count) {
+        ViewHolderPrewarmer.prewarm(recyclerView, this, TYPE_USER, count);
+        ViewHolderPrewarmer.prewarm(recyclerView, this, TYPE_AI, count);
+    }
+
     @NonNull
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -1,159 +1,69 @@
 package com.example.trave.Adapters;
 
 import android.content.Context;
-import android.view.LayoutInflater;
-import android.view.View;
-import android.view.ViewGroup;
-import android.widget.TextView;
-
-import androidx.annotation.NonNull;
-import androidx.recyclerview.widget.LinearLayoutManager;
-import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.trave.Domains.ItineraryAttraction;
-import com.example.trave.R;
+import com.example.trave.Domains.ItineraryView;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-public class ChatItineraryAdapter extends RecyclerView.Adapter<ChatItineraryAdapter.DayViewHolder> {
+// 聊天页中AI返回的行程，以时间线展示；行程JSON的每个景点转换为一个未保存的 ItineraryAttraction
+public class ChatItineraryAdapter extends TimelineAdapter {
     private Context context;
     private JSONObject itineraryData;
-    private int days;
-    private Map<Integer, List<JSONObject>> dayAttractions = new HashMap<>();
 
     public ChatItineraryAdapter(Context context, JSONObject itineraryData) {
+        super(true);
         this.context = context;
         this.itineraryData = itineraryData;
-        processItineraryData();
+        setItineraryView(processItineraryData());
     }
 
-    private void processItineraryData() {
+    // 第1天到行程天数各一组，没有景点的天显示为空
+    private ItineraryView processItineraryData() {
         if (itineraryData == null) {
-            days = 0;
-            return;
+            return ItineraryView.empty();
         }
 
         try {
-            days = itineraryData.getInt("days");
+            int days = itineraryData.getInt("days");
             JSONArray attractions = itineraryData.getJSONArray("attractions");
 
-            // 清除旧数据
-            dayAttractions.clear();
-
-            // 按天分组景点
+            List<ItineraryAttraction> items = new ArrayList<>();
             for (int i = 0; i < attractions.length(); i++) {
                 JSONObject attraction = attractions.getJSONObject(i);
                 int day = attraction.getInt("day");
-
-                if (!dayAttractions.containsKey(day)) {
-                    dayAttractions.put(day, new ArrayList<>());
+                if (day < 1 || day > days) {
+                    continue;
                 }
-                dayAttractions.get(day).add(attraction);
+
+                ItineraryAttraction item = new ItineraryAttraction(
+                        day,
+                        attraction.getInt("order"),
+                        attraction.getString("name"),
+                        attraction.optString("transport", "步行"));
+                item.setType(attraction.optString("type", "景点"));
+                items.add(item);
             }
+            return ItineraryView.of(items, days);
         } catch (JSONException e) {
             e.printStackTrace();
-            days = 0;
+            return ItineraryView.empty();
         }
     }
 
-    @NonNull
     @Override
-    public DayViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_itinerary_day, parent, false);
-        return new DayViewHolder(view);
-    }
-
-    @Override
-    public void onBindViewHolder(@NonNull DayViewHolder holder, int position) {
-        int day = position + 1;
-        holder.tvDay.setText("Day " + day);
-
-        List<JSONObject> dailyAttractions = dayAttractions.get(day);
-        if (dailyAttractions != null && !dailyAttractions.isEmpty()) {
-            LinearLayoutManager layoutManager = new LinearLayoutManager(context);
-            layoutManager.setOrientation(LinearLayoutManager.VERTICAL);
-            holder.recyclerViewItems.setLayoutManager(layoutManager);
-            
-            ChatDailyAttractionAdapter adapter = new ChatDailyAttractionAdapter(dailyAttractions);
-            holder.recyclerViewItems.setAdapter(adapter);
-        }
-    }
-
-    @Override
-    public int getItemCount() {
-        return days;
+    protected CharSequence getDayTitle(int dayNumber) {
+        return "Day " + dayNumber;
     }
 
     public void updateData(JSONObject newItineraryData) {
         this.itineraryData = newItineraryData;
-        processItineraryData();
-        notifyDataSetChanged();
-    }
-
-    // 视图持有者类
-    public static class DayViewHolder extends RecyclerView.ViewHolder {
-        TextView tvDay;
-        RecyclerView recyclerViewItems;
-
-        public DayViewHolder(@NonNull View itemView) {
-            super(itemView);
-            tvDay = itemView.findViewById(R.id.tvDay);
-            recyclerViewItems = itemView.findViewById(R.id.recyclerViewItems);
-        }
-    }
-
-    // 每日景点适配器
-    private class ChatDailyAttractionAdapter extends RecyclerView.Adapter<ChatDailyAttractionAdapter.AttractionViewHolder> {
-        private List<JSONObject> attractions;
-
-        public ChatDailyAttractionAdapter(List<JSONObject> attractions) {
-            this.attractions = attractions;
-        }
-
-        @NonNull
-        @Override
-        public AttractionViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_itinerary_item, parent, false);
-            return new AttractionViewHolder(view);
-        }
-
-        @Override
-        public void onBindViewHolder(@NonNull AttractionViewHolder holder, int position) {
-            try {
-                JSONObject attraction = attractions.get(position);
-                String name = attraction.getString("name");
-                int order = attraction.getInt("order");
-                String type = attraction.optString("type", "景点");
-                String transport = attraction.optString("transport", "步行");
-
-                holder.attractionName.setText(name);
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        }
-
-        @Override
-        public int getItemCount() {
-            return attractions.size();
-        }
-
-        // 景点视图持有者
-        class AttractionViewHolder extends RecyclerView.ViewHolder {
-            TextView attractionName;
-
-
-
-            public AttractionViewHolder(@NonNull View itemView) {
-                super(itemView);
-                attractionName = itemView.findViewById(R.id.attractionName);
-            }
-        }
+        setItineraryView(processItineraryData());
     }
-} 
\ No newline at end of file
+}
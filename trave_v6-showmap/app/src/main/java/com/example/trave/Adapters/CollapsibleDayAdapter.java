@@ -1,24 +1,17 @@
 package com.example.trave.Adapters;
 
-import android.app.AlertDialog;
 import android.content.Context;
 import android.text.Editable;
 import android.text.TextWatcher;
-import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
-import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 import android.widget.AutoCompleteTextView;
 import android.widget.EditText;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
-import android.widget.TextView;
-import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.ItemTouchHelper;
-import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.amap.api.services.help.Inputtips;
@@ -30,54 +23,47 @@ import com.example.trave.DatabaseHelper;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-public class CollapsibleDayAdapter extends RecyclerView.Adapter<CollapsibleDayAdapter.DayViewHolder> {
+// 编辑页的时间线：每天默认折叠，景点行可以直接编辑名称、天数和交通方式，并在同一天内拖拽排序
+public class CollapsibleDayAdapter extends TimelineAdapter {
 
-    private List<Integer> dayNumbers; // 天数列表
-    private Map<Integer, List<ItineraryAttraction>> attractionsByDay; // 按天分组的景点
     private OnDayItemClickListener listener;
-    private boolean isEditMode = true;
     private String itineraryLocation; // 行程地点，用于POI搜索
     private DatabaseHelper dbHelper;
     private long itineraryId;
-    
-    // 存储每个天数对应的RecyclerView
-    private Map<Integer, RecyclerView> dayRecyclerViews = new HashMap<>();
-    // 存储每个天数对应的ItemTouchHelper
-    private Map<Integer, ItemTouchHelper> dayItemTouchHelpers = new HashMap<>();
-    
+    private ItemTouchHelper itemTouchHelper;
+
     public interface OnDayItemClickListener {
         void onExpandCollapse(int position, boolean isExpanded);
         void onAttractionDeleted(ItineraryAttraction attraction);
         void onDayEmpty(int dayNumber);
         void onAttractionDayChanged(ItineraryAttraction attraction, int oldDayNumber, int newDayNumber);
     }
-    
+
     public CollapsibleDayAdapter(List<ItineraryAttraction> attractions, String itineraryLocation) {
+        super(false);
         this.itineraryLocation = itineraryLocation;
-        this.dayNumbers = new ArrayList<>();
-        this.attractionsByDay = new HashMap<>();
         if (attractions != null && !attractions.isEmpty()) {
             this.itineraryId = attractions.get(0).getItineraryId();
-            groupAttractionsByDay(attractions);
+            setDays(groupAttractionsByDay(attractions));
         }
     }
-    
+
     public void setDatabaseHelper(DatabaseHelper dbHelper) {
         this.dbHelper = dbHelper;
     }
-    
+
     public void setItineraryId(long itineraryId) {
         this.itineraryId = itineraryId;
     }
-    
-    private void groupAttractionsByDay(List<ItineraryAttraction> attractions) {
-        attractionsByDay.clear();
-        
+
+    // 只为有景点的天建立分组
+    private List<ItemDiffs.DayAttractions> groupAttractionsByDay(List<ItineraryAttraction> attractions) {
+        Map<Integer, List<ItineraryAttraction>> attractionsByDay = new TreeMap<>();
+
         // 按天分组景点
         for (ItineraryAttraction attraction : attractions) {
             int day = attraction.getDayNumber();
@@ -86,496 +72,413 @@ public class CollapsibleDayAdapter extends RecyclerView.Adapter<CollapsibleDayAd
             }
             attractionsByDay.get(day).add(attraction);
         }
-        
+
         // 确保每天的景点按照访问顺序排序
-        for (List<ItineraryAttraction> dayAttractions : attractionsByDay.values()) {
-            Collections.sort(dayAttractions, (a1, a2) -> Integer.compare(a1.getVisitOrder(), a2.getVisitOrder()));
+        List<ItemDiffs.DayAttractions> days = new ArrayList<>();
+        for (Map.Entry<Integer, List<ItineraryAttraction>> entry : attractionsByDay.entrySet()) {
+            Collections.sort(entry.getValue(), (a1, a2) -> Integer.compare(a1.getVisitOrder(), a2.getVisitOrder()));
+            days.add(new ItemDiffs.DayAttractions(entry.getKey(), entry.getValue()));
+        }
+        return days;
+    }
+
+    // 找到某一天的分组，没有时按天数顺序插入一个空分组
+    private ItemDiffs.DayAttractions findOrAddDay(int dayNumber) {
+        ItemDiffs.DayAttractions day = findDay(dayNumber);
+        if (day != null) {
+            return day;
         }
-        
-        // 更新天数列表
-        dayNumbers = new ArrayList<>(attractionsByDay.keySet());
-        Collections.sort(dayNumbers);
+        List<ItemDiffs.DayAttractions> days = getDays();
+        int index = 0;
+        while (index < days.size() && days.get(index).dayNumber < dayNumber) {
+            index++;
+        }
+        day = new ItemDiffs.DayAttractions(dayNumber, new ArrayList<>());
+        days.add(index, day);
+        return day;
     }
-    
+
     public void setOnDayItemClickListener(OnDayItemClickListener listener) {
         this.listener = listener;
     }
-    
-    @NonNull
+
     @Override
-    public DayViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(parent.getContext())
-                .inflate(R.layout.item_collapsible_day, parent, false);
-        return new DayViewHolder(view);
+    protected CharSequence getEmptyDayText() {
+        return "该天暂无景点，可通过拖拽或添加景点";
     }
-    
+
     @Override
-    public void onBindViewHolder(@NonNull DayViewHolder holder, int position) {
-        int dayNumber = dayNumbers.get(position);
-        List<ItineraryAttraction> dayAttractions = attractionsByDay.get(dayNumber);
-        
-        holder.tvDay.setText("第" + dayNumber + "天");
-        
-        // 设置展开/折叠图标
-        boolean isExpanded = holder.attractionsContainer.getVisibility() == View.VISIBLE;
-        holder.expandCollapseIcon.setImageResource(
-                isExpanded ? android.R.drawable.arrow_up_float : android.R.drawable.arrow_down_float);
-        
-        // 设置点击展开/折叠
-        holder.dayHeaderLayout.setOnClickListener(v -> {
-            boolean shouldExpand = holder.attractionsContainer.getVisibility() != View.VISIBLE;
-            holder.attractionsContainer.setVisibility(shouldExpand ? View.VISIBLE : View.GONE);
-            holder.expandCollapseIcon.setImageResource(
-                    shouldExpand ? android.R.drawable.arrow_up_float : android.R.drawable.arrow_down_float);
-            
-            if (listener != null) {
-                listener.onExpandCollapse(position, shouldExpand);
+    protected void onDayToggled(int dayNumber, boolean expanded) {
+        if (listener != null) {
+            List<ItemDiffs.DayAttractions> days = getDays();
+            for (int i = 0; i < days.size(); i++) {
+                if (days.get(i).dayNumber == dayNumber) {
+                    listener.onExpandCollapse(i, expanded);
+                    break;
+                }
             }
-        });
-        
-        // 设置景点列表
-        AttractionAdapter attractionAdapter = new AttractionAdapter(dayAttractions, dayNumber);
-        holder.recyclerViewAttractions.setLayoutManager(new LinearLayoutManager(holder.itemView.getContext()));
-        holder.recyclerViewAttractions.setAdapter(attractionAdapter);
-        
-        // 保存RecyclerView引用
-        dayRecyclerViews.put(dayNumber, holder.recyclerViewAttractions);
-        
-        // 为每个天数的RecyclerView设置独立的ItemTouchHelper
-        ItemTouchHelper itemTouchHelper = new ItemTouchHelper(new AttractionTouchHelperCallback(dayNumber));
-        itemTouchHelper.attachToRecyclerView(holder.recyclerViewAttractions);
-        dayItemTouchHelpers.put(dayNumber, itemTouchHelper);
-        
-        // 显示空提示或景点列表
-        if (dayAttractions == null || dayAttractions.isEmpty()) {
-            holder.emptyDayText.setVisibility(View.VISIBLE);
-            holder.recyclerViewAttractions.setVisibility(View.GONE);
-        } else {
-            holder.emptyDayText.setVisibility(View.GONE);
-            holder.recyclerViewAttractions.setVisibility(View.VISIBLE);
         }
     }
-    
-    @Override
-    public int getItemCount() {
-        return dayNumbers.size();
-    }
-    
+
     // 添加新景点
     public void addAttraction(ItineraryAttraction attraction) {
-        int day = attraction.getDayNumber();
-        
-        if (!attractionsByDay.containsKey(day)) {
-            attractionsByDay.put(day, new ArrayList<>());
-            dayNumbers.add(day);
-            Collections.sort(dayNumbers);
-            
-            // 移除自动天数更新，由调用方在保存景点到数据库后负责更新
-            // if (dbHelper != null && itineraryId > 0) {
-            //     dbHelper.updateItineraryDaysFromAttractions(itineraryId);
-            // }
-            
-            notifyDataSetChanged();
-        } else {
-            List<ItineraryAttraction> dayAttractions = attractionsByDay.get(day);
-            // 设置为该天最后一个景点的顺序+1
-            if (!dayAttractions.isEmpty()) {
-                int maxOrder = 0;
-                for (ItineraryAttraction att : dayAttractions) {
-                    if (att.getVisitOrder() > maxOrder) {
-                        maxOrder = att.getVisitOrder();
-                    }
-                }
-                attraction.setVisitOrder(maxOrder + 1);
-            } else {
-                attraction.setVisitOrder(1);
+        // 移除自动天数更新，由调用方在保存景点到数据库后负责更新
+        // if (dbHelper != null && itineraryId > 0) {
+        //     dbHelper.updateItineraryDaysFromAttractions(itineraryId);
+        // }
+        List<ItineraryAttraction> dayAttractions = findOrAddDay(attraction.getDayNumber()).attractions;
+        // 设置为该天最后一个景点的顺序+1
+        int maxOrder = 0;
+        for (ItineraryAttraction att : dayAttractions) {
+            if (att.getVisitOrder() > maxOrder) {
+                maxOrder = att.getVisitOrder();
             }
-            
-            dayAttractions.add(attraction);
-            int position = dayNumbers.indexOf(day);
-            notifyItemChanged(position);
         }
+        attraction.setVisitOrder(maxOrder + 1);
+        dayAttractions.add(attraction);
+        refreshRows();
     }
-    
+
     // 删除景点
     public void removeAttraction(ItineraryAttraction attraction) {
         int day = attraction.getDayNumber();
-        
-        if (attractionsByDay.containsKey(day)) {
-            List<ItineraryAttraction> dayAttractions = attractionsByDay.get(day);
-            int indexToRemove = -1;
-            
+        ItemDiffs.DayAttractions dayItem = findDay(day);
+        if (dayItem == null) {
+            return;
+        }
+        List<ItineraryAttraction> dayAttractions = dayItem.attractions;
+        int indexToRemove = dayAttractions.indexOf(attraction);
+        if (indexToRemove == -1) {
             for (int i = 0; i < dayAttractions.size(); i++) {
                 if (dayAttractions.get(i).getId() == attraction.getId()) {
                     indexToRemove = i;
                     break;
                 }
             }
-            
-            if (indexToRemove != -1) {
-                dayAttractions.remove(indexToRemove);
-                
-                // 重新排序剩余景点
-                for (int i = 0; i < dayAttractions.size(); i++) {
-                    dayAttractions.get(i).setVisitOrder(i + 1);
-                }
-                
-                // 如果该天没有景点了，通知监听器
-                if (dayAttractions.isEmpty() && listener != null) {
-                    listener.onDayEmpty(day);
-                }
-                
-                int position = dayNumbers.indexOf(day);
-                notifyItemChanged(position);
-            }
         }
+        if (indexToRemove == -1) {
+            return;
+        }
+        dayAttractions.remove(indexToRemove);
+
+        // 重新排序剩余景点
+        for (int i = 0; i < dayAttractions.size(); i++) {
+            dayAttractions.get(i).setVisitOrder(i + 1);
+        }
+
+        // 如果该天没有景点了，通知监听器
+        if (dayAttractions.isEmpty() && listener != null) {
+            listener.onDayEmpty(day);
+        }
+        refreshRows();
     }
-    
+
     // 移动景点到不同天数
     public void moveAttractionToDay(ItineraryAttraction attraction, int newDayNumber) {
         int oldDayNumber = attraction.getDayNumber();
-        
+
         // 如果天数没有变化，不做处理
         if (oldDayNumber == newDayNumber) {
             return;
         }
-        
+
         // 从原天数中移除
-        if (attractionsByDay.containsKey(oldDayNumber)) {
-            List<ItineraryAttraction> oldDayAttractions = attractionsByDay.get(oldDayNumber);
-            oldDayAttractions.removeIf(a -> a.getId() == attraction.getId());
-            
+        ItemDiffs.DayAttractions oldDay = findDay(oldDayNumber);
+        if (oldDay != null) {
+            List<ItineraryAttraction> oldDayAttractions = oldDay.attractions;
+            oldDayAttractions.remove(attraction);
+
             // 重新排序原天数的景点
             for (int i = 0; i < oldDayAttractions.size(); i++) {
                 oldDayAttractions.get(i).setVisitOrder(i + 1);
             }
-            
+
             // 如果原天数没有景点了，通知监听器
             if (oldDayAttractions.isEmpty() && listener != null) {
                 listener.onDayEmpty(oldDayNumber);
             }
         }
-        
+
         // 添加到新天数
-        if (!attractionsByDay.containsKey(newDayNumber)) {
-            attractionsByDay.put(newDayNumber, new ArrayList<>());
-            dayNumbers.add(newDayNumber);
-            Collections.sort(dayNumbers);
-        }
-        
-        List<ItineraryAttraction> newDayAttractions = attractionsByDay.get(newDayNumber);
+        List<ItineraryAttraction> newDayAttractions = findOrAddDay(newDayNumber).attractions;
         attraction.setDayNumber(newDayNumber);
         attraction.setVisitOrder(newDayAttractions.size() + 1);
         newDayAttractions.add(attraction);
-        
+
         // 通知监听器
         if (listener != null) {
             listener.onAttractionDayChanged(attraction, oldDayNumber, newDayNumber);
         }
-        
+
         // 移除自动天数更新，由保存时统一处理
         // if (dbHelper != null && itineraryId > 0) {
         //     dbHelper.updateItineraryDaysFromAttractions(itineraryId);
         // }
-        
-        // 刷新界面
-        notifyDataSetChanged();
+
+        // 刷新界面：景点行从原来的一天移到新的一天
+        refreshRows();
     }
-    
+
     // 获取所有景点的列表（按天和顺序排序）
     public List<ItineraryAttraction> getAllAttractions() {
         List<ItineraryAttraction> allAttractions = new ArrayList<>();
-        
-        for (int day : dayNumbers) {
-            List<ItineraryAttraction> dayAttractions = attractionsByDay.get(day);
-            if (dayAttractions != null) {
-                allAttractions.addAll(dayAttractions);
-            }
+        for (ItemDiffs.DayAttractions day : getDays()) {
+            allAttractions.addAll(day.attractions);
         }
-        
         return allAttractions;
     }
-    
+
     // 更新景点数据
     public void updateAttractions(List<ItineraryAttraction> attractions) {
-        groupAttractionsByDay(attractions);
-        notifyDataSetChanged();
+        setDays(groupAttractionsByDay(attractions));
     }
-    
+
     // 添加新的一天
     public void addNewDay() {
         int newDayNumber = 1;
-        if (!dayNumbers.isEmpty()) {
-            newDayNumber = Collections.max(dayNumbers) + 1;
+        List<ItemDiffs.DayAttractions> days = getDays();
+        if (!days.isEmpty()) {
+            newDayNumber = days.get(days.size() - 1).dayNumber + 1;
         }
-        
-        attractionsByDay.put(newDayNumber, new ArrayList<>());
-        dayNumbers.add(newDayNumber);
-        Collections.sort(dayNumbers);
-        
+        findOrAddDay(newDayNumber);
+
         // 移除自动天数更新，只有在保存景点到数据库时才更新天数
         // if (dbHelper != null && itineraryId > 0) {
         //     dbHelper.updateItineraryDaysFromAttractions(itineraryId);
         // }
-        
-        notifyDataSetChanged();
+
+        refreshRows();
     }
-    
+
     // 开始拖拽景点
-    public void startDrag(RecyclerView.ViewHolder viewHolder, int dayNumber) {
-        if (dayItemTouchHelpers.containsKey(dayNumber)) {
-            ItemTouchHelper itemTouchHelper = dayItemTouchHelpers.get(dayNumber);
-            if (itemTouchHelper != null) {
-                itemTouchHelper.startDrag(viewHolder);
-            }
+    public void startDrag(RecyclerView.ViewHolder viewHolder) {
+        if (itemTouchHelper != null) {
+            itemTouchHelper.startDrag(viewHolder);
         }
     }
-    
-    static class DayViewHolder extends RecyclerView.ViewHolder {
-        TextView tvDay;
-        ImageView expandCollapseIcon;
-        LinearLayout dayHeaderLayout;
-        LinearLayout attractionsContainer;
-        RecyclerView recyclerViewAttractions;
-        TextView emptyDayText;
-        
-        public DayViewHolder(@NonNull View itemView) {
-            super(itemView);
-            tvDay = itemView.findViewById(R.id.tvDay);
-            expandCollapseIcon = itemView.findViewById(R.id.expandCollapseIcon);
-            dayHeaderLayout = itemView.findViewById(R.id.dayHeaderLayout);
-            attractionsContainer = itemView.findViewById(R.id.attractionsContainer);
-            recyclerViewAttractions = itemView.findViewById(R.id.recyclerViewAttractions);
-            emptyDayText = itemView.findViewById(R.id.emptyDayText);
-        }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        itemTouchHelper = new ItemTouchHelper(new AttractionTouchHelperCallback());
+        itemTouchHelper.attachToRecyclerView(recyclerView);
     }
-    
-    // 景点拖拽回调
-    private class AttractionTouchHelperCallback extends ItemTouchHelper.SimpleCallback {
-        private int dayNumber;
-        
-        public AttractionTouchHelperCallback(int dayNumber) {
-            super(ItemTouchHelper.UP | ItemTouchHelper.DOWN, 0);
-            this.dayNumber = dayNumber;
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        if (itemTouchHelper != null) {
+            itemTouchHelper.attachToRecyclerView(null);
+            itemTouchHelper = null;
         }
-        
-        @Override
-        public boolean onMove(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder, @NonNull RecyclerView.ViewHolder target) {
-            int fromPosition = viewHolder.getAdapterPosition();
-            int toPosition = target.getAdapterPosition();
-            
-            List<ItineraryAttraction> dayAttractions = attractionsByDay.get(dayNumber);
-            if (dayAttractions != null && fromPosition < dayAttractions.size() && toPosition < dayAttractions.size()) {
-                // 交换位置
-                Collections.swap(dayAttractions, fromPosition, toPosition);
-                
-                // 更新访问顺序
-                for (int i = 0; i < dayAttractions.size(); i++) {
-                    dayAttractions.get(i).setVisitOrder(i + 1);
+    }
+
+    @Override
+    protected int getAttractionLayout() {
+        return R.layout.item_enhanced_edit_attraction;
+    }
+
+    // 输入监听在创建时只注册一次，始终作用于当前绑定的景点，行被回收复用时不会改到之前的景点
+    @Override
+    protected RecyclerView.ViewHolder onCreateAttractionViewHolder(View view) {
+        EditAttractionViewHolder holder = new EditAttractionViewHolder(view);
+        setupAttractionNameAutoComplete(holder.attractionNameEditText, view.getContext());
+        holder.attractionNameEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (!holder.binding && holder.attraction != null) {
+                    holder.attraction.setAttractionName(s.toString());
                 }
-                
-                // 通知适配器
-                RecyclerView.Adapter adapter = recyclerView.getAdapter();
-                if (adapter != null) {
-                    adapter.notifyItemMoved(fromPosition, toPosition);
+            }
+        });
+        holder.dayNumberEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                ItineraryAttraction attraction = holder.attraction;
+                if (holder.binding || attraction == null) {
+                    return;
+                }
+                try {
+                    int newDayNumber = Integer.parseInt(s.toString());
+                    if (newDayNumber > 0 && newDayNumber != attraction.getDayNumber()) {
+                        // 移动景点到新的天数
+                        moveAttractionToDay(attraction, newDayNumber);
+                    }
+                } catch (NumberFormatException e) {
+                    // 输入不是有效的数字，恢复原值
+                    holder.dayNumberEditText.setText(String.valueOf(attraction.getDayNumber()));
+                }
+            }
+        });
+        holder.transportEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (!holder.binding && holder.attraction != null) {
+                    holder.attraction.setTransport(s.toString());
                 }
-                return true;
+            }
+        });
+
+        // 设置拖动手柄
+        holder.dragHandle.setOnTouchListener((v, event) -> {
+            if (event.getAction() == MotionEvent.ACTION_DOWN) {
+                startDrag(holder);
             }
             return false;
+        });
+
+        // 设置删除按钮
+        holder.deleteButton.setOnClickListener(v -> {
+            if (listener != null && holder.attraction != null) {
+                listener.onAttractionDeleted(holder.attraction);
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    protected void onBindAttraction(RecyclerView.ViewHolder viewHolder, ItineraryAttraction attraction) {
+        EditAttractionViewHolder holder = (EditAttractionViewHolder) viewHolder;
+        holder.attraction = attraction;
+        // 填充输入框时不触发上面的监听
+        holder.binding = true;
+        holder.attractionNameEditText.setText(attraction.getAttractionName());
+        holder.dayNumberEditText.setText(String.valueOf(attraction.getDayNumber()));
+        holder.transportEditText.setText(attraction.getTransport());
+        holder.binding = false;
+    }
+
+    private void setupAttractionNameAutoComplete(AutoCompleteTextView autoCompleteTextView, Context context) {
+        List<String> suggestions = new ArrayList<>();
+        List<Tip> tipList = new ArrayList<>();
+        autoCompleteTextView.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                if (s.length() > 0 && itineraryLocation != null && !itineraryLocation.isEmpty()
+                        && autoCompleteTextView.hasFocus()) {
+                    InputtipsQuery inputquery = new InputtipsQuery(s.toString(), itineraryLocation);
+                    inputquery.setCityLimit(true);
+                    Inputtips inputTips = new Inputtips(context, inputquery);
+                    inputTips.setInputtipsListener((tips, rCode) -> {
+                        if (rCode == 1000) {
+                            suggestions.clear();
+                            tipList.clear();
+
+                            for (Tip tip : tips) {
+                                suggestions.add(tip.getName());
+                                tipList.add(tip);
+                            }
+
+                            ArrayAdapter<String> adapter = new ArrayAdapter<>(
+                                    context,
+                                    android.R.layout.simple_dropdown_item_1line,
+                                    suggestions
+                            );
+
+                            autoCompleteTextView.setAdapter(adapter);
+
+                            if (suggestions.size() > 0) {
+                                autoCompleteTextView.showDropDown();
+                            }
+                        }
+                    });
+                    inputTips.requestInputtipsAsyn();
+                }
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {}
+        });
+    }
+
+    static class EditAttractionViewHolder extends RecyclerView.ViewHolder {
+        AutoCompleteTextView attractionNameEditText;
+        EditText dayNumberEditText;
+        EditText transportEditText;
+        ImageView dragHandle;
+        ImageView deleteButton;
+        ItineraryAttraction attraction;
+        boolean binding;
+
+        EditAttractionViewHolder(@NonNull View itemView) {
+            super(itemView);
+            attractionNameEditText = itemView.findViewById(R.id.attractionNameEditText);
+            dayNumberEditText = itemView.findViewById(R.id.dayNumberEditText);
+            transportEditText = itemView.findViewById(R.id.transportEditText);
+            dragHandle = itemView.findViewById(R.id.dragHandle);
+            deleteButton = itemView.findViewById(R.id.deleteButton);
         }
-        
+    }
+
+    // 景点拖拽回调：只有景点行可以拖动，并且只能放在同一天的景点之间
+    private class AttractionTouchHelperCallback extends ItemTouchHelper.Callback {
+
+        @Override
+        public int getMovementFlags(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder) {
+            if (!(viewHolder instanceof EditAttractionViewHolder)) {
+                return 0;
+            }
+            return makeMovementFlags(ItemTouchHelper.UP | ItemTouchHelper.DOWN, 0);
+        }
+
+        @Override
+        public boolean canDropOver(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder current, @NonNull RecyclerView.ViewHolder target) {
+            return isSameDayAttraction(current.getAdapterPosition(), target.getAdapterPosition());
+        }
+
+        @Override
+        public boolean onMove(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder, @NonNull RecyclerView.ViewHolder target) {
+            return moveAttraction(viewHolder.getAdapterPosition(), target.getAdapterPosition());
+        }
+
         @Override
         public void onSwiped(@NonNull RecyclerView.ViewHolder viewHolder, int direction) {
             // 不实现滑动删除
         }
-        
+
         @Override
         public void onSelectedChanged(RecyclerView.ViewHolder viewHolder, int actionState) {
             super.onSelectedChanged(viewHolder, actionState);
-            
+
             if (actionState == ItemTouchHelper.ACTION_STATE_DRAG) {
                 // 开始拖拽
-                if (viewHolder instanceof AttractionAdapter.AttractionViewHolder) {
+                if (viewHolder instanceof EditAttractionViewHolder) {
                     viewHolder.itemView.setAlpha(0.7f);
                 }
-            } else if (actionState == ItemTouchHelper.ACTION_STATE_IDLE) {
-                // 结束拖拽
-                if (viewHolder != null) {
-                    viewHolder.itemView.setAlpha(1.0f);
-                }
             }
         }
-        
-        @Override
-        public boolean isLongPressDragEnabled() {
-            return true;
-        }
-    }
-    
-    // 内部适配器，用于显示每天的景点
-    private class AttractionAdapter extends RecyclerView.Adapter<AttractionAdapter.AttractionViewHolder> {
-        
-        private List<ItineraryAttraction> attractions;
-        private int dayNumber;
-        private List<String> suggestions = new ArrayList<>();
-        private List<Tip> tipList = new ArrayList<>();
-        
-        public AttractionAdapter(List<ItineraryAttraction> attractions, int dayNumber) {
-            this.attractions = attractions;
-            this.dayNumber = dayNumber;
-        }
-        
-        @NonNull
-        @Override
-        public AttractionViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-            View view = LayoutInflater.from(parent.getContext())
-                    .inflate(R.layout.item_enhanced_edit_attraction, parent, false);
-            return new AttractionViewHolder(view);
-        }
-        
+
         @Override
-        public void onBindViewHolder(@NonNull AttractionViewHolder holder, int position) {
-            ItineraryAttraction attraction = attractions.get(position);
-            
-            // 设置景点名称
-            holder.attractionNameEditText.setText(attraction.getAttractionName());
-            setupAttractionNameAutoComplete(holder.attractionNameEditText, holder.itemView.getContext());
-            holder.attractionNameEditText.addTextChangedListener(new TextWatcher() {
-                @Override
-                public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
-                
-                @Override
-                public void onTextChanged(CharSequence s, int start, int before, int count) {}
-                
-                @Override
-                public void afterTextChanged(Editable s) {
-                    attraction.setAttractionName(s.toString());
-                }
-            });
-            
-            // 设置天数
-            holder.dayNumberEditText.setText(String.valueOf(attraction.getDayNumber()));
-            holder.dayNumberEditText.addTextChangedListener(new TextWatcher() {
-                @Override
-                public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
-                
-                @Override
-                public void onTextChanged(CharSequence s, int start, int before, int count) {}
-                
-                @Override
-                public void afterTextChanged(Editable s) {
-                    try {
-                        int newDayNumber = Integer.parseInt(s.toString());
-                        if (newDayNumber > 0 && newDayNumber != attraction.getDayNumber()) {
-                            // 移动景点到新的天数
-                            moveAttractionToDay(attraction, newDayNumber);
-                        }
-                    } catch (NumberFormatException e) {
-                        // 输入不是有效的数字，恢复原值
-                        holder.dayNumberEditText.setText(String.valueOf(attraction.getDayNumber()));
-                    }
-                }
-            });
-            
-            // 设置交通方式
-            holder.transportEditText.setText(attraction.getTransport());
-            holder.transportEditText.addTextChangedListener(new TextWatcher() {
-                @Override
-                public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
-                
-                @Override
-                public void onTextChanged(CharSequence s, int start, int before, int count) {}
-                
-                @Override
-                public void afterTextChanged(Editable s) {
-                    attraction.setTransport(s.toString());
-                }
-            });
-            
-            // 设置拖动手柄
-            if (isEditMode) {
-                holder.dragHandle.setVisibility(View.VISIBLE);
-                holder.dragHandle.setOnTouchListener((v, event) -> {
-                    if (event.getAction() == MotionEvent.ACTION_DOWN) {
-                        startDrag(holder, dayNumber);
-                    }
-                    return false;
-                });
-            } else {
-                holder.dragHandle.setVisibility(View.GONE);
-            }
-            
-            // 设置删除按钮
-            holder.deleteButton.setOnClickListener(v -> {
-                if (listener != null) {
-                    listener.onAttractionDeleted(attraction);
-                }
-            });
+        public void clearView(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder) {
+            super.clearView(recyclerView, viewHolder);
+            // 结束拖拽
+            viewHolder.itemView.setAlpha(1.0f);
         }
-        
-        private void setupAttractionNameAutoComplete(AutoCompleteTextView autoCompleteTextView, Context context) {
-            autoCompleteTextView.addTextChangedListener(new TextWatcher() {
-                @Override
-                public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
-                
-                @Override
-                public void onTextChanged(CharSequence s, int start, int before, int count) {
-                    if (s.length() > 0 && itineraryLocation != null && !itineraryLocation.isEmpty()) {
-                        InputtipsQuery inputquery = new InputtipsQuery(s.toString(), itineraryLocation);
-                        inputquery.setCityLimit(true);
-                        Inputtips inputTips = new Inputtips(context, inputquery);
-                        inputTips.setInputtipsListener((tips, rCode) -> {
-                            if (rCode == 1000) {
-                                suggestions.clear();
-                                tipList.clear();
-                                
-                                for (Tip tip : tips) {
-                                    suggestions.add(tip.getName());
-                                    tipList.add(tip);
-                                }
-                                
-                                ArrayAdapter<String> adapter = new ArrayAdapter<>(
-                                        context,
-                                        android.R.layout.simple_dropdown_item_1line,
-                                        suggestions
-                                );
-                                
-                                autoCompleteTextView.setAdapter(adapter);
-                                
-                                if (suggestions.size() > 0) {
-                                    autoCompleteTextView.showDropDown();
-                                }
-                            }
-                        });
-                        inputTips.requestInputtipsAsyn();
-                    }
-                }
-                
-                @Override
-                public void afterTextChanged(Editable s) {}
-            });
-        }
-        
+
         @Override
-        public int getItemCount() {
-            return attractions == null ? 0 : attractions.size();
-        }
-        
-        class AttractionViewHolder extends RecyclerView.ViewHolder {
-            AutoCompleteTextView attractionNameEditText;
-            EditText dayNumberEditText;
-            EditText transportEditText;
-            ImageView dragHandle;
-            ImageView deleteButton;
-            
-            public AttractionViewHolder(@NonNull View itemView) {
-                super(itemView);
-                attractionNameEditText = itemView.findViewById(R.id.attractionNameEditText);
-                dayNumberEditText = itemView.findViewById(R.id.dayNumberEditText);
-                transportEditText = itemView.findViewById(R.id.transportEditText);
-                dragHandle = itemView.findViewById(R.id.dragHandle);
-                deleteButton = itemView.findViewById(R.id.deleteButton);
-            }
+        public boolean isLongPressDragEnabled() {
+            return true;
         }
     }
-} 
\ No newline at end of file
+}
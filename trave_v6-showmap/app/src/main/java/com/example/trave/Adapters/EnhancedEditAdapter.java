@@ -64,8 +64,8 @@ public class EnhancedEditAdapter extends RecyclerView.Adapter<EnhancedEditAdapte
                 int adapterPosition = holder.getAdapterPosition();
                 if (adapterPosition != RecyclerView.NO_POSITION) {
                     itineraryAttractions.remove(adapterPosition);
+                    // 游览顺序不显示，后面的行无需重绑
                     notifyItemRemoved(adapterPosition);
-                    notifyItemRangeChanged(adapterPosition, itineraryAttractions.size());
                     updateVisitOrders(); // 更新删除后的顺序
                 }
             }
@@ -104,13 +104,12 @@ public class EnhancedEditAdapter extends RecyclerView.Adapter<EnhancedEditAdapte
         updateVisitOrders(); // 更新移动后的顺序
     }
     
-    // 更新所有项目的游览顺序
+    // 更新所有项目的游览顺序；只改数据不刷新界面，拖拽过程中全部重绑会打断拖拽动画
     private void updateVisitOrders() {
         for (int i = 0; i < itineraryAttractions.size(); i++) {
             ItineraryAttraction attraction = itineraryAttractions.get(i);
             attraction.setVisitOrder(i + 1); // 设置新的顺序，从1开始
         }
-        notifyDataSetChanged();
     }
     
     // 获取当前所有景点
@@ -0,0 +1,144 @@
+package com.example.trave.Adapters;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.example.trave.Domains.Itinerary;
+import com.example.trave.Domains.ItineraryAttraction;
+import com.example.trave.Domains.RecommendedPOI;
+import com.example.trave.Domains.RecommendedRestaurant;
+
+import java.util.List;
+import java.util.Objects;
+
+// 各列表适配器共用的差异比较规则：数据刷新时只通知真正变化的行，而不是 notifyDataSetChanged 全部重绑
+// 比较的内容字段即各行实际显示的字段
+final class ItemDiffs {
+    private ItemDiffs() {
+    }
+
+    static final DiffUtil.ItemCallback<Itinerary> ITINERARY = new DiffUtil.ItemCallback<Itinerary>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Itinerary oldItem, @NonNull Itinerary newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Itinerary oldItem, @NonNull Itinerary newItem) {
+            return Objects.equals(oldItem.getTittle(), newItem.getTittle())
+                    && Objects.equals(oldItem.getLocation(), newItem.getLocation())
+                    && Objects.equals(oldItem.getPic(), newItem.getPic())
+                    && oldItem.getDays() == newItem.getDays();
+        }
+    };
+
+    // 未保存的景点 id 为0，按所在位置识别
+    static final DiffUtil.ItemCallback<ItineraryAttraction> ATTRACTION = new DiffUtil.ItemCallback<ItineraryAttraction>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ItineraryAttraction oldItem, @NonNull ItineraryAttraction newItem) {
+            if (oldItem.getId() > 0 || newItem.getId() > 0) {
+                return oldItem.getId() == newItem.getId();
+            }
+            return oldItem.getDayNumber() == newItem.getDayNumber()
+                    && oldItem.getVisitOrder() == newItem.getVisitOrder();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ItineraryAttraction oldItem, @NonNull ItineraryAttraction newItem) {
+            return oldItem.getDayNumber() == newItem.getDayNumber()
+                    && oldItem.getVisitOrder() == newItem.getVisitOrder()
+                    && oldItem.getSiteId() == newItem.getSiteId()
+                    && oldItem.isAiRecommended() == newItem.isAiRecommended()
+                    && Objects.equals(oldItem.getAttractionName(), newItem.getAttractionName())
+                    && Objects.equals(oldItem.getTransport(), newItem.getTransport())
+                    && Objects.equals(oldItem.getType(), newItem.getType());
+        }
+    };
+
+    // 后端没有给出 id 时按名称识别
+    static final DiffUtil.ItemCallback<RecommendedRestaurant> RESTAURANT = new DiffUtil.ItemCallback<RecommendedRestaurant>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull RecommendedRestaurant oldItem, @NonNull RecommendedRestaurant newItem) {
+            return sameKey(oldItem.getId(), newItem.getId(), oldItem.getName(), newItem.getName())
+                    && oldItem.getDay() == newItem.getDay()
+                    && oldItem.getOrder() == newItem.getOrder();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull RecommendedRestaurant oldItem, @NonNull RecommendedRestaurant newItem) {
+            return Objects.equals(oldItem.getName(), newItem.getName())
+                    && oldItem.getRating() == newItem.getRating()
+                    && oldItem.getPriceLevel() == newItem.getPriceLevel()
+                    && Objects.equals(oldItem.getDistance(), newItem.getDistance())
+                    && Objects.equals(oldItem.getCuisineType(), newItem.getCuisineType())
+                    && Objects.equals(oldItem.getReason(), newItem.getReason());
+        }
+    };
+
+    static final DiffUtil.ItemCallback<RecommendedPOI> POI = new DiffUtil.ItemCallback<RecommendedPOI>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull RecommendedPOI oldItem, @NonNull RecommendedPOI newItem) {
+            return sameKey(oldItem.getId(), newItem.getId(), oldItem.getName(), newItem.getName())
+                    && oldItem.getDay() == newItem.getDay()
+                    && oldItem.getOrder() == newItem.getOrder();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull RecommendedPOI oldItem, @NonNull RecommendedPOI newItem) {
+            return Objects.equals(oldItem.getName(), newItem.getName())
+                    && oldItem.getRating() == newItem.getRating()
+                    && Objects.equals(oldItem.getDistance(), newItem.getDistance())
+                    && Objects.equals(oldItem.getType(), newItem.getType())
+                    && Objects.equals(oldItem.getRecommendationReason(), newItem.getRecommendationReason());
+        }
+    };
+
+    private static boolean sameKey(String oldId, String newId, String oldName, String newName) {
+        if (oldId != null && !oldId.isEmpty() && newId != null && !newId.isEmpty()) {
+            return oldId.equals(newId);
+        }
+        return Objects.equals(oldName, newName);
+    }
+
+    // 时间线中一天的景点，按游览顺序排列
+    static final class DayAttractions {
+        final int dayNumber;
+        final List<ItineraryAttraction> attractions;
+
+        DayAttractions(int dayNumber, List<ItineraryAttraction> attractions) {
+            this.dayNumber = dayNumber;
+            this.attractions = attractions;
+        }
+    }
+
+    // 列表由适配器自己原地修改（例如拖拽排序）而不能交给 AsyncListDiffer 时使用：
+    // 这些列表只有一个行程的景点，直接在主线程比较，列表和界面始终同步
+    static <T> DiffUtil.DiffResult calculateDiff(List<T> oldList, List<T> newList, DiffUtil.ItemCallback<T> callback) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldList.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newList.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return callback.areItemsTheSame(oldList.get(oldPosition), newList.get(newPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return callback.areContentsTheSame(oldList.get(oldPosition), newList.get(newPosition));
+            }
+
+            @Override
+            public Object getChangePayload(int oldPosition, int newPosition) {
+                return callback.getChangePayload(oldList.get(oldPosition), newList.get(newPosition));
+            }
+        });
+    }
+}
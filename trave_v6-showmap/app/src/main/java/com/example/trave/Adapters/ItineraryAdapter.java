@@ -2,6 +2,8 @@ package com.example.trave.Adapters;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -12,30 +14,61 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.resource.bitmap.CenterCrop;
 import com.bumptech.glide.load.resource.bitmap.GranularRoundedCorners;
 import com.example.trave.Activities.TripDetailMainActivity;
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.Itinerary;
 import com.example.trave.Domains.ItineraryAttraction;
+import com.example.trave.ItineraryRepository;
 import com.example.trave.R;
 
 import java.util.ArrayList;
+import java.util.List;
 
+// 已发布行程的社区列表，按页从数据库读取：先读第一页，滚动到接近末尾时再读下一页
+// 只保留已经滑到的部分，不再一次性把所有已发布行程读进内存
 public class ItineraryAdapter extends RecyclerView.Adapter<ItineraryAdapter.ViewHolder> {
-    private ArrayList<Itinerary> items;
+    private static final String TAG = "ItineraryAdapter";
+    private static final int PAGE_SIZE = 20;
+    // 距离末尾还剩这么多行时开始读下一页，两列网格下约为两屏
+    private static final int PREFETCH_DISTANCE = 8;
+
+    // 新列表在后台与当前列表比较，只通知变化的行
+    private final AsyncListDiffer<Itinerary> differ = new AsyncListDiffer<>(this, ItemDiffs.ITINERARY);
     private Context context;
     private DatabaseHelper dbHelper;
     long Userid;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 以下状态只在主线程读写
+    // 最近一次交给 differ 的列表；differ 在后台比较完成前 getCurrentList 仍是旧列表，翻页要在这个列表上追加
+    private List<Itinerary> submitted = new ArrayList<>();
+    // 已加载的最后一条行程的 id，下一页从它之后开始
+    private long lastLoadedId;
+    private boolean loading;
+    private boolean endReached;
+    // 每次整体刷新加一，刷新前发出的翻页结果到达时直接丢弃
+    private int generation;
+
+    // 已发布行程列表只关心行程本身的变更
+    private final ItineraryRepository.Listener changeListener = change -> {
+        if (change.getType() != ItineraryRepository.Change.Type.ITINERARY) {
+            return;
+        }
+        mainHandler.post(this::refreshData);
+    };
 
     public ItineraryAdapter(Context context, long UserId) {
         this.context = context;
-        dbHelper = new DatabaseHelper(context);
-        this.items = dbHelper.getAllPublishItineraries();
+        dbHelper = DatabaseHelper.getInstance(context);
         this.Userid = UserId;
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -47,12 +80,15 @@ public class ItineraryAdapter extends RecyclerView.Adapter<ItineraryAdapter.View
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Log.d("ItineraryAdapter", "Days: " + items.get(position).getDays());
-        holder.tittleText.setText(items.get(position).getTittle());
-        holder.locationTxt.setText(items.get(position).getLocation());
+        Itinerary itinerary = differ.getCurrentList().get(position);
+        Log.d(TAG, "Days: " + itinerary.getDays());
+        if (position >= getItemCount() - PREFETCH_DISTANCE) {
+            loadNextPage();
+        }
+        holder.tittleText.setText(itinerary.getTittle());
+        holder.locationTxt.setText(itinerary.getLocation());
 
-        Itinerary itinerary = items.get(position);
-        int drawableResId = holder.itemView.getResources().getIdentifier(items.get(position).getPic(),
+        int drawableResId = holder.itemView.getResources().getIdentifier(itinerary.getPic(),
                 "drawable", holder.itemView.getContext().getPackageName());
         Glide.with(holder.itemView.getContext())
                 .load(drawableResId)
@@ -77,13 +113,87 @@ public class ItineraryAdapter extends RecyclerView.Adapter<ItineraryAdapter.View
 
     @Override
     public int getItemCount() {
-        return items.size();
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getId();
     }
 
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        ItineraryRepository.getInstance(context).addListener(changeListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        ItineraryRepository.getInstance(context).removeListener(changeListener);
+    }
+
+    // 重新读取已经加载过的范围（至少一页），滚动位置保持不变，已发布行程的增删改都会反映出来
+    // 适配器创建后由页面调用一次读取第一页
     public void refreshData() {
-        items.clear();
-        items.addAll(dbHelper.getAllPublishItineraries());
-        notifyDataSetChanged();
+        int requestGeneration = ++generation;
+        int limit = Math.max(PAGE_SIZE, submitted.size());
+        loading = true;
+        DatabaseExecutor.read(() -> readPage(0, limit), page -> {
+            if (requestGeneration != generation) {
+                return;
+            }
+            loading = false;
+            if (page == null) {
+                return;
+            }
+            endReached = page.size() < limit;
+            lastLoadedId = page.isEmpty() ? 0 : page.get(page.size() - 1).getId();
+            submit(page);
+        });
+    }
+
+    // 读取下一页并追加到末尾；正在读取或已经没有更多时直接返回
+    public void loadNextPage() {
+        if (loading || endReached) {
+            return;
+        }
+        int requestGeneration = generation;
+        long afterId = lastLoadedId;
+        loading = true;
+        DatabaseExecutor.read(() -> readPage(afterId, PAGE_SIZE), page -> {
+            if (requestGeneration != generation) {
+                return;
+            }
+            loading = false;
+            if (page == null) {
+                return;
+            }
+            endReached = page.size() < PAGE_SIZE;
+            if (page.isEmpty()) {
+                return;
+            }
+            lastLoadedId = page.get(page.size() - 1).getId();
+            List<Itinerary> items = new ArrayList<>(submitted.size() + page.size());
+            items.addAll(submitted);
+            items.addAll(page);
+            submit(items);
+        });
+    }
+
+    private void submit(List<Itinerary> items) {
+        submitted = items;
+        differ.submitList(items);
+    }
+
+    // 在读线程执行；读取失败时返回 null，让 loading 标记能被清除，之后还可以重试
+    private List<Itinerary> readPage(long afterId, int limit) {
+        try {
+            return dbHelper.getPublishedItinerariesPage(afterId, limit);
+        } catch (Exception e) {
+            Log.e(TAG, "读取已发布行程失败: " + e.getMessage(), e);
+            return null;
+        }
     }
 
     public class ViewHolder extends RecyclerView.ViewHolder {
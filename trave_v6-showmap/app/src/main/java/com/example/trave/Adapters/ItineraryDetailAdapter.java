@@ -15,13 +15,18 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.trave.Domains.ItineraryAttraction;
 import com.example.trave.R;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 public class ItineraryDetailAdapter extends RecyclerView.Adapter<ItineraryDetailAdapter.ViewHolder> {
+    // 切换编辑模式时只更新拖动手柄，不重绑整行
+    private static final Object PAYLOAD_EDIT_MODE = new Object();
+
     private ArrayList<ItineraryAttraction> attractions;
     private OnStartDragListener mDragStartListener;
     private OnItemClickListener mClickListener;
@@ -48,8 +53,11 @@ public class ItineraryDetailAdapter extends RecyclerView.Adapter<ItineraryDetail
     }
 
     public void setEditMode(boolean editMode) {
+        if (isEditMode == editMode) {
+            return;
+        }
         isEditMode = editMode;
-        notifyDataSetChanged();
+        notifyItemRangeChanged(0, attractions.size(), PAYLOAD_EDIT_MODE);
     }
 
     public boolean isEditMode() {
@@ -64,6 +72,15 @@ public class ItineraryDetailAdapter extends RecyclerView.Adapter<ItineraryDetail
         return new ViewHolder(view);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && payloads.stream().allMatch(payload -> payload == PAYLOAD_EDIT_MODE)) {
+            bindDragHandle(holder);
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         ItineraryAttraction attraction = attractions.get(position);
@@ -104,7 +121,18 @@ public class ItineraryDetailAdapter extends RecyclerView.Adapter<ItineraryDetail
             holder.tvType.setVisibility(View.GONE);
         }
         
-        // 编辑模式下显示拖动手柄
+        bindDragHandle(holder);
+        
+        // 设置点击事件
+        holder.itemView.setOnClickListener(v -> {
+            if (mClickListener != null) {
+                mClickListener.onItemClick(attraction);
+            }
+        });
+    }
+
+    // 编辑模式下显示拖动手柄
+    private void bindDragHandle(ViewHolder holder) {
         if (isEditMode) {
             holder.dragHandle.setVisibility(View.VISIBLE);
             holder.dragHandle.setOnTouchListener((v, event) -> {
@@ -118,13 +146,6 @@ public class ItineraryDetailAdapter extends RecyclerView.Adapter<ItineraryDetail
         } else {
             holder.dragHandle.setVisibility(View.GONE);
         }
-        
-        // 设置点击事件
-        holder.itemView.setOnClickListener(v -> {
-            if (mClickListener != null) {
-                mClickListener.onItemClick(attraction);
-            }
-        });
     }
 
     // 高亮动画
@@ -177,10 +198,11 @@ public class ItineraryDetailAdapter extends RecyclerView.Adapter<ItineraryDetail
 
     // 标记为AI推荐
     public void markAsAiRecommended(long id) {
-        for (ItineraryAttraction attraction : attractions) {
+        for (int i = 0; i < attractions.size(); i++) {
+            ItineraryAttraction attraction = attractions.get(i);
             if (attraction.getId() == id) {
                 attraction.setAiRecommended(true);
-                notifyDataSetChanged();
+                notifyItemChanged(i);
                 break;
             }
         }
@@ -192,8 +214,11 @@ public class ItineraryDetailAdapter extends RecyclerView.Adapter<ItineraryDetail
     }
 
     public void updateAttractions(ArrayList<ItineraryAttraction> newAttractions) {
+        // 拖拽会原地修改列表，所以不交给 AsyncListDiffer，只通知真正变化的行
+        // 景点未保存时 id 为0，不能作为稳定 id
+        DiffUtil.DiffResult result = ItemDiffs.calculateDiff(attractions, newAttractions, ItemDiffs.ATTRACTION);
         this.attractions = newAttractions;
-        notifyDataSetChanged();
+        result.dispatchUpdatesTo(this);
     }
 
     static class ViewHolder extends RecyclerView.ViewHolder {
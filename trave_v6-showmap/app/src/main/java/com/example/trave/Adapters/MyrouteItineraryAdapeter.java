@@ -5,6 +5,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -14,28 +16,44 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.resource.bitmap.CenterCrop;
 import com.bumptech.glide.load.resource.bitmap.GranularRoundedCorners;
 import com.example.trave.Activities.TripDetailActivity;
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.Itinerary;
+import com.example.trave.ItineraryRepository;
 import com.example.trave.R;
 
 import java.util.ArrayList;
 
 public class MyrouteItineraryAdapeter  extends RecyclerView.Adapter<MyrouteItineraryAdapeter.ViewHolder> {
-    private ArrayList<Itinerary> items;
+    // 新列表在后台与当前列表比较，只通知变化的行
+    private final AsyncListDiffer<Itinerary> differ = new AsyncListDiffer<>(this, ItemDiffs.ITINERARY);
     private Context context;
     private DatabaseHelper dbHelper;
     long Userid;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 行程列表只关心行程本身的变更（新增、删除、天数等）
+    private final ItineraryRepository.Listener changeListener = change -> {
+        if (change.getType() != ItineraryRepository.Change.Type.ITINERARY) {
+            return;
+        }
+        ArrayList<Itinerary> userItineraries = dbHelper.getUserItineraries(Userid);
+        mainHandler.post(() -> differ.submitList(userItineraries));
+    };
+
     public MyrouteItineraryAdapeter(Context context,ArrayList<Itinerary> items,long UserId) {
         this.context=context;
-        dbHelper = new DatabaseHelper(context);
-        this.items = dbHelper.getUserItineraries(Userid);
+        dbHelper = DatabaseHelper.getInstance(context);
         this.Userid=UserId;
+        setHasStableIds(true);
+        updateData();
     }
 
     @NonNull
@@ -47,11 +65,11 @@ public class MyrouteItineraryAdapeter  extends RecyclerView.Adapter<MyrouteItine
     }
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        holder.tittleText.setText(items.get(position).getTittle());
-        holder.locationTxt.setText(items.get(position).getLocation());
-        holder.daysTxt.setText(items.get(position).getDays()+"天");
-        Itinerary itinerary = items.get(position);
-                int drawableResId = holder.itemView.getResources().getIdentifier(items.get(position).getPic(),
+        Itinerary itinerary = differ.getCurrentList().get(position);
+        holder.tittleText.setText(itinerary.getTittle());
+        holder.locationTxt.setText(itinerary.getLocation());
+        holder.daysTxt.setText(itinerary.getDays()+"天");
+        int drawableResId = holder.itemView.getResources().getIdentifier(itinerary.getPic(),
                 "drawable", holder.itemView.getContext().getPackageName());
         Glide.with(holder.itemView.getContext())
                 .load(drawableResId)
@@ -72,17 +90,36 @@ public class MyrouteItineraryAdapeter  extends RecyclerView.Adapter<MyrouteItine
         });
 
     }
-    public void updateData() {
-        this.items.clear();
-        this.items.addAll(dbHelper.getUserItineraries(Userid));
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        ItineraryRepository.getInstance(context).addListener(changeListener);
+    }
 
-        notifyDataSetChanged();  // 刷新RecyclerView
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        ItineraryRepository.getInstance(context).removeListener(changeListener);
+    }
+
+    public void updateData() {
+        DatabaseExecutor.read(() -> dbHelper.getUserItineraries(Userid), itineraries -> {
+            // 读取失败时保留当前列表
+            if (itineraries != null) {
+                differ.submitList(itineraries);
+            }
+        });
     }
 
 
     @Override
     public int getItemCount() {
-        return items.size();
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getId();
     }
 
     public class ViewHolder extends RecyclerView.ViewHolder {
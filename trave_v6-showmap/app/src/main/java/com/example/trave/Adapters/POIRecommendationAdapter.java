@@ -4,25 +4,24 @@ import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.Button;
-import android.widget.RatingBar;
-import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.trave.Domains.RecommendedPOI;
-import com.example.trave.R;
 
+import java.util.ArrayList;
 import java.util.List;
 
-public class POIRecommendationAdapter extends RecyclerView.Adapter<POIRecommendationAdapter.RecommendationViewHolder> {
-    private List<RecommendedPOI> pois;
+public class POIRecommendationAdapter extends RecyclerView.Adapter<RecommendationCardViewHolder> {
+    // 后端给出的 id 可能为空或重复，不使用稳定 id，由 DiffUtil 按名称和所在位置识别
+    private final AsyncListDiffer<RecommendedPOI> differ = new AsyncListDiffer<>(this, ItemDiffs.POI);
     private OnRecommendationClickListener listener;
     private Context context;
 
     public POIRecommendationAdapter(List<RecommendedPOI> pois, OnRecommendationClickListener listener) {
-        this.pois = pois;
+        updateRecommendations(pois);
         this.listener = listener;
     }
 
@@ -37,21 +36,21 @@ public class POIRecommendationAdapter extends RecyclerView.Adapter<POIRecommenda
     }
 
     public void updateRecommendations(List<RecommendedPOI> newPOIs) {
-        this.pois = newPOIs;
-        notifyDataSetChanged();
+        // 拷贝一份再提交，调用方之后修改原列表不会影响正在进行的比较
+        differ.submitList(newPOIs != null ? new ArrayList<>(newPOIs) : null);
     }
 
     @NonNull
     @Override
-    public RecommendationViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+    public RecommendationCardViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         context = parent.getContext();
-        View view = LayoutInflater.from(context).inflate(R.layout.item_recommendation_card, parent, false);
-        return new RecommendationViewHolder(view);
+        View view = LayoutInflater.from(context).inflate(RecommendationCardViewHolder.VIEW_TYPE, parent, false);
+        return new RecommendationCardViewHolder(view);
     }
 
     @Override
-    public void onBindViewHolder(@NonNull RecommendationViewHolder holder, int position) {
-        RecommendedPOI poi = pois.get(position);
+    public void onBindViewHolder(@NonNull RecommendationCardViewHolder holder, int position) {
+        RecommendedPOI poi = differ.getCurrentList().get(position);
         
         // 设置景点信息
         holder.tvTitle.setText(poi.getName());
@@ -71,6 +70,9 @@ public class POIRecommendationAdapter extends RecyclerView.Adapter<POIRecommenda
             holder.tvDistance.setText(distanceInfo);
         } else if (!typeInfo.isEmpty()) {
             holder.tvDistance.setText(typeInfo);
+        } else {
+            // 卡片可能是餐厅推荐用过的，不能留下上一次的文字
+            holder.tvDistance.setText("");
         }
         
         // 设置推荐理由
@@ -81,6 +83,10 @@ public class POIRecommendationAdapter extends RecyclerView.Adapter<POIRecommenda
             holder.tvReason.setText(poi.getSimpleType());
         }
         
+        // 景点卡片本身不可点击，清掉餐厅推荐留下的点击事件
+        holder.cardView.setOnClickListener(null);
+        holder.cardView.setClickable(false);
+
         // 设置按钮点击事件
         holder.btnSelect.setOnClickListener(v -> {
             if (listener != null) {
@@ -102,28 +108,12 @@ public class POIRecommendationAdapter extends RecyclerView.Adapter<POIRecommenda
     }
 
     @Override
-    public int getItemCount() {
-        return pois != null ? pois.size() : 0;
+    public int getItemViewType(int position) {
+        return RecommendationCardViewHolder.VIEW_TYPE;
     }
 
-    static class RecommendationViewHolder extends RecyclerView.ViewHolder {
-        TextView tvTitle;
-        RatingBar ratingBar;
-        TextView tvDistance;
-        TextView tvReason;
-        Button btnSelect;
-        Button btnDetails;
-        Button btnRefresh;
-
-        RecommendationViewHolder(@NonNull View itemView) {
-            super(itemView);
-            tvTitle = itemView.findViewById(R.id.tvTitle);
-            ratingBar = itemView.findViewById(R.id.ratingBar);
-            tvDistance = itemView.findViewById(R.id.tvDistance);
-            tvReason = itemView.findViewById(R.id.tvReason);
-            btnSelect = itemView.findViewById(R.id.btnSelect);
-            btnDetails = itemView.findViewById(R.id.btnDetails);
-            btnRefresh = itemView.findViewById(R.id.btnRefresh);
-        }
+    @Override
+    public int getItemCount() {
+        return differ.getCurrentList().size();
     }
 } 
\ No newline at end of file
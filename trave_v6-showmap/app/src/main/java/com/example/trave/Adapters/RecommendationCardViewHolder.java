@@ -0,0 +1,39 @@
+package com.example.trave.Adapters;
+
+import android.view.View;
+import android.widget.Button;
+import android.widget.RatingBar;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.trave.R;
+
+// 推荐卡片（item_recommendation_card）的 ViewHolder，餐厅和景点推荐适配器共用
+// 两个适配器的行类型都是这个布局的资源 id，切换适配器时已创建的卡片可以直接复用
+public class RecommendationCardViewHolder extends RecyclerView.ViewHolder {
+    public static final int VIEW_TYPE = R.layout.item_recommendation_card;
+
+    CardView cardView;
+    TextView tvTitle;
+    RatingBar ratingBar;
+    TextView tvDistance;
+    TextView tvReason;
+    Button btnSelect;
+    Button btnDetails;
+    Button btnRefresh;
+
+    RecommendationCardViewHolder(@NonNull View itemView) {
+        super(itemView);
+        cardView = (CardView) itemView;
+        tvTitle = itemView.findViewById(R.id.tvTitle);
+        ratingBar = itemView.findViewById(R.id.ratingBar);
+        tvDistance = itemView.findViewById(R.id.tvDistance);
+        tvReason = itemView.findViewById(R.id.tvReason);
+        btnSelect = itemView.findViewById(R.id.btnSelect);
+        btnDetails = itemView.findViewById(R.id.btnDetails);
+        btnRefresh = itemView.findViewById(R.id.btnRefresh);
+    }
+}
@@ -5,30 +5,28 @@ import android.content.Intent;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.Button;
-import android.widget.RatingBar;
-import android.widget.TextView;
 
 import androidx.annotation.NonNull;
-import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.trave.Activities.RestaurantDetailActivity;
 import com.example.trave.Domains.RecommendedRestaurant;
-import com.example.trave.R;
+import com.example.trave.Services.ApiGson;
 
+import java.util.ArrayList;
 import java.util.List;
 
-public class RestaurantRecommendationAdapter extends RecyclerView.Adapter<RestaurantRecommendationAdapter.RecommendationViewHolder> {
-    private List<RecommendedRestaurant> restaurants;
+public class RestaurantRecommendationAdapter extends RecyclerView.Adapter<RecommendationCardViewHolder> {
+    // 后端给出的 id 可能为空或重复，不使用稳定 id，由 DiffUtil 按名称和所在位置识别
+    private final AsyncListDiffer<RecommendedRestaurant> differ = new AsyncListDiffer<>(this, ItemDiffs.RESTAURANT);
     private OnRecommendationClickListener listener;
-    private Context context;
     private long itineraryId;
     private int dayNumber;
     private String mealType;
 
     public RestaurantRecommendationAdapter(List<RecommendedRestaurant> restaurants, OnRecommendationClickListener listener) {
-        this.restaurants = restaurants;
+        updateRecommendations(restaurants);
         this.listener = listener;
     }
     
@@ -49,21 +47,20 @@ public class RestaurantRecommendationAdapter extends RecyclerView.Adapter<Restau
     }
 
     public void updateRecommendations(List<RecommendedRestaurant> newRestaurants) {
-        this.restaurants = newRestaurants;
-        notifyDataSetChanged();
+        // 拷贝一份再提交，调用方之后修改原列表不会影响正在进行的比较
+        differ.submitList(newRestaurants != null ? new ArrayList<>(newRestaurants) : null);
     }
 
     @NonNull
     @Override
-    public RecommendationViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        context = parent.getContext();
-        View view = LayoutInflater.from(context).inflate(R.layout.item_recommendation_card, parent, false);
-        return new RecommendationViewHolder(view);
+    public RecommendationCardViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(RecommendationCardViewHolder.VIEW_TYPE, parent, false);
+        return new RecommendationCardViewHolder(view);
     }
 
     @Override
-    public void onBindViewHolder(@NonNull RecommendationViewHolder holder, int position) {
-        RecommendedRestaurant restaurant = restaurants.get(position);
+    public void onBindViewHolder(@NonNull RecommendationCardViewHolder holder, int position) {
+        RecommendedRestaurant restaurant = differ.getCurrentList().get(position);
         
         // 设置餐厅信息
         holder.tvTitle.setText(restaurant.getName());
@@ -86,7 +83,7 @@ public class RestaurantRecommendationAdapter extends RecyclerView.Adapter<Restau
         holder.cardView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                openDetailActivity(restaurant);
+                openDetailActivity(v.getContext(), restaurant);
             }
         });
         
@@ -110,18 +107,23 @@ public class RestaurantRecommendationAdapter extends RecyclerView.Adapter<Restau
         });
     }
     
-    private void openDetailActivity(RecommendedRestaurant restaurant) {
+    private void openDetailActivity(Context context, RecommendedRestaurant restaurant) {
         Intent intent = new Intent(context, RestaurantDetailActivity.class);
-        intent.putExtra("restaurant_json", restaurant.getOriginalData().toString());
+        intent.putExtra("restaurant_json", ApiGson.get().toJson(restaurant));
         intent.putExtra("itinerary_id", itineraryId);
         intent.putExtra("day_number", dayNumber);
         intent.putExtra("meal_type", mealType);
         context.startActivity(intent);
     }
 
+    @Override
+    public int getItemViewType(int position) {
+        return RecommendationCardViewHolder.VIEW_TYPE;
+    }
+
     @Override
     public int getItemCount() {
-        return restaurants != null ? restaurants.size() : 0;
+        return differ.getCurrentList().size();
     }
 
     /**
@@ -142,27 +144,4 @@ public class RestaurantRecommendationAdapter extends RecyclerView.Adapter<Restau
                 return "¥";
         }
     }
-
-    static class RecommendationViewHolder extends RecyclerView.ViewHolder {
-        CardView cardView;
-        TextView tvTitle;
-        RatingBar ratingBar;
-        TextView tvDistance;
-        TextView tvReason;
-        Button btnSelect;
-        Button btnDetails;
-        Button btnRefresh;
-
-        RecommendationViewHolder(@NonNull View itemView) {
-            super(itemView);
-            cardView = (CardView) itemView;
-            tvTitle = itemView.findViewById(R.id.tvTitle);
-            ratingBar = itemView.findViewById(R.id.ratingBar);
-            tvDistance = itemView.findViewById(R.id.tvDistance);
-            tvReason = itemView.findViewById(R.id.tvReason);
-            btnSelect = itemView.findViewById(R.id.btnSelect);
-            btnDetails = itemView.findViewById(R.id.btnDetails);
-            btnRefresh = itemView.findViewById(R.id.btnRefresh);
-        }
-    }
 } 
\ No newline at end of file
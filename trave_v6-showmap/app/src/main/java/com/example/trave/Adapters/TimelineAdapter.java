@@ -0,0 +1,316 @@
+package com.example.trave.Adapters;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.trave.Domains.ItineraryAttraction;
+import com.example.trave.Domains.ItineraryView;
+import com.example.trave.R;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+// 按天展示行程的单层时间线：天数标题、景点和空天占位都是同一个 RecyclerView 里的行，
+// 共用一个 ViewHolder 回收池，不再为每一天嵌套一个 RecyclerView
+// 展开/折叠某一天就是在列表中插入或移除这一天的景点行
+// 默认的景点行只显示名称和交通方式，编辑页等需要其他样式的页面覆盖 getAttractionLayout 等方法
+public class TimelineAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+    // 行类型直接使用布局资源 id，不同页面的适配器共用回收池时也不会混淆
+    private static final int TYPE_DAY_HEADER = R.layout.item_timeline_day_header;
+    private static final int TYPE_EMPTY_DAY = R.layout.item_timeline_empty_day;
+    // 只更新标题行的展开/折叠图标
+    private static final Object PAYLOAD_EXPANSION = new Object();
+
+    private final List<ItemDiffs.DayAttractions> days = new ArrayList<>();
+    private final List<Row> rows = new ArrayList<>();
+    // 展开状态与默认状态不同的天
+    private final Set<Integer> toggledDays = new HashSet<>();
+    private final boolean expandedByDefault;
+
+    // 列表中的一行；attraction 只有景点行才有，title 和 expanded 只对标题行有意义
+    static final class Row {
+        final int type;
+        final int dayNumber;
+        final ItineraryAttraction attraction;
+        final CharSequence title;
+        final boolean expanded;
+
+        Row(int type, int dayNumber, ItineraryAttraction attraction, CharSequence title, boolean expanded) {
+            this.type = type;
+            this.dayNumber = dayNumber;
+            this.attraction = attraction;
+            this.title = title;
+            this.expanded = expanded;
+        }
+    }
+
+    // 同一个景点对象被原地修改后仍视为同一行；从数据库重新读取的对象按 id 识别
+    private static final DiffUtil.ItemCallback<Row> ROW_DIFF = new DiffUtil.ItemCallback<Row>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Row oldItem, @NonNull Row newItem) {
+            if (oldItem.type != newItem.type || oldItem.dayNumber != newItem.dayNumber) {
+                return false;
+            }
+            if (oldItem.attraction == null || newItem.attraction == null) {
+                return oldItem.attraction == newItem.attraction;
+            }
+            return oldItem.attraction == newItem.attraction
+                    || ItemDiffs.ATTRACTION.areItemsTheSame(oldItem.attraction, newItem.attraction);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Row oldItem, @NonNull Row newItem) {
+            if (oldItem.attraction != null) {
+                return oldItem.attraction == newItem.attraction
+                        || ItemDiffs.ATTRACTION.areContentsTheSame(oldItem.attraction, newItem.attraction);
+            }
+            return oldItem.expanded == newItem.expanded && Objects.equals(oldItem.title, newItem.title);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Row oldItem, @NonNull Row newItem) {
+            if (oldItem.type == TYPE_DAY_HEADER && Objects.equals(oldItem.title, newItem.title)) {
+                return PAYLOAD_EXPANSION;
+            }
+            return null;
+        }
+    };
+
+    public TimelineAdapter(boolean expandedByDefault) {
+        this.expandedByDefault = expandedByDefault;
+    }
+
+    // 显示一个预先分好组的行程视图，应在后台线程构建好后在主线程调用
+    // 视图中每天的景点列表不可修改，这里直接引用而不复制
+    public void setItineraryView(ItineraryView view) {
+        List<ItemDiffs.DayAttractions> newDays = new ArrayList<>(view.getDayCount());
+        for (ItineraryView.Day day : view.getDays()) {
+            newDays.add(new ItemDiffs.DayAttractions(day.getDayNumber(), day.getAttractions()));
+        }
+        setDays(newDays);
+    }
+
+    // 替换全部天数，比较新旧行后只通知变化的行
+    protected void setDays(List<ItemDiffs.DayAttractions> newDays) {
+        days.clear();
+        days.addAll(newDays);
+        refreshRows();
+    }
+
+    // 当前各天的数据，子类可以原地修改，修改后调用 refreshRows
+    protected List<ItemDiffs.DayAttractions> getDays() {
+        return days;
+    }
+
+    // 按当前天数数据重新展开成行；一次行程只有几十行，直接在主线程比较
+    protected void refreshRows() {
+        List<Row> newRows = new ArrayList<>();
+        for (ItemDiffs.DayAttractions day : days) {
+            boolean expanded = isExpanded(day.dayNumber);
+            newRows.add(new Row(TYPE_DAY_HEADER, day.dayNumber, null, getDayTitle(day.dayNumber), expanded));
+            if (!expanded) {
+                continue;
+            }
+            if (day.attractions.isEmpty()) {
+                newRows.add(new Row(TYPE_EMPTY_DAY, day.dayNumber, null, null, true));
+            }
+            for (ItineraryAttraction attraction : day.attractions) {
+                newRows.add(new Row(getAttractionLayout(), day.dayNumber, attraction, null, true));
+            }
+        }
+        DiffUtil.DiffResult result = ItemDiffs.calculateDiff(rows, newRows, ROW_DIFF);
+        rows.clear();
+        rows.addAll(newRows);
+        result.dispatchUpdatesTo(this);
+    }
+
+    public boolean isExpanded(int dayNumber) {
+        return expandedByDefault != toggledDays.contains(dayNumber);
+    }
+
+    // 展开或折叠某一天：插入或移除这一天的景点行，其他行不受影响
+    public void toggleDay(int dayNumber) {
+        if (!toggledDays.remove(dayNumber)) {
+            toggledDays.add(dayNumber);
+        }
+        refreshRows();
+        onDayToggled(dayNumber, isExpanded(dayNumber));
+    }
+
+    // 拖拽排序：在同一天内移动景点行，并重新编号这一天的游览顺序；不在同一天时返回 false
+    // 会原地修改这一天的景点列表，只用于通过 setDays 传入可修改列表的子类
+    protected boolean moveAttraction(int fromPosition, int toPosition) {
+        if (!isSameDayAttraction(fromPosition, toPosition)) {
+            return false;
+        }
+        Row moved = rows.get(fromPosition);
+        ItemDiffs.DayAttractions day = findDay(moved.dayNumber);
+        if (day == null) {
+            return false;
+        }
+        int fromIndex = day.attractions.indexOf(moved.attraction);
+        int toIndex = day.attractions.indexOf(rows.get(toPosition).attraction);
+        day.attractions.add(toIndex, day.attractions.remove(fromIndex));
+        for (int i = 0; i < day.attractions.size(); i++) {
+            day.attractions.get(i).setVisitOrder(i + 1);
+        }
+        rows.add(toPosition, rows.remove(fromPosition));
+        notifyItemMoved(fromPosition, toPosition);
+        return true;
+    }
+
+    protected boolean isSameDayAttraction(int position, int otherPosition) {
+        if (position < 0 || otherPosition < 0 || position >= rows.size() || otherPosition >= rows.size()) {
+            return false;
+        }
+        Row row = rows.get(position);
+        Row other = rows.get(otherPosition);
+        return row.attraction != null && other.attraction != null && row.dayNumber == other.dayNumber;
+    }
+
+    protected ItemDiffs.DayAttractions findDay(int dayNumber) {
+        for (ItemDiffs.DayAttractions day : days) {
+            if (day.dayNumber == dayNumber) {
+                return day;
+            }
+        }
+        return null;
+    }
+
+    // 在展开成行时调用一次，结果保存在标题行里
+    protected CharSequence getDayTitle(int dayNumber) {
+        return "第" + dayNumber + "天";
+    }
+
+    protected CharSequence getEmptyDayText() {
+        return "该天暂无景点";
+    }
+
+    protected int getAttractionLayout() {
+        return R.layout.item_itinerary_item;
+    }
+
+    protected RecyclerView.ViewHolder onCreateAttractionViewHolder(View view) {
+        AttractionViewHolder holder = new AttractionViewHolder(view);
+        view.setOnClickListener(v -> {
+            if (holder.attraction != null) {
+                onAttractionClick(holder.attraction);
+            }
+        });
+        return holder;
+    }
+
+    protected void onBindAttraction(RecyclerView.ViewHolder holder, ItineraryAttraction attraction) {
+        AttractionViewHolder attractionHolder = (AttractionViewHolder) holder;
+        attractionHolder.attraction = attraction;
+        attractionHolder.attractionName.setText(attraction.getAttractionName());
+        attractionHolder.tvTransprot.setText(attraction.getTransport());
+    }
+
+    protected void onAttractionClick(ItineraryAttraction attraction) {
+    }
+
+    protected void onDayToggled(int dayNumber, boolean expanded) {
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return rows.get(position).type;
+    }
+
+    @NonNull
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(viewType, parent, false);
+        if (viewType == TYPE_DAY_HEADER) {
+            DayHeaderViewHolder holder = new DayHeaderViewHolder(view);
+            view.setOnClickListener(v -> {
+                int position = holder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    toggleDay(rows.get(position).dayNumber);
+                }
+            });
+            return holder;
+        }
+        if (viewType == TYPE_EMPTY_DAY) {
+            return new EmptyDayViewHolder(view);
+        }
+        return onCreateAttractionViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && holder instanceof DayHeaderViewHolder) {
+            bindExpansion((DayHeaderViewHolder) holder, rows.get(position));
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        Row row = rows.get(position);
+        if (row.type == TYPE_DAY_HEADER) {
+            DayHeaderViewHolder headerHolder = (DayHeaderViewHolder) holder;
+            headerHolder.tvDay.setText(row.title);
+            bindExpansion(headerHolder, row);
+        } else if (row.type == TYPE_EMPTY_DAY) {
+            ((EmptyDayViewHolder) holder).emptyDayText.setText(getEmptyDayText());
+        } else {
+            onBindAttraction(holder, row.attraction);
+        }
+    }
+
+    private void bindExpansion(DayHeaderViewHolder holder, Row row) {
+        holder.expandCollapseIcon.setImageResource(
+                row.expanded ? android.R.drawable.arrow_up_float : android.R.drawable.arrow_down_float);
+    }
+
+    @Override
+    public int getItemCount() {
+        return rows.size();
+    }
+
+    static class DayHeaderViewHolder extends RecyclerView.ViewHolder {
+        TextView tvDay;
+        ImageView expandCollapseIcon;
+
+        DayHeaderViewHolder(@NonNull View itemView) {
+            super(itemView);
+            tvDay = itemView.findViewById(R.id.tvDay);
+            expandCollapseIcon = itemView.findViewById(R.id.expandCollapseIcon);
+        }
+    }
+
+    static class EmptyDayViewHolder extends RecyclerView.ViewHolder {
+        TextView emptyDayText;
+
+        EmptyDayViewHolder(@NonNull View itemView) {
+            super(itemView);
+            emptyDayText = itemView.findViewById(R.id.emptyDayText);
+        }
+    }
+
+    static class AttractionViewHolder extends RecyclerView.ViewHolder {
+        ImageView ivImage;
+        TextView attractionName, tvTransprot;
+        ItineraryAttraction attraction;
+
+        AttractionViewHolder(@NonNull View itemView) {
+            super(itemView);
+            ivImage = itemView.findViewById(R.id.ivImage);
+            attractionName = itemView.findViewById(R.id.attractionName);
+            tvTransprot = itemView.findViewById(R.id.tvTransprot);
+        }
+    }
+}
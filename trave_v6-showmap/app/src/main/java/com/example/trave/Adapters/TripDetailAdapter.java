@@ -2,96 +2,94 @@ package com.example.trave.Adapters;
 
 
 import android.content.Context;
-import android.util.Log;
-import android.view.LayoutInflater;
-import android.view.View;
-import android.view.ViewGroup;
-import android.widget.Button;
-import android.widget.TextView;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
-import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.trave.Activities.SiteDetailActivity;
+import com.example.trave.DatabaseExecutor;
 import com.example.trave.DatabaseHelper;
-import com.example.trave.Domains.Itinerary;
 import com.example.trave.Domains.ItineraryAttraction;
-import com.example.trave.R;
+import com.example.trave.Domains.ItineraryView;
+import com.example.trave.ItineraryRepository;
 
 import java.util.ArrayList;
-import java.util.List;
 
-public class TripDetailAdapter extends RecyclerView.Adapter<TripDetailAdapter.TripDetailViewHolder>  {
+// 行程详情页的时间线，所有天默认展开，点击景点打开景点详情
+public class TripDetailAdapter extends TimelineAdapter {
 
     private Context context;
     private DatabaseHelper dbHelper;
+    // 与 Activity 共享的完整景点列表，刷新时同步更新
     private ArrayList<ItineraryAttraction> itineraryAttractionList;
+    // 当前显示的行程视图，标题行从中直接取这一天的统计
+    private ItineraryView itineraryView = ItineraryView.empty();
     private Long ItineraryId;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final ItineraryRepository.Listener changeListener = change -> {
+        if (change.getType() != ItineraryRepository.Change.Type.ATTRACTIONS || !change.affects(ItineraryId)) {
+            return;
+        }
+        // 监听器在后台线程回调，分组和统计也在这里完成
+        ItineraryView view = ItineraryView.of(dbHelper.getItineraryAttractionsWithSites(ItineraryId));
+        mainHandler.post(() -> setItineraryView(view));
+    };
+
     public TripDetailAdapter(long itineraryId,Context context, ArrayList<ItineraryAttraction> itineraryAttractionList) {
+        super(true);
         this.context=context;
         this.ItineraryId=itineraryId;
-        dbHelper = new DatabaseHelper(context);
+        dbHelper = DatabaseHelper.getInstance(context);
         this.itineraryAttractionList = itineraryAttractionList;
+        setItineraryView(ItineraryView.of(itineraryAttractionList));
     }
 
-    @NonNull
     @Override
-    public TripDetailViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_itinerary_day, parent, false);
-        return new TripDetailViewHolder(view);
+    protected CharSequence getDayTitle(int dayNumber) {
+        ItineraryView.Day day = itineraryView.getDay(dayNumber);
+        if (day == null || day.getAttractionCount() == 0) {
+            return "Day: " + dayNumber;
+        }
+        return "Day: " + dayNumber + "（" + day.getTypeSummary() + "）";
     }
+
     @Override
-    public void onBindViewHolder(@NonNull TripDetailViewHolder holder, int position) {
-        int day = position + 1;
-        holder.tvDay.setText("Day: " + day);
+    protected void onAttractionClick(ItineraryAttraction attraction) {
+        Intent intent = new Intent(context, SiteDetailActivity.class);
+        intent.putExtra("siteId", attraction.getSiteId());
+        context.startActivity(intent);
+    }
 
-        List<ItineraryAttraction> dailyAttractions = new ArrayList<>();
-        for (ItineraryAttraction attraction : itineraryAttractionList) {
-            if (attraction.getDayNumber() == day) {
-                dailyAttractions.add(attraction);
-            }
-        }
-        if (dailyAttractions!= null) {
-            Log.d("TripDetailAdapter", "Number of daily attractions for day " + day + ": " + dailyAttractions.size());
-        } else {
-            Log.e("TripDetailAdapter", "No daily attractions for day " + day + ". dailyAttractions is null.");
-        }
-        
-        // 使用LinearLayoutManager替代GridLayoutManager，并设置为垂直方向
-        LinearLayoutManager layoutManager = new LinearLayoutManager(holder.itemView.getContext());
-        layoutManager.setOrientation(LinearLayoutManager.VERTICAL);
-        holder.recyclerViewItems.setLayoutManager(layoutManager);
-        
-        // 启用嵌套滚动
-        holder.recyclerViewItems.setNestedScrollingEnabled(true);
-        
-        AttractionAdapter itemAdapter = new AttractionAdapter(dailyAttractions);
-        holder.recyclerViewItems.setAdapter(itemAdapter);
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        ItineraryRepository.getInstance(context).addListener(changeListener);
     }
 
     @Override
-    public int getItemCount() {
-        int maxDay = 0;
-        for (ItineraryAttraction attraction : itineraryAttractionList) {
-            if (attraction.getDayNumber() > maxDay) {
-                maxDay = attraction.getDayNumber();
-            }
-        }
-        return maxDay;
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        ItineraryRepository.getInstance(context).removeListener(changeListener);
     }
+
     public void refreshAttractionData() {
-        itineraryAttractionList.clear();
-        itineraryAttractionList.addAll(dbHelper.getItineraryAttractions(ItineraryId));
-        notifyDataSetChanged();
+        DatabaseExecutor.read(() -> ItineraryView.of(dbHelper.getItineraryAttractionsWithSites(ItineraryId)), view -> {
+            // 读取失败时保留当前显示的行程
+            if (view != null) {
+                setItineraryView(view);
+            }
+        });
     }
-    public static class TripDetailViewHolder extends RecyclerView.ViewHolder {
-        TextView tvDay, tvRoute, tvSummary;
-        RecyclerView recyclerViewItems;
-        Button editButton;
-        public TripDetailViewHolder(View itemView) {
-            super(itemView);
-            tvDay = itemView.findViewById(R.id.tvDay);
-            recyclerViewItems = itemView.findViewById(R.id.recyclerViewItems);
-        }
+
+    @Override
+    public void setItineraryView(ItineraryView view) {
+        itineraryAttractionList.clear();
+        itineraryAttractionList.addAll(view.getAllAttractions());
+        itineraryView = view;
+        super.setItineraryView(view);
     }
 }
@@ -0,0 +1,33 @@
+package com.example.trave.Adapters;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+// 在主线程空闲时预先创建 ViewHolder 放进 RecyclerView 的回收池，
+// 第一批数据到达时直接从池里取用，不必在同一帧里连续 inflate 多个布局
+// 每次空闲只创建一个，避免占用太长时间；池里已经有足够数量时停止
+public final class ViewHolderPrewarmer {
+
+    private ViewHolderPrewarmer() {
+    }
+
+    // 必须在主线程调用；预先创建 count 个，池中这种行类型的上限取 count 和默认值 5 中较大的一个，
+    // 不会把默认上限调小
+    public static void prewarm(RecyclerView recyclerView, RecyclerView.Adapter<?> adapter, int viewType, int count) {
+        RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+        pool.setMaxRecycledViews(viewType, Math.max(count, 5));
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                // 列表已经换了适配器或关闭了页面，不再继续
+                if (recyclerView.getAdapter() != adapter || pool.getRecycledViewCount(viewType) >= count) {
+                    return false;
+                }
+                pool.putRecycledView(adapter.createViewHolder(recyclerView, viewType));
+                return pool.getRecycledViewCount(viewType) < count;
+            }
+        });
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.trave;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 全局数据库线程池：写操作串行在单个写线程上，读操作在多个读线程上并发（依赖WAL）
+// 回调总是在主线程执行，界面代码不再直接在主线程访问数据库
+public final class DatabaseExecutor {
+    private static final String TAG = "DatabaseExecutor";
+    private static final int READER_THREADS = 3;
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(threadFactory("db-writer"));
+    private static final ExecutorService READERS = Executors.newFixedThreadPool(READER_THREADS, threadFactory("db-reader"));
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    // 主线程回调
+    public interface Callback<T> {
+        void onResult(T result);
+
+        // 任务抛出异常时调用；默认把 null 当作结果交给 onResult，调用方据此结束加载状态
+        default void onError(Exception e) {
+            onResult(null);
+        }
+    }
+
+    private DatabaseExecutor() {
+    }
+
+    public static <T> Future<T> read(Callable<T> task, Callback<T> callback) {
+        return READERS.submit(wrap(task, callback));
+    }
+
+    public static <T> Future<T> write(Callable<T> task, Callback<T> callback) {
+        return WRITER.submit(wrap(task, callback));
+    }
+
+    public static Future<?> write(Runnable task) {
+        return WRITER.submit(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                Log.e(TAG, "数据库写操作失败: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private static <T> Callable<T> wrap(Callable<T> task, Callback<T> callback) {
+        return () -> {
+            T result;
+            try {
+                result = task.call();
+            } catch (Exception e) {
+                Log.e(TAG, "数据库操作失败: " + e.getMessage(), e);
+                if (callback != null) {
+                    MAIN_HANDLER.post(() -> callback.onError(e));
+                }
+                throw e;
+            }
+            if (callback != null) {
+                MAIN_HANDLER.post(() -> callback.onResult(result));
+            }
+            return result;
+        };
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+    }
+}
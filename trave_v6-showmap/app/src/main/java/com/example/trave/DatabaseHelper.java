@@ -3,8 +3,10 @@ package com.example.trave;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.example.trave.Domains.Itinerary;
@@ -14,13 +16,18 @@ import com.example.trave.Domains.User;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "DatabaseHelper";
     private static final String DATABASE_NAME = "travelsv.db";
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 3;
 
     // Table names
     private static final String TABLE_ITINERARIES = "itineraries";
@@ -108,8 +115,64 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             TABLE_SITES + "(" + COLUMN_SITE_ID + ")" +
             ")";
 
-    public DatabaseHelper(Context context) {
+    // 索引：(itinerary_id, day_number, visit_order) 的前缀同时覆盖按 itinerary_id 的查询
+    private static final String SQL_CREATE_INDEX_ATTRACTIONS_ITINERARY_DAY_ORDER =
+            "CREATE INDEX IF NOT EXISTS idx_attractions_itinerary_day_order ON " + TABLE_ATTRACTIONS + " (" +
+            COLUMN_ATTRACTION_ITINERARY_ID + ", " +
+            COLUMN_ATTRACTION_DAY_NUMBER + ", " +
+            COLUMN_ATTRACTION_VISIT_ORDER + ")";
+    private static final String SQL_CREATE_INDEX_ATTRACTIONS_SITE =
+            "CREATE INDEX IF NOT EXISTS idx_attractions_site_id ON " + TABLE_ATTRACTIONS + " (" +
+            COLUMN_ITINERARY_SITE_ID + ")";
+    private static final String SQL_CREATE_INDEX_ITINERARIES_USER =
+            "CREATE INDEX IF NOT EXISTS idx_itineraries_user_id ON " + TABLE_ITINERARIES + " (" +
+            COLUMN_ITINERARY_USER_ID + ")";
+    private static final String SQL_CREATE_INDEX_ITINERARIES_STATUS =
+            "CREATE INDEX IF NOT EXISTS idx_itineraries_status ON " + TABLE_ITINERARIES + " (" +
+            COLUMN_ITINERARY_STATUS + ")";
+
+    // 各查询只取实际用到的列
+    private static final String[] ITINERARY_PROJECTION = {
+            COLUMN_ITINERARY_ID, COLUMN_ITINERARY_TITLE, COLUMN_ITINERARY_LOCATION,
+            COLUMN_ITINERARY_DAYS, COLUMN_ITINERARY_USER_ID, COLUMN_ITINERARY_STATUS
+    };
+    private static final String[] ATTRACTION_PROJECTION = {
+            COLUMN_ATTRACTION_ID, COLUMN_ATTRACTION_ITINERARY_ID, COLUMN_ITINERARY_SITE_ID,
+            COLUMN_ATTRACTION_DAY_NUMBER, COLUMN_ATTRACTION_VISIT_ORDER, COLUMN_ATTRACTION_NAME,
+            COLUMN_ATTRACTION_TRANSPORT, COLUMN_ATTRACTION_TYPE,
+            COLUMN_ATTRACTION_IS_AI_RECOMMENDED, COLUMN_ATTRACTION_AI_RECOMMEND_REASON
+    };
+    private static final String[] SITE_PROJECTION = {
+            COLUMN_SITE_ID, COLUMN_SITE_POI_ID, COLUMN_SITE_NAME, COLUMN_SITE_LATITUDE,
+            COLUMN_SITE_LONGITUDE, COLUMN_SITE_ADDRESS, COLUMN_SITE_BUSINESS_AREA,
+            COLUMN_SITE_TEL, COLUMN_SITE_WEBSITE, COLUMN_SITE_TYPE_DESC, COLUMN_SITE_PHOTOS
+    };
+    private static final String ATTRACTION_ORDER_BY =
+            COLUMN_ATTRACTION_DAY_NUMBER + ", " + COLUMN_ATTRACTION_VISIT_ORDER;
+
+    private static final int SITES_CACHE_SIZE = 500;
+
+    private static volatile DatabaseHelper instance;
+
+    private final SitesCache sitesCache = new SitesCache(SITES_CACHE_SIZE);
+    private volatile ItineraryRepository.Listener changeListener;
+
+    // 全局共享一个连接，避免每次调用都重新打开数据库文件
+    public static DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            synchronized (DatabaseHelper.class) {
+                if (instance == null) {
+                    instance = new DatabaseHelper(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // 开启WAL，读操作不会被写操作阻塞
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -118,23 +181,59 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(SQL_CREATE_TABLE_USERS);
         db.execSQL(SQL_CREATE_TABLE_ATTRACTIONS);
         db.execSQL(SQL_CREATE_TABLE_SITES);
+        createIndexes(db);
         Log.d(TAG, "Database tables created");
     }
 
+    private void createIndexes(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_INDEX_ATTRACTIONS_ITINERARY_DAY_ORDER);
+        db.execSQL(SQL_CREATE_INDEX_ATTRACTIONS_SITE);
+        db.execSQL(SQL_CREATE_INDEX_ITINERARIES_USER);
+        db.execSQL(SQL_CREATE_INDEX_ITINERARIES_STATUS);
+    }
+
+    // 单个版本的升级步骤
+    interface Migration {
+        void migrate(SQLiteDatabase db);
+    }
+
+    // 按版本顺序排列的升级步骤，下标 i 对应从版本 i+1 升级到 i+2
+    // 新增版本时只需在末尾追加一步并增加 DATABASE_VERSION，不允许删除已有数据，步骤需可重复执行
+    private final Migration[] migrations = {
+            // 1 -> 2：添加AI推荐相关列
+            db -> {
+                addColumnIfMissing(db, TABLE_ATTRACTIONS, COLUMN_ATTRACTION_IS_AI_RECOMMENDED, "INTEGER DEFAULT 0");
+                addColumnIfMissing(db, TABLE_ATTRACTIONS, COLUMN_ATTRACTION_AI_RECOMMEND_REASON, "TEXT");
+            },
+            // 2 -> 3：为热点查询添加索引
+            this::createIndexes,
+    };
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        if (oldVersion < 2) {
-            // 添加新列
-            db.execSQL("ALTER TABLE " + TABLE_ATTRACTIONS +
-                    " ADD COLUMN " + COLUMN_ATTRACTION_IS_AI_RECOMMENDED + " INTEGER DEFAULT 0");
-            db.execSQL("ALTER TABLE " + TABLE_ATTRACTIONS +
-                    " ADD COLUMN " + COLUMN_ATTRACTION_AI_RECOMMEND_REASON + " TEXT");
+        if (newVersion - 1 > migrations.length) {
+            throw new IllegalStateException("缺少升级到版本 " + newVersion + " 的迁移步骤");
         }
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ITINERARIES);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ATTRACTIONS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SITES);// 删除 users 表
-        onCreate(db);
+
+        // 逐个版本升级。SQLiteOpenHelper 已把整个 onUpgrade 连同版本号的更新放在一个事务里，
+        // 任何一步失败都会整体回滚到 oldVersion，下次打开时从头重新升级；
+        // 因此每一步都必须可以重复执行（IF NOT EXISTS、先检查列是否存在）
+        for (int version = oldVersion; version < newVersion; version++) {
+            Log.d(TAG, "升级数据库: " + version + " -> " + (version + 1));
+            migrations[version - 1].migrate(db);
+        }
+    }
+
+    private static void addColumnIfMissing(SQLiteDatabase db, String table, String column, String definition) {
+        try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null)) {
+            int nameIndex = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                if (column.equals(cursor.getString(nameIndex))) {
+                    return;
+                }
+            }
+        }
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
     }
 
     // 添加用户
@@ -144,46 +243,136 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_USER_NAME, username);
         values.put(COLUMN_USER_PASSWORD, password);
         long userId = db.insert(TABLE_USERS, null, values);
-        db.close();
         return userId;
     }
 
+    // 只缓存已提交的 site：当前线程还在事务里时读到的可能是未提交的行，回滚后缓存就错了
+    private void cacheCommittedSite(SQLiteDatabase db, Sites site) {
+        if (!db.inTransaction()) {
+            sitesCache.put(site);
+        }
+    }
+
+    public SitesCache getSitesCache() {
+        return sitesCache;
+    }
+
+    void setChangeListener(ItineraryRepository.Listener listener) {
+        this.changeListener = listener;
+    }
+
+    private void notifyChanged(ItineraryRepository.Change.Type type, long itineraryId, int dayNumber) {
+        ItineraryRepository.Listener listener = changeListener;
+        if (listener != null) {
+            listener.onItineraryChanged(new ItineraryRepository.Change(type, itineraryId, dayNumber));
+        }
+    }
+
     // 插入新的 site 或获取已存在的 site ID
     public long addOrGetSite(String poiId, String name, double latitude, double longitude, String address,
                              String businessArea, String tel,
                              String website, String typeDesc, String photos) {
+        Sites site = new Sites();
+        site.setPoiId(poiId);
+        site.setName(name);
+        site.setLatitude(latitude);
+        site.setLongitude(longitude);
+        site.setAddress(address);
+        site.setBusinessArea(businessArea);
+        site.setTel(tel);
+        site.setWebsite(website);
+        site.setTypeDesc(typeDesc);
+        site.setPhotos(photos);
+        return addOrGetSites(Collections.singletonList(site))[0];
+    }
+
+    // 批量插入或获取 site ID，在一个事务中完成，返回与传入列表一一对应的ID（失败为-1）
+    public long[] addOrGetSites(List<Sites> sites) {
+        long[] siteIds = new long[sites.size()];
+        Arrays.fill(siteIds, -1);
+
         SQLiteDatabase db = this.getWritableDatabase();
-        long siteId;
+        SQLiteStatement insert = null;
+        SQLiteStatement selectId = null;
+        // 新插入的 site 等事务提交后再放进缓存；回滚后 SQLite 可能把同一个 id 分给别的 site
+        List<Sites> inserted = new ArrayList<>();
+        boolean success = false;
 
-        // 检查是否已存在相同的POI ID
-        String[] columns = {COLUMN_SITE_ID};
-        String selection = COLUMN_SITE_POI_ID + "=?";
-        String[] selectionArgs = {poiId};
-        Cursor cursor = db.query(TABLE_SITES, columns, selection, selectionArgs, null, null, null);
+        try {
+            db.beginTransaction();
 
-        if (cursor != null && cursor.moveToFirst()) {
-            // 如果已存在，返回现有的ID
-            siteId = cursor.getLong(cursor.getColumnIndex(COLUMN_SITE_ID));
-            cursor.close();
-        } else {
-            // 如果不存在，插入新记录
-            ContentValues values = new ContentValues();
-            values.put(COLUMN_SITE_POI_ID, poiId);
-            values.put(COLUMN_SITE_NAME, name);
-            values.put(COLUMN_SITE_LATITUDE, latitude);
-            values.put(COLUMN_SITE_LONGITUDE, longitude);
-            values.put(COLUMN_SITE_ADDRESS, address);
-            values.put(COLUMN_SITE_BUSINESS_AREA, businessArea);
-            values.put(COLUMN_SITE_TEL, tel);
-            values.put(COLUMN_SITE_WEBSITE, website);
-            values.put(COLUMN_SITE_TYPE_DESC, typeDesc);
-            values.put(COLUMN_SITE_PHOTOS, photos);
+            for (int i = 0; i < sites.size(); i++) {
+                Sites site = sites.get(i);
+
+                Sites cached = sitesCache.getByPoiId(site.getPoiId());
+                if (cached != null) {
+                    siteIds[i] = cached.getId();
+                    continue;
+                }
 
-            siteId = db.insert(TABLE_SITES, null, values);
+                // poi_id 为 UNIQUE，已存在时插入被忽略，再按 poi_id 取回已有ID
+                if (insert == null) {
+                    insert = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_SITES + " (" +
+                            COLUMN_SITE_POI_ID + ", " +
+                            COLUMN_SITE_NAME + ", " +
+                            COLUMN_SITE_LATITUDE + ", " +
+                            COLUMN_SITE_LONGITUDE + ", " +
+                            COLUMN_SITE_ADDRESS + ", " +
+                            COLUMN_SITE_BUSINESS_AREA + ", " +
+                            COLUMN_SITE_TEL + ", " +
+                            COLUMN_SITE_WEBSITE + ", " +
+                            COLUMN_SITE_TYPE_DESC + ", " +
+                            COLUMN_SITE_PHOTOS +
+                            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                }
+                insert.clearBindings();
+                bindStringOrNull(insert, 1, site.getPoiId());
+                bindStringOrNull(insert, 2, site.getName());
+                insert.bindDouble(3, site.getLatitude());
+                insert.bindDouble(4, site.getLongitude());
+                bindStringOrNull(insert, 5, site.getAddress());
+                bindStringOrNull(insert, 6, site.getBusinessArea());
+                bindStringOrNull(insert, 7, site.getTel());
+                bindStringOrNull(insert, 8, site.getWebsite());
+                bindStringOrNull(insert, 9, site.getTypeDesc());
+                bindStringOrNull(insert, 10, site.getPhotos());
+
+                long siteId = insert.executeInsert();
+                if (siteId != -1) {
+                    site.setId(siteId);
+                    inserted.add(site);
+                } else {
+                    if (selectId == null) {
+                        selectId = db.compileStatement("SELECT " + COLUMN_SITE_ID + " FROM " + TABLE_SITES +
+                                " WHERE " + COLUMN_SITE_POI_ID + "=?");
+                    }
+                    selectId.bindString(1, site.getPoiId());
+                    siteId = selectId.simpleQueryForLong();
+                }
+                siteIds[i] = siteId;
+            }
+
+            db.setTransactionSuccessful();
+            success = true;
+        } catch (Exception e) {
+            Log.e(TAG, "批量添加site时出错: " + e.getMessage());
+            Arrays.fill(siteIds, -1);
+        } finally {
+            if (insert != null) {
+                insert.close();
+            }
+            if (selectId != null) {
+                selectId.close();
+            }
+            db.endTransaction();
         }
 
-        db.close();
-        return siteId;
+        if (success) {
+            for (Sites site : inserted) {
+                cacheCommittedSite(db, site);
+            }
+        }
+        return siteIds;
     }
 
     // 验证用户登录
@@ -191,13 +380,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getReadableDatabase();
         String selection = COLUMN_USER_NAME + "=? AND " + COLUMN_USER_PASSWORD + "=?";
         String[] selectionArgs = {username, password};
-        Cursor cursor = db.query(TABLE_USERS, null, selection, selectionArgs, null, null, null);
-        boolean isValid = (cursor != null && cursor.moveToFirst());
-        if (cursor != null) {
-            cursor.close();
-        }
-        db.close();
-        return isValid;
+        return DatabaseUtils.queryNumEntries(db, TABLE_USERS, selection, selectionArgs) > 0;
     }
 
     // 添加行程单到数据库
@@ -211,7 +394,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_ITINERARY_STATUS, itinerary.getStatus());  // 添加发布状态
         long id = db.insert(TABLE_ITINERARIES, null, values);
         itinerary.setId(id);
-        db.close();
+        if (id != -1) {
+            notifyChanged(ItineraryRepository.Change.Type.ITINERARY, id, ItineraryRepository.Change.ALL_DAYS);
+        }
         return id;
     }
 
@@ -221,7 +406,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         String whereClause = COLUMN_ATTRACTION_ITINERARY_ID + "=?";
         String[] whereArgs = {String.valueOf(itineraryId)};
         db.delete(TABLE_ATTRACTIONS, whereClause, whereArgs);
-        db.close();
+        notifyChanged(ItineraryRepository.Change.Type.ATTRACTIONS, itineraryId, ItineraryRepository.Change.ALL_DAYS);
     }
 
     // 通过用户名获取用户ID
@@ -229,14 +414,15 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getReadableDatabase();
         String selection = COLUMN_USER_NAME + "=?";
         String[] selectionArgs = {username};
-        Cursor cursor = db.query(TABLE_USERS, new String[]{COLUMN_USER_ID}, selection, selectionArgs, null, null, null);
+        Cursor cursor = db.query(TABLE_USERS, new String[]{COLUMN_USER_ID}, selection, selectionArgs, null, null, null, "1");
 
         long userId = -1;
-        if (cursor != null && cursor.moveToFirst()) {
-            userId = cursor.getLong(cursor.getColumnIndex(COLUMN_USER_ID));
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                userId = cursor.getLong(0);
+            }
             cursor.close();
         }
-        db.close();
         return userId;
     }
 
@@ -245,36 +431,18 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getReadableDatabase();
         String selection = COLUMN_ITINERARY_ID + "=?";
         String[] selectionArgs = {String.valueOf(itineraryId)};
-        Cursor cursor = db.query(TABLE_ITINERARIES, null, selection, selectionArgs, null, null, null);
         Itinerary itinerary = null;
-        if (cursor != null && cursor.moveToFirst()) {
-            // 获取所有列名
-            String[] columnNames = cursor.getColumnNames();
-            Log.d("DatabaseHelper", "列名: " + Arrays.toString(columnNames));
-
-            // 打印所有列的值
-            for (String columnName : columnNames) {
-                int columnIndex = cursor.getColumnIndex(columnName);
-                String value = cursor.getString(columnIndex);
-                Log.d("DatabaseHelper", columnName + ": " + value);
-            }
-
-            String title = cursor.getString(cursor.getColumnIndex(COLUMN_ITINERARY_TITLE));
-            String location = cursor.getString(cursor.getColumnIndex(COLUMN_ITINERARY_LOCATION));
-            int days = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_DAYS));
-            int pic = ThreadLocalRandom.current().nextInt(1, 4);
-            int status = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_STATUS));
-            long userId = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_USER_ID));
-
+        int pic = ThreadLocalRandom.current().nextInt(1, 4);
+        List<Itinerary> rows = queryList(db, TABLE_ITINERARIES, ITINERARY_PROJECTION, selection, selectionArgs,
+                null, "1", itineraryMapper("pic" + pic));
+        if (!rows.isEmpty()) {
+            itinerary = rows.get(0);
             Log.d("DatabaseHelper", "获取行程详情 - ID: " + itineraryId +
-                    ", 标题: " + title +
-                    ", 位置: " + location +
-                    ", 天数: " + days +
-                    ", 状态: " + status +
-                    ", 用户ID: " + userId);
-
-            itinerary = new Itinerary(itineraryId, title, location, "pic" + pic, days, userId, status);
-            cursor.close();
+                    ", 标题: " + itinerary.getTittle() +
+                    ", 位置: " + itinerary.getLocation() +
+                    ", 天数: " + itinerary.getDays() +
+                    ", 状态: " + itinerary.getStatus() +
+                    ", 用户ID: " + itinerary.getUserId());
         } else {
             Log.e("DatabaseHelper", "未找到ID为 " + itineraryId + " 的行程");
         }
@@ -294,7 +462,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         String[] whereArgs = {String.valueOf(itineraryId)};
         int rowsAffected = db.delete(TABLE_ITINERARIES, whereClause, whereArgs);
 
-        db.close();
+        notifyChanged(ItineraryRepository.Change.Type.ITINERARY, itineraryId, ItineraryRepository.Change.ALL_DAYS);
         return rowsAffected > 0; // 返回是否成功删除行程单
     }
 
@@ -307,23 +475,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
         Log.d("DatabaseHelper", "Querying itineraries for userId: " + userId);
 
-        Cursor cursor = db.query(TABLE_ITINERARIES, null, selection, selectionArgs, null, null, null);
-
-        if (cursor.moveToFirst()) {
-            do {
-                int id = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_ID));
-                String title = cursor.getString(cursor.getColumnIndex(COLUMN_ITINERARY_TITLE));
-                String location = cursor.getString(cursor.getColumnIndex(COLUMN_ITINERARY_LOCATION));
-                int days = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_DAYS));
-                int status = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_STATUS));
-
-                Itinerary itinerary = new Itinerary(id, title, location, "pic1", days);
-                itineraries.add(itinerary);
-            } while (cursor.moveToNext());
-        }
-
-        cursor.close();
-        db.close();
+        itineraries.addAll(queryList(db, TABLE_ITINERARIES, ITINERARY_PROJECTION, selection, selectionArgs,
+                null, null, itineraryMapper("pic1")));
         return itineraries;
     }
 
@@ -395,121 +548,285 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             Log.e(TAG, "添加景点时出错: " + e.getMessage());
             id = -1;
         } finally {
-            try {
-                db.endTransaction();
-                db.close();
-            } catch (Exception e) {
-                Log.e(TAG, "关闭数据库时出错: " + e.getMessage());
-            }
+            db.endTransaction();
         }
 
+        if (id != -1) {
+            notifyChanged(ItineraryRepository.Change.Type.ATTRACTIONS, attraction.getItineraryId(), attraction.getDayNumber());
+        }
         return id;
     }
 
+    // 在一个事务中整体替换行程的所有景点（先删除再批量插入）
+    public boolean replaceAttractionsForItinerary(long itineraryId, List<ItineraryAttraction> attractions) {
+        if (itineraryId <= 0) {
+            Log.e(TAG, "replaceAttractionsForItinerary: invalid itineraryId: " + itineraryId);
+            return false;
+        }
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement insert = null;
+        boolean success = false;
+
+        try {
+            db.beginTransaction();
+
+            db.delete(TABLE_ATTRACTIONS, COLUMN_ATTRACTION_ITINERARY_ID + "=?",
+                    new String[]{String.valueOf(itineraryId)});
+
+            // 一次查询取出所有涉及site的type_desc
+            Map<Long, String> typeDescBySiteId = getSiteTypeDescs(db, attractions);
+
+            insert = db.compileStatement("INSERT INTO " + TABLE_ATTRACTIONS + " (" +
+                    COLUMN_ITINERARY_SITE_ID + ", " +
+                    COLUMN_ATTRACTION_ITINERARY_ID + ", " +
+                    COLUMN_ATTRACTION_DAY_NUMBER + ", " +
+                    COLUMN_ATTRACTION_VISIT_ORDER + ", " +
+                    COLUMN_ATTRACTION_NAME + ", " +
+                    COLUMN_ATTRACTION_TRANSPORT + ", " +
+                    COLUMN_ATTRACTION_TYPE + ", " +
+                    COLUMN_ATTRACTION_IS_AI_RECOMMENDED + ", " +
+                    COLUMN_ATTRACTION_AI_RECOMMEND_REASON +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+            for (ItineraryAttraction attraction : attractions) {
+                if (attraction.getSiteId() <= 0) {
+                    Log.e(TAG, "replaceAttractionsForItinerary: invalid siteId: " + attraction.getSiteId());
+                    continue;
+                }
+                attraction.setItineraryId(itineraryId);
+
+                String typeDesc = typeDescBySiteId.get(attraction.getSiteId());
+                attraction.setType(determineAttractionType(typeDesc));
+
+                insert.clearBindings();
+                insert.bindLong(1, attraction.getSiteId());
+                insert.bindLong(2, itineraryId);
+                insert.bindLong(3, attraction.getDayNumber());
+                insert.bindLong(4, attraction.getVisitOrder());
+                bindStringOrNull(insert, 5, attraction.getAttractionName());
+                bindStringOrNull(insert, 6, attraction.getTransport());
+                bindStringOrNull(insert, 7, attraction.getType());
+                insert.bindLong(8, attraction.isAiRecommended() ? 1 : 0);
+                bindStringOrNull(insert, 9, attraction.getAiRecommendReason());
+
+                attraction.setId(insert.executeInsert());
+            }
+
+            db.setTransactionSuccessful();
+            success = true;
+            Log.d(TAG, "批量保存景点完成，itineraryId: " + itineraryId + ", 数量: " + attractions.size());
+        } catch (Exception e) {
+            Log.e(TAG, "批量保存景点时出错: " + e.getMessage());
+        } finally {
+            if (insert != null) {
+                insert.close();
+            }
+            db.endTransaction();
+        }
+
+        if (success) {
+            notifyChanged(ItineraryRepository.Change.Type.ATTRACTIONS, itineraryId, ItineraryRepository.Change.ALL_DAYS);
+        }
+        return success;
+    }
+
+    private Map<Long, String> getSiteTypeDescs(SQLiteDatabase db, List<ItineraryAttraction> attractions) {
+        Map<Long, String> result = new HashMap<>();
+        Set<Long> siteIds = new HashSet<>();
+        for (ItineraryAttraction attraction : attractions) {
+            if (attraction.getSiteId() <= 0 || result.containsKey(attraction.getSiteId())) {
+                continue;
+            }
+            Sites cached = sitesCache.getById(attraction.getSiteId());
+            if (cached != null) {
+                result.put(cached.getId(), cached.getTypeDesc());
+            } else {
+                siteIds.add(attraction.getSiteId());
+            }
+        }
+        if (siteIds.isEmpty()) {
+            return result;
+        }
+
+        StringBuilder placeholders = new StringBuilder();
+        String[] args = new String[siteIds.size()];
+        int i = 0;
+        for (Long siteId : siteIds) {
+            placeholders.append(i == 0 ? "?" : ",?");
+            args[i++] = String.valueOf(siteId);
+        }
+
+        Cursor cursor = db.query(TABLE_SITES, new String[]{COLUMN_SITE_ID, COLUMN_SITE_TYPE_DESC},
+                COLUMN_SITE_ID + " IN (" + placeholders + ")", args, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                result.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    // 行映射：每个游标只解析一次列索引，之后逐行按索引读取
+    private interface RowMapper<T> {
+        T map(Cursor cursor);
+    }
+
+    private interface RowMapperFactory<T> {
+        RowMapper<T> create(Cursor cursor);
+    }
+
+    private static <T> List<T> queryList(SQLiteDatabase db, String table, String[] projection, String selection,
+                                         String[] selectionArgs, String orderBy, String limit,
+                                         RowMapperFactory<T> factory) {
+        try (Cursor cursor = db.query(table, projection, selection, selectionArgs, null, null, orderBy, limit)) {
+            List<T> rows = new ArrayList<>(cursor.getCount());
+            if (cursor.moveToFirst()) {
+                RowMapper<T> mapper = factory.create(cursor);
+                do {
+                    rows.add(mapper.map(cursor));
+                } while (cursor.moveToNext());
+            }
+            return rows;
+        }
+    }
+
+    private static RowMapperFactory<Itinerary> itineraryMapper(String pic) {
+        return cursor -> {
+            int idIndex = cursor.getColumnIndexOrThrow(COLUMN_ITINERARY_ID);
+            int titleIndex = cursor.getColumnIndexOrThrow(COLUMN_ITINERARY_TITLE);
+            int locationIndex = cursor.getColumnIndexOrThrow(COLUMN_ITINERARY_LOCATION);
+            int daysIndex = cursor.getColumnIndexOrThrow(COLUMN_ITINERARY_DAYS);
+            int userIdIndex = cursor.getColumnIndexOrThrow(COLUMN_ITINERARY_USER_ID);
+            int statusIndex = cursor.getColumnIndexOrThrow(COLUMN_ITINERARY_STATUS);
+            return row -> new Itinerary(row.getLong(idIndex), row.getString(titleIndex),
+                    row.getString(locationIndex), pic, row.getInt(daysIndex),
+                    row.getLong(userIdIndex), row.getInt(statusIndex));
+        };
+    }
+
+    private static RowMapper<ItineraryAttraction> attractionMapper(Cursor cursor) {
+        int idIndex = cursor.getColumnIndexOrThrow(COLUMN_ATTRACTION_ID);
+        int itineraryIdIndex = cursor.getColumnIndexOrThrow(COLUMN_ATTRACTION_ITINERARY_ID);
+        int siteIdIndex = cursor.getColumnIndexOrThrow(COLUMN_ITINERARY_SITE_ID);
+        int dayNumberIndex = cursor.getColumnIndexOrThrow(COLUMN_ATTRACTION_DAY_NUMBER);
+        int visitOrderIndex = cursor.getColumnIndexOrThrow(COLUMN_ATTRACTION_VISIT_ORDER);
+        int nameIndex = cursor.getColumnIndexOrThrow(COLUMN_ATTRACTION_NAME);
+        int transportIndex = cursor.getColumnIndexOrThrow(COLUMN_ATTRACTION_TRANSPORT);
+        int typeIndex = cursor.getColumnIndexOrThrow(COLUMN_ATTRACTION_TYPE);
+        int isAiRecommendedIndex = cursor.getColumnIndexOrThrow(COLUMN_ATTRACTION_IS_AI_RECOMMENDED);
+        int aiRecommendReasonIndex = cursor.getColumnIndexOrThrow(COLUMN_ATTRACTION_AI_RECOMMEND_REASON);
+        return row -> {
+            ItineraryAttraction attraction = new ItineraryAttraction(row.getLong(itineraryIdIndex),
+                    row.getLong(siteIdIndex), row.getInt(dayNumberIndex), row.getInt(visitOrderIndex),
+                    row.getString(nameIndex), row.getString(transportIndex));
+            attraction.setId(row.getLong(idIndex));
+            String type = row.getString(typeIndex);
+            attraction.setType(type != null ? type : "景点");
+            attraction.setAiRecommended(row.getInt(isAiRecommendedIndex) == 1);
+            attraction.setAiRecommendReason(row.getString(aiRecommendReasonIndex));
+            return attraction;
+        };
+    }
+
+    private static RowMapper<Sites> siteMapper(Cursor cursor) {
+        int idIndex = cursor.getColumnIndexOrThrow(COLUMN_SITE_ID);
+        int poiIdIndex = cursor.getColumnIndexOrThrow(COLUMN_SITE_POI_ID);
+        int nameIndex = cursor.getColumnIndexOrThrow(COLUMN_SITE_NAME);
+        int latitudeIndex = cursor.getColumnIndexOrThrow(COLUMN_SITE_LATITUDE);
+        int longitudeIndex = cursor.getColumnIndexOrThrow(COLUMN_SITE_LONGITUDE);
+        int addressIndex = cursor.getColumnIndexOrThrow(COLUMN_SITE_ADDRESS);
+        int businessAreaIndex = cursor.getColumnIndexOrThrow(COLUMN_SITE_BUSINESS_AREA);
+        int telIndex = cursor.getColumnIndexOrThrow(COLUMN_SITE_TEL);
+        int websiteIndex = cursor.getColumnIndexOrThrow(COLUMN_SITE_WEBSITE);
+        int typeDescIndex = cursor.getColumnIndexOrThrow(COLUMN_SITE_TYPE_DESC);
+        int photosIndex = cursor.getColumnIndexOrThrow(COLUMN_SITE_PHOTOS);
+        return row -> {
+            Sites site = new Sites();
+            site.setId(row.getLong(idIndex));
+            site.setPoiId(row.getString(poiIdIndex));
+            site.setName(row.getString(nameIndex));
+            site.setLatitude(row.getDouble(latitudeIndex));
+            site.setLongitude(row.getDouble(longitudeIndex));
+            site.setAddress(row.getString(addressIndex));
+            site.setBusinessArea(row.getString(businessAreaIndex));
+            site.setTel(row.getString(telIndex));
+            site.setWebsite(row.getString(websiteIndex));
+            site.setTypeDesc(row.getString(typeDescIndex));
+            site.setPhotos(row.getString(photosIndex));
+            return site;
+        };
+    }
+
     // 获取所有行程单
     public ArrayList<Itinerary> getAllItineraries() {
         ArrayList<Itinerary> itineraries = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_ITINERARIES, null, null, null, null, null, null);
-        if (cursor.moveToFirst()) {
-            do {
-                int id = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_ID));
-                String title = cursor.getString(cursor.getColumnIndex(COLUMN_ITINERARY_TITLE));
-                String location = cursor.getString(cursor.getColumnIndex(COLUMN_ITINERARY_LOCATION));
-                int days = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_DAYS));
-                int userId = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_USER_ID));  // 获取user_id
-                int status = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_STATUS));  // 获取发布状态
-                Itinerary itinerary = new Itinerary(id, title, location, "pic3", days, userId, status); // 更新构造函数
-                itineraries.add(itinerary);
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
-        db.close();
+        itineraries.addAll(queryList(db, TABLE_ITINERARIES, ITINERARY_PROJECTION, null, null,
+                null, null, itineraryMapper("pic3")));
         return itineraries;
     }
 
     // 获取用户数量
     public int getUserSize() {
-        int size = 0;
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_USERS, null, null, null, null, null, null);
-        if (cursor.moveToFirst()) {
-            do {
-                size++;
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
-        db.close();
-        return size;
+        return (int) DatabaseUtils.queryNumEntries(db, TABLE_USERS);
     }
 
-    // 获取所有已发布的行程单
-    public ArrayList<Itinerary> getAllPublishItineraries() {
-        ArrayList<Itinerary> itineraries = new ArrayList<>();
-        SQLiteDatabase db = this.getReadableDatabase();
+    // 按 id 分页获取已发布的行程单：返回 id 大于 afterId 的前 limit 条，按 id 升序
+    // 第一页传 0，之后传上一页最后一条的 id；只按键值定位，翻到很后面也不需要像 OFFSET 那样跳过前面的行
+    // status 索引隐含 rowid（即 id），status=1 且 id>? 的范围扫描直接按 id 有序，不需要额外排序
+    public ArrayList<Itinerary> getPublishedItinerariesPage(long afterId, int limit) {
+        return getPublishedItinerariesPage(this.getReadableDatabase(), afterId, limit);
+    }
 
-        // 添加条件筛选，只查询status为true的行程单
-        String selection = COLUMN_ITINERARY_STATUS + "=?";
-        String[] selectionArgs = {"1"};  // "1" 表示 true
-
-        Cursor cursor = db.query(TABLE_ITINERARIES, null, selection, selectionArgs, null, null, null);
-
-        if (cursor.moveToFirst()) {
-            do {
-                int id = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_ID));
-                String title = cursor.getString(cursor.getColumnIndex(COLUMN_ITINERARY_TITLE));
-                String location = cursor.getString(cursor.getColumnIndex(COLUMN_ITINERARY_LOCATION));
-                int days = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_DAYS));
-                int userId = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_USER_ID));  // 获取user_id
-                int status = cursor.getInt(cursor.getColumnIndex(COLUMN_ITINERARY_STATUS));  // 获取发布状态
-
-                // 仅添加已发布（status = true）的行程单
-                if (status == 1) {
-                    Itinerary itinerary = new Itinerary(id, title, location, "pic3", days, userId, status); // 更新构造函数
-                    itineraries.add(itinerary);
-                }
-            } while (cursor.moveToNext());
-        }
+    ArrayList<Itinerary> getPublishedItinerariesPage(SQLiteDatabase db, long afterId, int limit) {
+        ArrayList<Itinerary> itineraries = new ArrayList<>();
+        String selection = COLUMN_ITINERARY_STATUS + "=? AND " + COLUMN_ITINERARY_ID + ">?";
+        String[] selectionArgs = {"1", String.valueOf(afterId)};  // "1" 表示已发布
 
-        cursor.close();
-        db.close();
+        itineraries.addAll(queryList(db, TABLE_ITINERARIES, ITINERARY_PROJECTION, selection, selectionArgs,
+                COLUMN_ITINERARY_ID, String.valueOf(limit), itineraryMapper("pic3")));
         return itineraries;
     }
 
     public long copyItineraryToCurrentUser(long originalItineraryId, long userId) {
-        SQLiteDatabase db = this.getWritableDatabase(); // 打开数据库连接
-
-        try {
-            // 获取原始行程单数据
-            Itinerary originalItinerary = getItineraryById(originalItineraryId);
-            if (originalItinerary == null) {
-                return -1; // 原始行程单不存在
-            }
+        SQLiteDatabase db = this.getWritableDatabase();
 
-            // 创建新的行程单数据，并将其所有者变更为当前登录用户
-            ContentValues values = new ContentValues();
-            values.put(COLUMN_ITINERARY_TITLE, originalItinerary.getTittle());
-            values.put(COLUMN_ITINERARY_LOCATION, originalItinerary.getLocation());
-            values.put(COLUMN_ITINERARY_DAYS, originalItinerary.getDays());
-            values.put(COLUMN_ITINERARY_USER_ID, userId); // 更新为当前登录用户的 ID
-            values.put(COLUMN_ITINERARY_STATUS, 0);  // 新增的行程单默认为草稿状态（未发布）
-
-            long newItineraryId = db.insert(TABLE_ITINERARIES, null, values); // 插入新行程单
-
-            if (newItineraryId > 0) {
-                // 复制原行程单中的所有景点到新的行程单
-                ArrayList<ItineraryAttraction> originalAttractions = getItineraryAttractions(originalItineraryId);
-                for (ItineraryAttraction attraction : originalAttractions) {
-                    attraction.setItineraryId(newItineraryId); // 更新为新的行程单ID
-                    addAttraction(attraction);  // 插入新行程单的景点
-                }
-            }
+        // 获取原始行程单数据
+        Itinerary originalItinerary = getItineraryById(originalItineraryId);
+        if (originalItinerary == null) {
+            return -1; // 原始行程单不存在
+        }
 
-            return newItineraryId; // 返回新行程单的 ID
-        } finally {
-            // 确保在方法结束时关闭数据库连接
-            db.close();
+        // 创建新的行程单数据，并将其所有者变更为当前登录用户
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ITINERARY_TITLE, originalItinerary.getTittle());
+        values.put(COLUMN_ITINERARY_LOCATION, originalItinerary.getLocation());
+        values.put(COLUMN_ITINERARY_DAYS, originalItinerary.getDays());
+        values.put(COLUMN_ITINERARY_USER_ID, userId); // 更新为当前登录用户的 ID
+        values.put(COLUMN_ITINERARY_STATUS, 0);  // 新增的行程单默认为草稿状态（未发布）
+
+        long newItineraryId = db.insert(TABLE_ITINERARIES, null, values); // 插入新行程单
+
+        if (newItineraryId > 0) {
+            // 复制原行程单中的所有景点到新的行程单
+            ArrayList<ItineraryAttraction> originalAttractions = getItineraryAttractions(originalItineraryId);
+            replaceAttractionsForItinerary(newItineraryId, originalAttractions);
+            notifyChanged(ItineraryRepository.Change.Type.ITINERARY, newItineraryId, ItineraryRepository.Change.ALL_DAYS);
         }
+
+        return newItineraryId; // 返回新行程单的 ID
     }
 
 
@@ -523,7 +840,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         String[] whereArgs = {String.valueOf(itineraryId)};
 
         int rowsAffected = db.update(TABLE_ITINERARIES, values, whereClause, whereArgs);
-        db.close();
+        notifyChanged(ItineraryRepository.Change.Type.ITINERARY, itineraryId, ItineraryRepository.Change.ALL_DAYS);
         return rowsAffected > 0; // 返回是否成功更新数据
     }
 
@@ -535,74 +852,69 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         try {
             String selection = COLUMN_ATTRACTION_ITINERARY_ID + "=?";
             String[] selectionArgs = {String.valueOf(itineraryId)};
-            Cursor cursor = db.query(TABLE_ATTRACTIONS, null, selection, selectionArgs, null, null, null);
-
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    // 获取列索引
-                    int siteIdIndex = cursor.getColumnIndex(COLUMN_ITINERARY_SITE_ID);
-                    int dayNumberIndex = cursor.getColumnIndex(COLUMN_ATTRACTION_DAY_NUMBER);
-                    int visitOrderIndex = cursor.getColumnIndex(COLUMN_ATTRACTION_VISIT_ORDER);
-                    int nameIndex = cursor.getColumnIndex(COLUMN_ATTRACTION_NAME);
-                    int transportIndex = cursor.getColumnIndex(COLUMN_ATTRACTION_TRANSPORT);
-                    int typeIndex = cursor.getColumnIndex(COLUMN_ATTRACTION_TYPE);
-
-                    // AI推荐相关的列索引（可能不存在）
-                    int isAiRecommendedIndex = cursor.getColumnIndex(COLUMN_ATTRACTION_IS_AI_RECOMMENDED);
-                    int aiRecommendReasonIndex = cursor.getColumnIndex(COLUMN_ATTRACTION_AI_RECOMMEND_REASON);
-
-                    // 检查列是否存在
-                    if (siteIdIndex == -1 || dayNumberIndex == -1 || visitOrderIndex == -1 ||
-                            nameIndex == -1 || transportIndex == -1) {
-                        Log.e(TAG, "某些必需的列不存在");
-                        continue;
-                    }
+            attractions.addAll(queryList(db, TABLE_ATTRACTIONS, ATTRACTION_PROJECTION, selection, selectionArgs,
+                    ATTRACTION_ORDER_BY, null, DatabaseHelper::attractionMapper));
+        } catch (Exception e) {
+            Log.e(TAG, "获取行程景点时出错: " + e.getMessage());
+        }
 
-                    // 读取数据
-                    long siteId = cursor.getLong(siteIdIndex);
-                    int dayNumber = cursor.getInt(dayNumberIndex);
-                    int visitOrder = cursor.getInt(visitOrderIndex);
-                    String name = cursor.getString(nameIndex);
-                    String transport = cursor.getString(transportIndex);
-
-                    // 创建ItineraryAttraction对象
-                    ItineraryAttraction attraction = new ItineraryAttraction(itineraryId, siteId, dayNumber, visitOrder, name, transport);
-
-                    // 设置类型（如果列存在）
-                    if (typeIndex != -1) {
-                        String type = cursor.getString(typeIndex);
-                        attraction.setType(type != null ? type : "景点");
-                    } else {
-                        attraction.setType("景点");
-                    }
+        return attractions;
+    }
 
-                    // 设置AI推荐相关字段（如果列存在）
-                    try {
-                        if (isAiRecommendedIndex != -1) {
-                            attraction.setAiRecommended(cursor.getInt(isAiRecommendedIndex) == 1);
-                        }
-
-                        if (aiRecommendReasonIndex != -1) {
-                            attraction.setAiRecommendReason(cursor.getString(aiRecommendReasonIndex));
-                        }
-                    } catch (Exception e) {
-                        // 如果AI推荐相关列读取失败，设置默认值
-                        Log.w(TAG, "读取AI推荐信息失败，使用默认值: " + e.getMessage());
-                        attraction.setAiRecommended(false);
-                        attraction.setAiRecommendReason("");
-                    }
+    // 获取指定行程的所有景点，并通过联表查询一次性带出对应的site信息
+    public ArrayList<ItineraryAttraction> getItineraryAttractionsWithSites(long itineraryId) {
+        ArrayList<ItineraryAttraction> attractions = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
 
-                    attractions.add(attraction);
-                } while (cursor.moveToNext());
-            }
+        String query = "SELECT a." + COLUMN_ATTRACTION_ID + ", a." + COLUMN_ITINERARY_SITE_ID +
+                ", a." + COLUMN_ATTRACTION_DAY_NUMBER + ", a." + COLUMN_ATTRACTION_VISIT_ORDER +
+                ", a." + COLUMN_ATTRACTION_NAME + ", a." + COLUMN_ATTRACTION_TRANSPORT +
+                ", a." + COLUMN_ATTRACTION_TYPE + ", a." + COLUMN_ATTRACTION_IS_AI_RECOMMENDED +
+                ", a." + COLUMN_ATTRACTION_AI_RECOMMEND_REASON +
+                ", s." + COLUMN_SITE_ID + ", s." + COLUMN_SITE_POI_ID + ", s." + COLUMN_SITE_NAME +
+                ", s." + COLUMN_SITE_LATITUDE + ", s." + COLUMN_SITE_LONGITUDE +
+                ", s." + COLUMN_SITE_ADDRESS + ", s." + COLUMN_SITE_BUSINESS_AREA +
+                ", s." + COLUMN_SITE_TEL + ", s." + COLUMN_SITE_WEBSITE +
+                ", s." + COLUMN_SITE_TYPE_DESC + ", s." + COLUMN_SITE_PHOTOS +
+                " FROM " + TABLE_ATTRACTIONS + " a" +
+                " LEFT JOIN " + TABLE_SITES + " s ON a." + COLUMN_ITINERARY_SITE_ID + " = s." + COLUMN_SITE_ID +
+                " WHERE a." + COLUMN_ATTRACTION_ITINERARY_ID + "=?" +
+                " ORDER BY a." + COLUMN_ATTRACTION_DAY_NUMBER + ", a." + COLUMN_ATTRACTION_VISIT_ORDER +
+                ", a." + COLUMN_ATTRACTION_ID;
+
+        try (Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(itineraryId)})) {
+            while (cursor.moveToNext()) {
+                ItineraryAttraction attraction = new ItineraryAttraction(itineraryId,
+                        cursor.getLong(1), cursor.getInt(2), cursor.getInt(3),
+                        cursor.getString(4), cursor.getString(5));
+                attraction.setId(cursor.getLong(0));
+                String type = cursor.getString(6);
+                attraction.setType(type != null ? type : "景点");
+                attraction.setAiRecommended(cursor.getInt(7) == 1);
+                attraction.setAiRecommendReason(cursor.getString(8));
+
+                // LEFT JOIN 未匹配到site时该列为NULL
+                if (!cursor.isNull(9)) {
+                    Sites site = new Sites();
+                    site.setId(cursor.getLong(9));
+                    site.setPoiId(cursor.getString(10));
+                    site.setName(cursor.getString(11));
+                    site.setLatitude(cursor.getDouble(12));
+                    site.setLongitude(cursor.getDouble(13));
+                    site.setAddress(cursor.getString(14));
+                    site.setBusinessArea(cursor.getString(15));
+                    site.setTel(cursor.getString(16));
+                    site.setWebsite(cursor.getString(17));
+                    site.setTypeDesc(cursor.getString(18));
+                    site.setPhotos(cursor.getString(19));
+                    cacheCommittedSite(db, site);
+                    attraction.setSite(site);
+                }
 
-            if (cursor != null) {
-                cursor.close();
+                attractions.add(attraction);
             }
         } catch (Exception e) {
-            Log.e(TAG, "获取行程景点时出错: " + e.getMessage());
-        } finally {
-            db.close();
+            Log.e(TAG, "联表获取行程景点时出错: " + e.getMessage());
         }
 
         return attractions;
@@ -623,7 +935,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         String[] whereArgs = {String.valueOf(itinerary.getId())};
 
         int rowsAffected = db.update(TABLE_ITINERARIES, values, whereClause, whereArgs);
-        db.close();
+        notifyChanged(ItineraryRepository.Change.Type.ITINERARY, itinerary.getId(), ItineraryRepository.Change.ALL_DAYS);
         return rowsAffected > 0; // 返回是否成功更新数据
     }
 
@@ -651,12 +963,11 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         try {
             int rowsAffected = db.update(TABLE_ITINERARIES, values, whereClause, whereArgs);
             Log.d(TAG, "更新行程天数结果: 影响行数=" + rowsAffected);
-            db.close();
+            notifyChanged(ItineraryRepository.Change.Type.ITINERARY, itineraryId, ItineraryRepository.Change.ALL_DAYS);
             return rowsAffected > 0;
         } catch (Exception e) {
             Log.e(TAG, "更新行程天数失败: " + e.getMessage());
             e.printStackTrace();
-            db.close();
             return false;
         }
     }
@@ -693,7 +1004,6 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 Log.w(TAG, "未找到行程景点或查询结果为空");
             }
             
-            db.close();
             
             // 获取当前行程的天数
             Itinerary itinerary = getItineraryById(itineraryId);
@@ -718,31 +1028,22 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         } catch (Exception e) {
             Log.e(TAG, "计算行程天数失败: " + e.getMessage());
             e.printStackTrace();
-            db.close();
             return false;
         }
     }
 
     public Sites getSiteBySiteId(long siteId, SQLiteDatabase db) {
+        Sites cached = sitesCache.getById(siteId);
+        if (cached != null) {
+            return cached;
+        }
+
         String selection = COLUMN_SITE_ID + "=?";
         String[] selectionArgs = {String.valueOf(siteId)};
-        Cursor cursor = db.query(TABLE_SITES, null, selection, selectionArgs, null, null, null);
-        Sites site = null;
-        if (cursor != null && cursor.moveToFirst()) {
-            site = new Sites();
-            site.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_SITE_ID)));
-            site.setPoiId(cursor.getString(cursor.getColumnIndex(COLUMN_SITE_POI_ID)));
-            site.setName(cursor.getString(cursor.getColumnIndex(COLUMN_SITE_NAME)));
-            site.setLatitude(cursor.getDouble(cursor.getColumnIndex(COLUMN_SITE_LATITUDE)));
-            site.setLongitude(cursor.getDouble(cursor.getColumnIndex(COLUMN_SITE_LONGITUDE)));
-            site.setAddress(cursor.getString(cursor.getColumnIndex(COLUMN_SITE_ADDRESS)));
-            site.setBusinessArea(cursor.getString(cursor.getColumnIndex(COLUMN_SITE_BUSINESS_AREA)));
-            site.setTel(cursor.getString(cursor.getColumnIndex(COLUMN_SITE_TEL)));
-            site.setWebsite(cursor.getString(cursor.getColumnIndex(COLUMN_SITE_WEBSITE)));
-            site.setTypeDesc(cursor.getString(cursor.getColumnIndex(COLUMN_SITE_TYPE_DESC)));
-            site.setPhotos(cursor.getString(cursor.getColumnIndex(COLUMN_SITE_PHOTOS)));
-            cursor.close();
-        }
+        List<Sites> rows = queryList(db, TABLE_SITES, SITE_PROJECTION, selection, selectionArgs,
+                null, "1", DatabaseHelper::siteMapper);
+        Sites site = rows.isEmpty() ? null : rows.get(0);
+        cacheCommittedSite(db, site);
         return site;
     }
 
@@ -750,7 +1051,6 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public Sites getSiteBySiteId(long siteId) {
         SQLiteDatabase db = this.getReadableDatabase();
         Sites site = getSiteBySiteId(siteId, db);
-        db.close();
         return site;
     }
 
@@ -778,7 +1078,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         };
 
         int rowsAffected = db.delete(TABLE_ATTRACTIONS, whereClause, whereArgs);
-        db.close();
+        notifyChanged(ItineraryRepository.Change.Type.ATTRACTIONS, itineraryId, dayNumber);
         return rowsAffected > 0;
     }
 
@@ -795,7 +1095,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     COLUMN_ATTRACTION_ID + " = ?",
                     new String[]{String.valueOf(attractionId)});
 
-            db.close();
+            notifyChanged(ItineraryRepository.Change.Type.ATTRACTIONS,
+                    ItineraryRepository.Change.ALL_ITINERARIES, ItineraryRepository.Change.ALL_DAYS);
             return result > 0;
         } catch (Exception e) {
             // 如果列不存在，记录日志但不影响程序正常运行
@@ -812,9 +1113,12 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         values.put(COLUMN_ATTRACTION_DAY_NUMBER, dayNumber);
         values.put(COLUMN_ATTRACTION_VISIT_ORDER, visitOrder);
 
-        return db.update(TABLE_ATTRACTIONS, values,
+        int rowsAffected = db.update(TABLE_ATTRACTIONS, values,
                 COLUMN_ATTRACTION_ID + " = ?",
-                new String[]{String.valueOf(attractionId)}) > 0;
+                new String[]{String.valueOf(attractionId)});
+        notifyChanged(ItineraryRepository.Change.Type.ATTRACTIONS,
+                ItineraryRepository.Change.ALL_ITINERARIES, ItineraryRepository.Change.ALL_DAYS);
+        return rowsAffected > 0;
     }
 
     // 检查指定行程的特定天数和顺序是否存在景点
@@ -837,7 +1141,6 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         if (cursor != null) {
             cursor.close();
         }
-        db.close();
         
         return exists;
     }
@@ -865,8 +1168,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         };
         
         int rowsAffected = db.update(TABLE_ATTRACTIONS, values, whereClause, whereArgs);
-        db.close();
         
+        notifyChanged(ItineraryRepository.Change.Type.ATTRACTIONS, itineraryId, dayNumber);
         return rowsAffected > 0;
     }
 }
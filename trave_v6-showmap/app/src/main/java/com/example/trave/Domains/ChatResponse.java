@@ -0,0 +1,183 @@
+package com.example.trave.Domains;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+
+// AI 回复中 <!--JSON_DATA:...--> 携带的结构化数据
+// 按 data_type 只填充对应的一种内容，其余为 null
+@JsonAdapter(ChatResponse.AdapterFactory.class)
+public class ChatResponse {
+    public static final String RESTAURANT_RECOMMENDATIONS = "restaurant_recommendations";
+    public static final String POI_RECOMMENDATIONS = "poi_recommendations";
+    public static final String POI_REPLACE = "poi_replace";
+    public static final String ITINERARY_UPDATE = "itinerary_update";
+    public static final String OPTIMIZED_ITINERARY = "optimized_itinerary";
+
+    private String dataType;
+    private RestaurantRecommendations restaurantRecommendations;
+    private PoiRecommendations poiRecommendations;
+    private OptimizedItinerary optimizedItinerary;
+
+    // 客户端合并多个子请求的推荐结果时使用
+    public static ChatResponse ofRestaurants(List<RecommendedRestaurant> recommendations) {
+        ChatResponse response = new ChatResponse();
+        response.dataType = RESTAURANT_RECOMMENDATIONS;
+        response.restaurantRecommendations = new RestaurantRecommendations(recommendations);
+        return response;
+    }
+
+    public static ChatResponse ofPois(List<RecommendedPOI> recommendations) {
+        ChatResponse response = new ChatResponse();
+        response.dataType = POI_RECOMMENDATIONS;
+        response.poiRecommendations = new PoiRecommendations(recommendations, null);
+        return response;
+    }
+
+    public String getDataType() {
+        return dataType;
+    }
+
+    public boolean isType(String type) {
+        return type.equals(dataType);
+    }
+
+    public RestaurantRecommendations getRestaurantRecommendations() {
+        return restaurantRecommendations;
+    }
+
+    public PoiRecommendations getPoiRecommendations() {
+        return poiRecommendations;
+    }
+
+    public OptimizedItinerary getOptimizedItinerary() {
+        return optimizedItinerary;
+    }
+
+    // 流式读取：recommendations 的元素类型取决于 data_type，
+    // data_type 出现在它之前时直接读成模型，否则先暂存为 JsonElement 再转换
+    static class AdapterFactory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return (TypeAdapter<T>) new Adapter(gson);
+        }
+    }
+
+    private static class Adapter extends TypeAdapter<ChatResponse> {
+        private final TypeAdapter<String> stringAdapter;
+        private final TypeAdapter<List<RecommendedRestaurant>> restaurantsAdapter;
+        private final TypeAdapter<List<RecommendedPOI>> poisAdapter;
+        private final TypeAdapter<PoiRecommendations.ReplaceInfo> replaceInfoAdapter;
+        private final TypeAdapter<OptimizedItinerary> itineraryAdapter;
+
+        Adapter(Gson gson) {
+            stringAdapter = gson.getAdapter(String.class);
+            restaurantsAdapter = gson.getAdapter(new TypeToken<List<RecommendedRestaurant>>() {});
+            poisAdapter = gson.getAdapter(new TypeToken<List<RecommendedPOI>>() {});
+            replaceInfoAdapter = gson.getAdapter(PoiRecommendations.ReplaceInfo.class);
+            itineraryAdapter = gson.getAdapter(OptimizedItinerary.class);
+        }
+
+        @Override
+        public ChatResponse read(JsonReader in) throws IOException {
+            ChatResponse response = new ChatResponse();
+            List<RecommendedRestaurant> restaurants = null;
+            List<RecommendedPOI> pois = null;
+            JsonElement pendingRecommendations = null;
+            PoiRecommendations.ReplaceInfo replaceInfo = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "data_type":
+                        response.dataType = stringAdapter.read(in);
+                        break;
+                    case "recommendations":
+                        if (response.dataType == null) {
+                            pendingRecommendations = JsonParser.parseReader(in);
+                        } else if (response.isType(RESTAURANT_RECOMMENDATIONS)) {
+                            restaurants = restaurantsAdapter.read(in);
+                        } else if (isPoiType(response.dataType)) {
+                            pois = poisAdapter.read(in);
+                        } else {
+                            in.skipValue();
+                        }
+                        break;
+                    case "replace_poi_info":
+                        replaceInfo = replaceInfoAdapter.read(in);
+                        break;
+                    case "itinerary":
+                        response.optimizedItinerary = itineraryAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            if (pendingRecommendations != null && response.dataType != null) {
+                if (response.isType(RESTAURANT_RECOMMENDATIONS)) {
+                    restaurants = restaurantsAdapter.fromJsonTree(pendingRecommendations);
+                } else if (isPoiType(response.dataType)) {
+                    pois = poisAdapter.fromJsonTree(pendingRecommendations);
+                }
+            }
+
+            if (response.isType(RESTAURANT_RECOMMENDATIONS)) {
+                response.restaurantRecommendations = new RestaurantRecommendations(restaurants);
+            } else if (isPoiType(response.dataType)) {
+                response.poiRecommendations = new PoiRecommendations(pois,
+                        replaceInfo != null ? replaceInfo.targetPoi : null);
+            }
+            if (!response.isType(OPTIMIZED_ITINERARY)) {
+                response.optimizedItinerary = null;
+            }
+            return response;
+        }
+
+        // 与 read 对称：按 data_type 只写出对应的一种内容，写出的 JSON 可以原样读回
+        @Override
+        public void write(JsonWriter out, ChatResponse value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("data_type");
+            stringAdapter.write(out, value.dataType);
+            if (value.restaurantRecommendations != null) {
+                out.name("recommendations");
+                restaurantsAdapter.write(out, value.restaurantRecommendations.getRecommendations());
+            } else if (value.poiRecommendations != null) {
+                out.name("recommendations");
+                poisAdapter.write(out, value.poiRecommendations.getRecommendations());
+                if (value.poiRecommendations.getTargetPoi() != null) {
+                    PoiRecommendations.ReplaceInfo replaceInfo = new PoiRecommendations.ReplaceInfo();
+                    replaceInfo.targetPoi = value.poiRecommendations.getTargetPoi();
+                    out.name("replace_poi_info");
+                    replaceInfoAdapter.write(out, replaceInfo);
+                }
+            }
+            if (value.optimizedItinerary != null) {
+                out.name("itinerary");
+                itineraryAdapter.write(out, value.optimizedItinerary);
+            }
+            out.endObject();
+        }
+
+        private static boolean isPoiType(String dataType) {
+            return POI_RECOMMENDATIONS.equals(dataType) || POI_REPLACE.equals(dataType);
+        }
+    }
+}
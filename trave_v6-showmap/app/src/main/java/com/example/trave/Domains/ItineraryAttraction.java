@@ -14,6 +14,7 @@ public class ItineraryAttraction implements Parcelable {
     private String type;
     private boolean isAiRecommended;
     private String aiRecommendReason;
+    private Sites site;  // 关联的地点详情，仅在联表查询时填充
 
     public ItineraryAttraction(long itineraryId, long siteId, int dayNumber, int visitOrder, String attractionName, String transport, String type) {
         this.itineraryId = itineraryId;
@@ -79,6 +80,7 @@ public class ItineraryAttraction implements Parcelable {
         type = in.readString();
         isAiRecommended = in.readInt() == 1;
         aiRecommendReason = in.readString();
+        site = in.readParcelable(Sites.class.getClassLoader());
     }
 
     public static final Creator<ItineraryAttraction> CREATOR = new Creator<ItineraryAttraction>() {
@@ -145,6 +147,14 @@ public class ItineraryAttraction implements Parcelable {
         this.aiRecommendReason = aiRecommendReason;
     }
 
+    public Sites getSite() {
+        return site;
+    }
+
+    public void setSite(Sites site) {
+        this.site = site;
+    }
+
     public void setItineraryId(long itineraryId) {
         this.itineraryId = itineraryId;
     }
@@ -182,5 +192,6 @@ public class ItineraryAttraction implements Parcelable {
         dest.writeString(type);
         dest.writeInt(isAiRecommended ? 1 : 0);
         dest.writeString(aiRecommendReason);
+        dest.writeParcelable(site, flags);
     }
 }
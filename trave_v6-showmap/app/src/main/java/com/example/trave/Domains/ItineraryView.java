@@ -0,0 +1,136 @@
+package com.example.trave.Domains;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 行程景点的只读视图：按天分好组、每天按游览顺序排好，并预先统计数量和类型
+// 数据变化时在后台线程整体重建一次，适配器绑定时直接按天取用，不再扫描全部景点
+// 创建后不可修改，可以在线程之间传递
+public final class ItineraryView {
+    private static final String DEFAULT_TYPE = "景点";
+    private static final ItineraryView EMPTY = new ItineraryView(Collections.emptyList(), Collections.emptyList());
+
+    private final List<Day> days;
+    private final List<ItineraryAttraction> allAttractions;
+
+    // 一天的景点切片
+    public static final class Day {
+        private final int dayNumber;
+        private final List<ItineraryAttraction> attractions;
+        private final Map<String, Integer> typeCounts;
+        private final String typeSummary;
+
+        private Day(int dayNumber, List<ItineraryAttraction> attractions) {
+            this.dayNumber = dayNumber;
+            this.attractions = Collections.unmodifiableList(attractions);
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (ItineraryAttraction attraction : attractions) {
+                String type = attraction.getType();
+                counts.merge(type == null || type.isEmpty() ? DEFAULT_TYPE : type, 1, Integer::sum);
+            }
+            this.typeCounts = Collections.unmodifiableMap(counts);
+            StringBuilder summary = new StringBuilder();
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                if (summary.length() > 0) {
+                    summary.append("，");
+                }
+                summary.append(entry.getValue()).append("个").append(entry.getKey());
+            }
+            this.typeSummary = summary.toString();
+        }
+
+        public int getDayNumber() {
+            return dayNumber;
+        }
+
+        // 按游览顺序排列，不可修改
+        public List<ItineraryAttraction> getAttractions() {
+            return attractions;
+        }
+
+        public int getAttractionCount() {
+            return attractions.size();
+        }
+
+        // 各类型的数量，按首次出现的顺序
+        public Map<String, Integer> getTypeCounts() {
+            return typeCounts;
+        }
+
+        // 例如 "3个景点，1个餐厅"，没有景点时为空字符串
+        public String getTypeSummary() {
+            return typeSummary;
+        }
+    }
+
+    private ItineraryView(List<Day> days, List<ItineraryAttraction> allAttractions) {
+        this.days = Collections.unmodifiableList(days);
+        this.allAttractions = Collections.unmodifiableList(allAttractions);
+    }
+
+    public static ItineraryView empty() {
+        return EMPTY;
+    }
+
+    // 第1天到景点中最大的天数各一组
+    public static ItineraryView of(List<ItineraryAttraction> attractions) {
+        return of(attractions, 0);
+    }
+
+    // 第1天到 max(dayCount, 景点中最大的天数) 各一组，没有景点的天为空；天数小于1的景点被忽略
+    public static ItineraryView of(List<ItineraryAttraction> attractions, int dayCount) {
+        int maxDay = dayCount;
+        for (ItineraryAttraction attraction : attractions) {
+            maxDay = Math.max(maxDay, attraction.getDayNumber());
+        }
+        if (maxDay <= 0) {
+            return EMPTY;
+        }
+        List<List<ItineraryAttraction>> grouped = new ArrayList<>(maxDay);
+        for (int day = 1; day <= maxDay; day++) {
+            grouped.add(new ArrayList<>());
+        }
+        for (ItineraryAttraction attraction : attractions) {
+            if (attraction.getDayNumber() > 0) {
+                grouped.get(attraction.getDayNumber() - 1).add(attraction);
+            }
+        }
+        List<Day> days = new ArrayList<>(maxDay);
+        List<ItineraryAttraction> all = new ArrayList<>(attractions.size());
+        for (int day = 1; day <= maxDay; day++) {
+            List<ItineraryAttraction> dayAttractions = grouped.get(day - 1);
+            Collections.sort(dayAttractions, (a1, a2) -> Integer.compare(a1.getVisitOrder(), a2.getVisitOrder()));
+            days.add(new Day(day, dayAttractions));
+            all.addAll(dayAttractions);
+        }
+        return new ItineraryView(days, all);
+    }
+
+    public List<Day> getDays() {
+        return days;
+    }
+
+    public int getDayCount() {
+        return days.size();
+    }
+
+    // 天数从1开始；超出范围时返回 null
+    public Day getDay(int dayNumber) {
+        if (dayNumber < 1 || dayNumber > days.size()) {
+            return null;
+        }
+        return days.get(dayNumber - 1);
+    }
+
+    // 所有景点，按天和游览顺序排列
+    public List<ItineraryAttraction> getAllAttractions() {
+        return allAttractions;
+    }
+
+    public int getAttractionCount() {
+        return allAttractions.size();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.trave.Domains;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// data_type = optimized_itinerary 的响应内容，对应响应中的 itinerary 对象
+public class OptimizedItinerary {
+    private List<Attraction> attractions = new ArrayList<>();
+
+    public List<Attraction> getAttractions() {
+        return attractions != null ? attractions : new ArrayList<>();
+    }
+
+    // 优化后行程中的一个景点
+    public static class Attraction {
+        private String name = "";
+        private int day;
+        private int order;
+        private String type = "景点";
+        private String transport = "步行";
+        @SerializedName("poi_id")
+        private String poiId = "";
+        private double latitude;
+        private double longitude;
+        private String address = "";
+        private String tel = "";
+        @SerializedName("type_desc")
+        private String typeDesc = "";
+        private String reason = "";
+
+        public String getName() { return name; }
+        public int getDay() { return day; }
+        public int getOrder() { return order; }
+        public String getType() { return type; }
+        public String getTransport() { return transport; }
+        public String getPoiId() { return poiId; }
+        public double getLatitude() { return latitude; }
+        public double getLongitude() { return longitude; }
+        public String getAddress() { return address; }
+        public String getTel() { return tel; }
+        public String getTypeDesc() { return typeDesc; }
+        public String getReason() { return reason; }
+    }
+}
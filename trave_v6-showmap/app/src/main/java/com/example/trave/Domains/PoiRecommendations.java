@@ -0,0 +1,43 @@
+package com.example.trave.Domains;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.Collections;
+import java.util.List;
+
+// data_type = poi_recommendations / poi_replace 的响应内容
+// poi_replace 额外带有被替换景点的信息 replace_poi_info.target_poi
+public class PoiRecommendations {
+    private final List<RecommendedPOI> recommendations;
+    private final TargetPoi targetPoi;
+
+    public PoiRecommendations(List<RecommendedPOI> recommendations, TargetPoi targetPoi) {
+        this.recommendations = recommendations != null ? recommendations : Collections.emptyList();
+        this.targetPoi = targetPoi;
+    }
+
+    public List<RecommendedPOI> getRecommendations() {
+        return recommendations;
+    }
+
+    // 仅 poi_replace 有值
+    public TargetPoi getTargetPoi() {
+        return targetPoi;
+    }
+
+    static class ReplaceInfo {
+        @SerializedName("target_poi")
+        TargetPoi targetPoi;
+    }
+
+    // 被替换的行程景点
+    public static class TargetPoi {
+        private String name = "";
+        private int day = 1;
+        private int order = 1;
+
+        public String getName() { return name; }
+        public int getDay() { return day; }
+        public int getOrder() { return order; }
+    }
+}
@@ -1,82 +1,37 @@
 package com.example.trave.Domains;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-import android.util.Log;
+import com.google.gson.annotations.SerializedName;
+
+import java.util.Objects;
 
 /**
- * 推荐景点POI模型类
+ * 推荐景点POI模型类，由 Gson 直接从后端响应反序列化
  */
 public class RecommendedPOI {
-    private static final String TAG = "RecommendedPOI";
-    
-    private String id;
-    private String name;
+    @SerializedName(value = "uid", alternate = {"id"})
+    private String id = "";
+    private String name = "未知景点";
     private double rating;
-    private String distance;
-    private String type;
-    private String simpleType;
-    private String address;
+    private String distance = "";
+    private String type = "景点";
+    private transient String simpleType;
+    private String address = "未知地址";
     private double lat;
     private double lng;
-    private double[] coordinates;
-    private String recommendationReason;
-    private String openingHours;
-    private String telephone;
-    private JSONObject originalData; // 保存原始JSON数据
-
-    public RecommendedPOI(JSONObject jsonObject) {
-        try {
-            this.originalData = jsonObject;
-            
-            // 基本信息
-            this.id = jsonObject.optString("uid", jsonObject.optString("id", ""));
-            this.name = jsonObject.optString("name", "未知景点");
-            this.type = jsonObject.optString("type", "景点");
-            this.address = jsonObject.optString("address", "未知地址");
-            this.recommendationReason = jsonObject.optString("recommendation_reason", "");
-            this.telephone = jsonObject.optString("tel", "无电话");
-            this.openingHours = jsonObject.optString("opentime_week", "无营业时间");
-            this.lat=jsonObject.optDouble("lat",0);
-            this.lng=jsonObject.optDouble("lng",0);
-            // 提取评分
-            String ratingStr = jsonObject.optString("rating", "0");
-            try {
-                this.rating = Double.parseDouble(ratingStr);
-            } catch (NumberFormatException e) {
-                this.rating = 0;
-            }
-            
-            // 提取距离
-            this.distance = jsonObject.optString("distance", "");
-            
-//            // 提取坐标 - 简化处理，直接从lat和lng字段获取
-//            if (jsonObject.has("lat") && jsonObject.has("lng")) {
-//                this.coordinates = new double[2];
-//                this.coordinates[0] = jsonObject.optDouble("lat", 0); // 纬度
-//                this.coordinates[1] = jsonObject.optDouble("lng", 0); // 经度
-//            } else {
-//                this.coordinates = null;
-//            }
-            
-            // 处理类型简化
-            this.simpleType = simplifyType(this.type);
-            
-        } catch (Exception e) {
-            Log.e(TAG, "解析POI数据失败: " + e.getMessage());
-            // 使用默认值
-            this.id = "";
-            this.name = "未知景点";
-            this.rating = 4.0;
-            this.distance = "未知";
-            this.type = "景点";
-            this.simpleType = "景点";
-            this.address = "未知地址";
-            this.coordinates = null;
-            this.recommendationReason = "";
-            this.openingHours = "无营业时间";
-            this.telephone = "无电话";
-        }
+    @SerializedName("recommendation_reason")
+    private String recommendationReason = "";
+    @SerializedName("opentime_week")
+    private String openingHours = "无营业时间";
+    @SerializedName("tel")
+    private String telephone = "无电话";
+    @SerializedName("business_area")
+    private String businessArea = "";
+    // 要放入的行程位置，后端未指定时为null
+    private Integer day;
+    private Integer order;
+
+    // 供 Gson 反序列化使用，未出现的字段保留上面的默认值
+    public RecommendedPOI() {
     }
 
     // 简化类型名称
@@ -123,6 +78,9 @@ public class RecommendedPOI {
     }
 
     public String getSimpleType() {
+        if (simpleType == null) {
+            simpleType = simplifyType(type);
+        }
         return simpleType;
     }
 
@@ -130,14 +88,14 @@ public class RecommendedPOI {
         return address;
     }
 
-    public double[] getCoordinates() {
-        return coordinates;
-    }
-
     public String getRecommendationReason() {
         return recommendationReason;
     }
 
+    public void setRecommendationReason(String recommendationReason) {
+        this.recommendationReason = recommendationReason;
+    }
+
     public String getOpeningHours() {
         return openingHours;
     }
@@ -146,8 +104,26 @@ public class RecommendedPOI {
         return telephone;
     }
 
-    public JSONObject getOriginalData() {
-        return originalData;
+    public String getBusinessArea() {
+        return businessArea;
+    }
+
+    public int getDay() {
+        return day != null ? day : 1;
+    }
+
+    public int getOrder() {
+        return order != null ? order : 1;
+    }
+
+    // 后端是否给出了行程位置
+    public boolean hasSlot() {
+        return day != null && order != null;
+    }
+
+    public void setSlot(int day, int order) {
+        this.day = day;
+        this.order = order;
     }
 
     // 重写equals方法，用于在列表中查找和比较对象
@@ -164,14 +140,11 @@ public class RecommendedPOI {
         }
         
         // 如果名称和地址都相同，也认为是同一个POI
-        return name.equals(other.name) && address.equals(other.address);
+        return Objects.equals(name, other.name) && Objects.equals(address, other.address);
     }
 
     @Override
     public int hashCode() {
-        int result = id != null ? id.hashCode() : 0;
-        result = 31 * result + name.hashCode();
-        result = 31 * result + address.hashCode();
-        return result;
+        return Objects.hash(id, name, address);
     }
 } 
\ No newline at end of file
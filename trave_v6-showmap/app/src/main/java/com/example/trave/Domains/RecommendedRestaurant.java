@@ -1,83 +1,42 @@
 package com.example.trave.Domains;
 
-import org.json.JSONObject;
-import org.json.JSONArray;
-import android.util.Log;
+import com.google.gson.annotations.SerializedName;
 
 /**
  * 推荐餐厅模型类
  */
 public class RecommendedRestaurant {
-    private static final String TAG = "RecommendedRestaurant";
-    private String id;
-    private String name;
-    private double rating;
-    private String distance;
-    private String reason;
-    private String cuisineType;
-    private String imageUrl;
-    private String address;
-    private double priceLevel;
+    @SerializedName("uid")
+    private String id = "";
+    private String name = "未知餐厅";
+    @SerializedName("overall_rating")
+    private double rating = 4.5;
+    private String distance = "未知";
+    private String reason = "";
+    @SerializedName("label")
+    private String cuisineType = "未知菜系";
+    private String imageUrl = "";
+    private String address = "未知地址";
     private double latitude;
     private double longitude;
-    private String telephone;
-    private String shopHours;
-    private String commentNum;
-    private JSONObject originalData; // 保存原始JSON数据
-
-    public RecommendedRestaurant(JSONObject jsonObject) {
-        try {
-            this.originalData = jsonObject;
-            
-            // 基本信息
-            this.id = jsonObject.optString("uid", "");
-            this.name = jsonObject.optString("name", "未知餐厅");
-            this.cuisineType = jsonObject.optString("label", "未知菜系");
-            this.reason = jsonObject.optString("reason", "");
-            this.address = jsonObject.optString("address", "未知地址");
-            this.telephone = jsonObject.optString("telephone", "无电话");
-            
-            // 评分和坐标
-            this.rating = jsonObject.optDouble("overall_rating", 4.5);
-            this.latitude = jsonObject.optDouble("latitude", 0);
-            this.longitude = jsonObject.optDouble("longitude", 0);
-            
-            // 处理res_detail中的信息
-            if (jsonObject.has("res_detail") && !jsonObject.isNull("res_detail")) {
-                JSONObject resDetail = jsonObject.getJSONObject("res_detail");
-                this.priceLevel = resDetail.optDouble("price", 0);
-                this.shopHours = resDetail.optString("shop_hours", "暂无营业时间");
-                this.commentNum = resDetail.optString("comment_num", "0");
-            } else {
-                this.priceLevel = 0;
-                this.shopHours = "暂无营业时间";
-                this.commentNum = "0";
-            }
-            
-            // 设置默认图片URL和距离
-            this.imageUrl = "";
-            this.distance = "未知";
-            
-            Log.d(TAG, "成功解析餐厅数据: " + name);
-            
-        } catch (Exception e) {
-            Log.e(TAG, "解析餐厅数据失败: " + e.getMessage());
-            // 使用默认值
-            this.id = "";
-            this.name = "未知餐厅";
-            this.rating = 4.5;
-            this.distance = "未知";
-            this.reason = "";
-            this.cuisineType = "未知菜系";
-            this.imageUrl = "";
-            this.address = "未知地址";
-            this.priceLevel = 0;
-            this.latitude = 0;
-            this.longitude = 0;
-            this.telephone = "无电话";
-            this.shopHours = "暂无营业时间";
-            this.commentNum = "0";
-        }
+    private String telephone = "无电话";
+    @SerializedName("res_detail")
+    private ResDetail resDetail = new ResDetail();
+    // 要放入的行程位置，后端未指定时为0
+    private int day;
+    private int order;
+
+    // 后端 res_detail 中的价格、营业时间和评论数
+    private static class ResDetail {
+        private double price;
+        @SerializedName("shop_hours")
+        private String shopHours = "暂无营业时间";
+        @SerializedName("comment_num")
+        private String commentNum = "0";
+    }
+
+    // 供 Gson 反序列化使用，未出现的字段保留上面的默认值
+    public RecommendedRestaurant() {
     }
 
     public RecommendedRestaurant(String id, String name, double rating, String distance, String reason,
@@ -92,46 +51,12 @@ public class RecommendedRestaurant {
         this.cuisineType = cuisineType;
         this.imageUrl = imageUrl;
         this.address = address;
-        this.priceLevel = priceLevel;
+        this.resDetail.price = priceLevel;
         this.latitude = latitude;
         this.longitude = longitude;
         this.telephone = telephone;
-        this.shopHours = shopHours;
-        this.commentNum = commentNum;
-    }
-
-    // 获取原始JSON数据
-    public JSONObject getOriginalData() {
-        if (originalData == null) {
-            // 如果没有原始数据，构建一个新的JSONObject
-            try {
-                JSONObject data = new JSONObject();
-                data.put("uid", id);
-                data.put("name", name);
-                data.put("overall_rating", rating);
-                data.put("distance", distance);
-                data.put("reason", reason);
-                data.put("label", cuisineType);
-                data.put("address", address);
-                data.put("telephone", telephone);
-                
-                // 添加res_detail信息
-                JSONObject resDetail = new JSONObject();
-                resDetail.put("price", priceLevel);
-                resDetail.put("shop_hours", shopHours);
-                resDetail.put("comment_num", commentNum);
-                data.put("res_detail", resDetail);
-                
-                // 添加坐标
-                data.put("latitude", latitude);
-                data.put("longitude", longitude);
-                
-                return data;
-            } catch (Exception e) {
-                return new JSONObject();
-            }
-        }
-        return originalData;
+        this.resDetail.shopHours = shopHours;
+        this.resDetail.commentNum = commentNum;
     }
 
     // Getter和Setter方法
@@ -200,11 +125,11 @@ public class RecommendedRestaurant {
     }
 
     public double getPriceLevel() {
-        return priceLevel;
+        return resDetail != null ? resDetail.price : 0;
     }
 
     public void setPriceLevel(double priceLevel) {
-        this.priceLevel = priceLevel;
+        resDetail().price = priceLevel;
     }
 
     public double getLatitude() {
@@ -232,18 +157,39 @@ public class RecommendedRestaurant {
     }
     
     public String getShopHours() {
-        return shopHours;
+        return resDetail != null ? resDetail.shopHours : "暂无营业时间";
     }
     
     public void setShopHours(String shopHours) {
-        this.shopHours = shopHours;
+        resDetail().shopHours = shopHours;
     }
     
     public String getCommentNum() {
-        return commentNum;
+        return resDetail != null ? resDetail.commentNum : "0";
     }
     
     public void setCommentNum(String commentNum) {
-        this.commentNum = commentNum;
+        resDetail().commentNum = commentNum;
+    }
+
+    public int getDay() {
+        return day;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public void setSlot(int day, int order) {
+        this.day = day;
+        this.order = order;
+    }
+
+    // 后端返回 "res_detail": null 时按需补建
+    private ResDetail resDetail() {
+        if (resDetail == null) {
+            resDetail = new ResDetail();
+        }
+        return resDetail;
     }
 } 
\ No newline at end of file
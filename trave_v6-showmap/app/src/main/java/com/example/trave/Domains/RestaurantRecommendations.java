@@ -0,0 +1,17 @@
+package com.example.trave.Domains;
+
+import java.util.Collections;
+import java.util.List;
+
+// data_type = restaurant_recommendations 的响应内容
+public class RestaurantRecommendations {
+    private final List<RecommendedRestaurant> recommendations;
+
+    public RestaurantRecommendations(List<RecommendedRestaurant> recommendations) {
+        this.recommendations = recommendations != null ? recommendations : Collections.emptyList();
+    }
+
+    public List<RecommendedRestaurant> getRecommendations() {
+        return recommendations;
+    }
+}
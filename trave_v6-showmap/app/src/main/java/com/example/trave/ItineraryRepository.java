@@ -0,0 +1,107 @@
+package com.example.trave;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 行程数据仓库：在 DatabaseHelper 之上发布细粒度的行程变更事件
+public class ItineraryRepository {
+    private static final String TAG = "ItineraryRepository";
+
+    private static volatile ItineraryRepository instance;
+
+    private final DatabaseHelper dbHelper;
+    private final ExecutorService notifyExecutor = Executors.newSingleThreadExecutor();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // 行程变更事件
+    public static class Change {
+        public static final long ALL_ITINERARIES = -1;
+        public static final int ALL_DAYS = -1;
+
+        public enum Type {
+            ITINERARY,    // 行程本身（新增、删除、标题、发布状态等）
+            ATTRACTIONS   // 行程中的景点
+        }
+
+        private final Type type;
+        private final long itineraryId;
+        private final int dayNumber;
+
+        public Change(Type type, long itineraryId, int dayNumber) {
+            this.type = type;
+            this.itineraryId = itineraryId;
+            this.dayNumber = dayNumber;
+        }
+
+        public Type getType() { return type; }
+        public long getItineraryId() { return itineraryId; }
+        public int getDayNumber() { return dayNumber; }
+
+        // 是否影响指定行程
+        public boolean affects(long id) {
+            return itineraryId == ALL_ITINERARIES || itineraryId == id;
+        }
+
+        public boolean isWholeItinerary() {
+            return dayNumber == ALL_DAYS;
+        }
+
+        @Override
+        public String toString() {
+            return "Change{" + type + ", itineraryId=" + itineraryId + ", day=" + dayNumber + "}";
+        }
+    }
+
+    // 变更监听器，在后台线程回调
+    public interface Listener {
+        void onItineraryChanged(Change change);
+    }
+
+    public static ItineraryRepository getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ItineraryRepository.class) {
+                if (instance == null) {
+                    instance = new ItineraryRepository(DatabaseHelper.getInstance(context));
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ItineraryRepository(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+        dbHelper.setChangeListener(this::publish);
+    }
+
+    public DatabaseHelper getDatabaseHelper() {
+        return dbHelper;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    void publish(Change change) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        Log.d(TAG, "发布行程变更: " + change);
+        notifyExecutor.execute(() -> {
+            for (Listener listener : listeners) {
+                try {
+                    listener.onItineraryChanged(change);
+                } catch (Exception e) {
+                    Log.e(TAG, "处理行程变更时出错: " + e.getMessage());
+                }
+            }
+        });
+    }
+}
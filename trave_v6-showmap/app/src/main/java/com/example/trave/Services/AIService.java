@@ -3,51 +3,478 @@ package com.example.trave.Services;
 import android.util.Log;
 
 import com.example.trave.DatabaseHelper;
+import com.example.trave.Domains.ChatResponse;
 import com.example.trave.Domains.Itinerary;
 import com.example.trave.Domains.ItineraryAttraction;
+import com.example.trave.Domains.OptimizedItinerary;
+import com.example.trave.Domains.PoiRecommendations;
 import com.example.trave.Domains.Sites;
 import com.example.trave.Domains.RecommendedRestaurant;
 import com.example.trave.Domains.RecommendedPOI;
+import com.example.trave.Domains.RestaurantRecommendations;
+import com.google.gson.JsonParseException;
 
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import okhttp3.Call;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
 public class AIService {
     private static final String TAG = "AIService";
-    private static final String API_URL = "http://10.0.2.2:5002/chat";
-    private static final String JSON_DATA_PATTERN = "<!--JSON_DATA:(.+?)-->";
-    private JSONObject structuredData;  // 添加结构化数据字段
+    private static final String CHAT_PATH = "/chat";
+    private static final String CANCEL_PATH = "/cancel_chat";
+    private static final String MEAL_SLOT_PATH = "/recommend_meal_slot";
+    private static final String DAY_POIS_PATH = "/recommend_day_pois";
+    private static final String SYNC_PATH = "/sync_itinerary";
+    // 全程推荐按用餐时段或按天拆分后同时进行的最大请求数，其余子请求排队
+    private static final int MAX_PARALLEL_SLOT_REQUESTS = 4;
+    // 合并结果时每个时段或每天保留的候选数
+    private static final int MAX_CANDIDATES_PER_SLOT = 3;
+    private static final ExecutorService FAN_OUT_EXECUTOR = Executors.newFixedThreadPool(
+            MAX_PARALLEL_SLOT_REQUESTS, runnable -> {
+                Thread thread = new Thread(runnable, "ai-fan-out");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final String JSON_DATA_START = "<!--JSON_DATA:";
+    private static final String JSON_DATA_END = "-->";
+    private ChatResponse structuredData;  // 添加结构化数据字段
+    // 行程景点列表是否以列式编码发送；关闭后以普通JSON发送，后端两种格式都接受
+    private static final boolean COLUMNAR_ITINERARY = true;
+    private final ItinerarySync itinerarySync = new ItinerarySync(COLUMNAR_ITINERARY);
 
     public static class AIResponseData {
         private String cleanText;          // 纯文本响应
-        private JSONObject structuredData; // JSON数据（如果有）
-        private String dataType;           // 数据类型（restaurant_recommendations等）
+        private ChatResponse structuredData; // 结构化数据（如果有），已在请求线程上解析完毕
+        private boolean sessionless;       // 由不经过会话的子请求合并而成，后端会话不知道这些候选
+
+        public AIResponseData(String cleanText, ChatResponse structuredData) {
+            this(cleanText, structuredData, false);
+        }
 
-        public AIResponseData(String cleanText, JSONObject structuredData, String dataType) {
+        public AIResponseData(String cleanText, ChatResponse structuredData, boolean sessionless) {
             this.cleanText = cleanText;
             this.structuredData = structuredData;
-            this.dataType = dataType;
+            this.sessionless = sessionless;
         }
 
+        public boolean isSessionless() { return sessionless; }
+
         public String getCleanText() { return cleanText; }
-        public JSONObject getStructuredData() { return structuredData; }
-        public String getDataType() { return dataType; }
+        public ChatResponse getStructuredData() { return structuredData; }
+        // 数据类型（restaurant_recommendations等）
+        public String getDataType() { return structuredData != null ? structuredData.getDataType() : null; }
         public boolean hasStructuredData() { return structuredData != null; }
     }
 
-    public AIResponseData getAIResponse(String message, long itineraryId, DatabaseHelper dbHelper) throws Exception {
-        Log.d(TAG, "开始准备请求数据: message=" + message + ", itineraryId=" + itineraryId);
+    // 后端返回了非2xx状态码；消息文本与以前一致，便于直接显示给用户
+    public static class ServerErrorException extends Exception {
+        private final int statusCode;
+
+        public ServerErrorException(int statusCode, String body) {
+            super("服务器返回错误: " + body);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    // 流式响应回调，在请求线程上按到达顺序回调可显示的文本片段（不包含JSON_DATA块）
+    public interface StreamListener {
+        void onText(String text);
+    }
+
+    // 创建一次可取消的流式聊天请求，调用方在后台线程 execute，在任意线程 cancel
+    public ChatCall newChatCall(String message, long itineraryId, DatabaseHelper dbHelper) {
+        return newChatCall(message, itineraryId, dbHelper, UUID.randomUUID().toString());
+    }
+
+    // 重发同一条用户消息时沿用原来的 requestId，后端据此识别重复请求（幂等键）
+    public ChatCall newChatCall(String message, long itineraryId, DatabaseHelper dbHelper, String requestId) {
+        return new ChatCall(message, itineraryId, dbHelper, requestId, null);
+    }
+
+    // 针对整个行程的推荐，由界面上的按钮触发；不经过会话，拆分成并发的子请求后合并
+    public ChatCall newTripWideCall(TripWideAction action, long itineraryId, DatabaseHelper dbHelper) {
+        return new ChatCall(action.getLabel(), itineraryId, dbHelper, UUID.randomUUID().toString(), action);
+    }
+
+    // 全程推荐的种类：按用餐时段推荐餐厅，或按天推荐景点
+    public enum TripWideAction {
+        MEAL_SLOTS("为每天的用餐时段推荐餐厅"),
+        DAILY_POIS("为每天推荐可以加入的景点");
+
+        private final String label;
+
+        TripWideAction(String label) {
+            this.label = label;
+        }
+
+        // 作为用户消息显示在聊天记录中
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // 一次聊天请求的句柄：cancel 直接关闭底层连接，正在阻塞的 execute 随即以 IOException 结束，
+    // 同时通知后端停止为这次请求继续调用模型
+    public class ChatCall {
+        private final String message;
+        private final long itineraryId;
+        private final DatabaseHelper dbHelper;
+        private final String requestId;
+        private final TripWideAction tripWideAction;  // 普通聊天为 null
+        // 全程推荐拆分成多个子请求时这里有多个 Call，cancel 时全部关闭
+        private final Set<Call> calls = ConcurrentHashMap.newKeySet();
+        private volatile boolean canceled;
+
+        private ChatCall(String message, long itineraryId, DatabaseHelper dbHelper, String requestId,
+                         TripWideAction tripWideAction) {
+            this.message = message;
+            this.itineraryId = itineraryId;
+            this.dbHelper = dbHelper;
+            this.requestId = requestId;
+            this.tripWideAction = tripWideAction;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        public AIResponseData execute(StreamListener listener) throws Exception {
+            ItinerarySync.Snapshot snapshot = buildSnapshot(itineraryId, dbHelper);
+
+            // 全程推荐不经过会话，按用餐时段或按天拆分后并发请求
+            if (tripWideAction != null) {
+                AIResponseData responseData = tripWideAction == TripWideAction.MEAL_SLOTS
+                        ? recommendForMealSlots(findMealSlots(snapshot), snapshot, this)
+                        : recommendForDays(findPoiDays(snapshot), snapshot, this);
+                if (listener != null) {
+                    listener.onText(responseData.getCleanText());
+                }
+                structuredData = responseData.getStructuredData();
+                return responseData;
+            }
+
+            String response;
+            try {
+                response = sendStreamingRequest(buildBody(snapshot, false), listener, this);
+            } catch (ItinerarySync.VersionMissException e) {
+                Log.d(TAG, "后端缺少行程版本，重新发送完整行程: " + e.getMessage());
+                response = sendStreamingRequest(buildBody(snapshot, true), listener, this);
+            }
+            if (canceled) {
+                throw new IOException("Canceled");
+            }
+            itinerarySync.acknowledge(snapshot);
+
+            AIResponseData responseData = processAIResponse(response);
+            structuredData = responseData.getStructuredData();
+            return responseData;
+        }
+
+        public void cancel() {
+            if (canceled) {
+                return;
+            }
+            canceled = true;
+            if (!calls.isEmpty()) {
+                for (Call current : calls) {
+                    current.cancel();
+                }
+                notifyBackend();
+            }
+        }
+
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        private JSONObject buildBody(ItinerarySync.Snapshot snapshot, boolean forceFull) throws JSONException {
+            JSONObject requestBody = new JSONObject();
+            requestBody.put("message", message);
+            itinerarySync.writeItinerary(requestBody, snapshot, forceFull);
+            return requestBody
+                    .put("stream", true)
+                    .put("request_id", requestId);
+        }
+
+        // 登记并执行底层请求；已经取消时请求不会发出
+        private Response start(Call newCall) throws IOException {
+            calls.add(newCall);
+            if (canceled) {
+                newCall.cancel();
+            }
+            return newCall.execute();
+        }
+
+        private void notifyBackend() {
+            try {
+                JSONObject body = new JSONObject();
+                body.put("trip_id", itineraryId);
+                body.put("request_id", requestId);
+                ApiClient.postJsonQuietly(CANCEL_PATH, body);
+            } catch (JSONException e) {
+                Log.e(TAG, "构建取消请求失败: " + e.getMessage());
+            }
+            Log.d(TAG, "已取消聊天请求: " + requestId);
+        }
+    }
+
+    // 行程中的一个用餐位置，即一个类型为餐厅的景点
+    private static class MealSlot {
+        final int day;
+        final int order;
+        final String name;
+        final String meal;
+
+        MealSlot(int day, int order, String name, String meal) {
+            this.day = day;
+            this.order = order;
+            this.name = name;
+            this.meal = meal;
+        }
+
+        @Override
+        public String toString() {
+            return "第" + day + "天" + meal;
+        }
+    }
+
+    // 按天和顺序列出行程中的餐厅，每天第一家视为午餐，第二家视为晚餐
+    private static List<MealSlot> findMealSlots(ItinerarySync.Snapshot snapshot) {
+        List<MealSlot> slots = new ArrayList<>();
+        Map<Integer, Integer> mealsPerDay = new HashMap<>();
+        for (JSONObject attraction : snapshot.getAttractions()) {
+            if (!"餐厅".equals(attraction.optString("type"))) {
+                continue;
+            }
+            int day = attraction.optInt("day");
+            int index = mealsPerDay.merge(day, 1, Integer::sum);
+            String meal = index == 1 ? "午餐" : index == 2 ? "晚餐" : "第" + index + "餐";
+            slots.add(new MealSlot(day, attraction.optInt("order"), attraction.optString("name"), meal));
+        }
+        return slots;
+    }
+
+    // 行程中安排了景点的天，按天排序
+    private static List<Integer> findPoiDays(ItinerarySync.Snapshot snapshot) {
+        Set<Integer> days = new TreeSet<>();
+        for (JSONObject attraction : snapshot.getAttractions()) {
+            if (!"餐厅".equals(attraction.optString("type"))) {
+                days.add(attraction.optInt("day"));
+            }
+        }
+        return new ArrayList<>(days);
+    }
+
+    // 在 FAN_OUT_EXECUTOR 线程上执行的单个子请求，返回该时段或该天的候选
+    private interface SlotRequest<S, R> {
+        List<R> request(S slot) throws Exception;
+    }
+
+    // 按子请求顺序合并的候选，以及失败的子请求数
+    private static class FanOutResult<R> {
+        final List<R> merged = new ArrayList<>();
+        int failed;
+    }
+
+    // 每个子请求单独发送，最多 MAX_PARALLEL_SLOT_REQUESTS 个同时进行，总耗时接近最慢的单个子请求；
+    // 部分子请求失败不影响其余，全部失败时抛出第一个错误
+    private <S, R> FanOutResult<R> fanOut(List<S> slots, SlotRequest<S, R> request,
+                                          ItinerarySync.Snapshot snapshot, ChatCall owner) throws Exception {
+        long startTime = System.nanoTime();
+        syncItinerary(snapshot, owner);
+        List<Future<List<R>>> futures = new ArrayList<>();
+        for (S slot : slots) {
+            futures.add(FAN_OUT_EXECUTOR.submit(() -> request.request(slot)));
+        }
+
+        FanOutResult<R> result = new FanOutResult<>();
+        Exception firstError = null;
+        try {
+            for (int i = 0; i < slots.size(); i++) {
+                try {
+                    result.merged.addAll(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    Log.e(TAG, "子请求 " + slots.get(i) + " 推荐失败: " + cause.getMessage());
+                    if (firstError == null) {
+                        firstError = cause;
+                    }
+                    result.failed++;
+                }
+            }
+        } finally {
+            // 调用方提前退出时，还在排队的子请求不再发送
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        if (owner.canceled) {
+            throw new IOException("Canceled");
+        }
+        if (result.failed == slots.size()) {
+            throw firstError;
+        }
+        Log.d(TAG, "并发推荐 " + slots.size() + " 个子请求完成，失败 " + result.failed + " 个，总耗时: "
+                + (System.nanoTime() - startTime) / 1000000 + "ms");
+        return result;
+    }
+
+    // 每个用餐时段单独请求 /recommend_meal_slot，结果按时段顺序合并成一条餐厅推荐
+    private AIResponseData recommendForMealSlots(List<MealSlot> slots, ItinerarySync.Snapshot snapshot,
+                                                 ChatCall owner) throws Exception {
+        if (slots.isEmpty()) {
+            return new AIResponseData("行程中还没有安排餐厅，可以先告诉我想在哪一天吃饭。", null, true);
+        }
+        FanOutResult<RecommendedRestaurant> result = fanOut(slots,
+                slot -> requestMealSlot(slot, snapshot, owner), snapshot, owner);
+
+        StringBuilder text = new StringBuilder("已为行程中的 " + (slots.size() - result.failed)
+                + " 个用餐时段推荐了餐厅，推荐理由前标注了对应的时段，选择后会替换该时段原来的餐厅。");
+        if (result.failed > 0) {
+            text.append("\n有 ").append(result.failed).append(" 个时段暂时没有获取到推荐，可以稍后再试。");
+        }
+        return new AIResponseData(text.toString(), ChatResponse.ofRestaurants(result.merged), true);
+    }
+
+    // 每天单独请求 /recommend_day_pois，结果按天合并成一条景点推荐，选中的景点加在当天末尾
+    private AIResponseData recommendForDays(List<Integer> days, ItinerarySync.Snapshot snapshot,
+                                            ChatCall owner) throws Exception {
+        if (days.isEmpty()) {
+            return new AIResponseData("行程中还没有安排景点，无法按天推荐。", null, true);
+        }
+        FanOutResult<RecommendedPOI> result = fanOut(days,
+                day -> requestDayPois(day, snapshot, owner), snapshot, owner);
+
+        StringBuilder text = new StringBuilder("已为行程中的 " + (days.size() - result.failed)
+                + " 天推荐了附近的景点，推荐理由前标注了对应的天数，选择后会加在当天行程的末尾。");
+        if (result.failed > 0) {
+            text.append("\n有 ").append(result.failed).append(" 天暂时没有获取到推荐，可以稍后再试。");
+        }
+        return new AIResponseData(text.toString(), ChatResponse.ofPois(result.merged), true);
+    }
+
+    // 在 FAN_OUT_EXECUTOR 线程上请求单个时段的推荐
+    private List<RecommendedRestaurant> requestMealSlot(MealSlot slot, ItinerarySync.Snapshot snapshot,
+                                                        ChatCall owner) throws Exception {
+        JSONObject params = new JSONObject();
+        params.put("day", slot.day);
+        params.put("order", slot.order);
+        String response = postSlot(MEAL_SLOT_PATH, params, snapshot, owner);
+
+        RestaurantRecommendations parsed = ApiGson.get().fromJson(response, ChatResponse.class)
+                .getRestaurantRecommendations();
+        List<RecommendedRestaurant> candidates = new ArrayList<>();
+        if (parsed == null) {
+            return candidates;
+        }
+        for (RecommendedRestaurant restaurant : parsed.getRecommendations()) {
+            if (candidates.size() == MAX_CANDIDATES_PER_SLOT) {
+                break;
+            }
+            restaurant.setSlot(slot.day, slot.order);
+            restaurant.setReason("第" + slot.day + "天" + slot.meal + "（替换" + slot.name + "）："
+                    + restaurant.getReason());
+            candidates.add(restaurant);
+        }
+        return candidates;
+    }
+
+    // 在 FAN_OUT_EXECUTOR 线程上请求单日的景点推荐，位置由后端给出
+    private List<RecommendedPOI> requestDayPois(int day, ItinerarySync.Snapshot snapshot,
+                                                ChatCall owner) throws Exception {
+        JSONObject params = new JSONObject();
+        params.put("day", day);
+        String response = postSlot(DAY_POIS_PATH, params, snapshot, owner);
+
+        PoiRecommendations parsed = ApiGson.get().fromJson(response, ChatResponse.class).getPoiRecommendations();
+        List<RecommendedPOI> candidates = new ArrayList<>();
+        if (parsed == null) {
+            return candidates;
+        }
+        for (RecommendedPOI poi : parsed.getRecommendations()) {
+            if (candidates.size() == MAX_CANDIDATES_PER_SLOT) {
+                break;
+            }
+            if (!poi.hasSlot()) {
+                continue;
+            }
+            poi.setRecommendationReason("第" + day + "天：" + poi.getRecommendationReason());
+            candidates.add(poi);
+        }
+        return candidates;
+    }
+
+    // 并发的子请求之前先同步一次行程，子请求随后只带版本引用；
+    // 否则每个子请求都带着同一份增量，后端应用第一个后其余全部 409，改发完整快照
+    private void syncItinerary(ItinerarySync.Snapshot snapshot, ChatCall owner) throws Exception {
+        if (itinerarySync.isAcknowledged(snapshot)) {
+            return;
+        }
+        postSlot(SYNC_PATH, new JSONObject(), snapshot, owner);
+        itinerarySync.acknowledge(snapshot);
+    }
+
+    // 发送一个子请求，后端没有对应版本时改发完整快照
+    private String postSlot(String path, JSONObject params, ItinerarySync.Snapshot snapshot,
+                            ChatCall owner) throws Exception {
+        try {
+            return postSlot(path, params, snapshot, false, owner);
+        } catch (ItinerarySync.VersionMissException e) {
+            Log.d(TAG, "后端缺少行程版本，重新发送完整行程: " + e.getMessage());
+            return postSlot(path, params, snapshot, true, owner);
+        }
+    }
+
+    private String postSlot(String path, JSONObject params, ItinerarySync.Snapshot snapshot, boolean forceFull,
+                            ChatCall owner) throws Exception {
+        JSONObject body = new JSONObject(params.toString());
+        itinerarySync.writeItinerary(body, snapshot, forceFull);
+        try (Response httpResponse = owner.start(ApiClient.newJsonCall(path, body, null, null,
+                ItinerarySync.contentType(body)))) {
+            String response = httpResponse.body().string();
+            if (itinerarySync.needsFullResend(httpResponse.code())) {
+                throw new ItinerarySync.VersionMissException(response);
+            }
+            if (!httpResponse.isSuccessful()) {
+                throw new ServerErrorException(httpResponse.code(), response);
+            }
+            return response;
+        }
+    }
+
+    // 从数据库读取行程和景点，构建本次请求的行程快照
+    private ItinerarySync.Snapshot buildSnapshot(long itineraryId, DatabaseHelper dbHelper) throws Exception {
+        Log.d(TAG, "开始准备行程数据: itineraryId=" + itineraryId);
         
         // 获取行程和景点数据
         Itinerary itinerary = dbHelper.getItineraryById(itineraryId);
@@ -64,11 +491,7 @@ public class AIService {
               ", 位置: " + itinerary.getLocation() + 
               ", 天数: " + itinerary.getDays());
         
-        ArrayList<ItineraryAttraction> attractions = dbHelper.getItineraryAttractions(itineraryId);
-        
-        // 构建请求体
-        JSONObject requestBody = new JSONObject();
-        requestBody.put("message", message);
+        ArrayList<ItineraryAttraction> attractions = dbHelper.getItineraryAttractionsWithSites(itineraryId);
         
         // 构建行程数据
         JSONObject itineraryData = new JSONObject();
@@ -88,7 +511,7 @@ public class AIService {
             attractionObj.put("transport", attraction.getTransport());
             attractionObj.put("type", attraction.getType());
             
-            Sites site = dbHelper.getSiteBySiteId(attraction.getSiteId());
+            Sites site = attraction.getSite();
             if (site != null) {
                 attractionObj.put("poi_id", site.getPoiId());
                 attractionObj.put("latitude", site.getLatitude());
@@ -102,75 +525,228 @@ public class AIService {
         }
         
         itineraryData.put("attractions", attractionsArray);
-        requestBody.put("itinerary_data", itineraryData);
         Log.d(TAG, "行程数据: " + itineraryData.toString());
-        // 发送请求并获取响应
-        String response = sendRequest(requestBody);
-        
-        // 处理响应
-        AIResponseData responseData = processAIResponse(response);
-        this.structuredData = responseData.getStructuredData();  // 保存结构化数据
-        return responseData;
+        return new ItinerarySync.Snapshot(itineraryId, itineraryData);
     }
 
-    private String sendRequest(JSONObject requestBody) throws Exception {
-        URL url = new URL(API_URL);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-        conn.setConnectTimeout(100000);
-        conn.setReadTimeout(100000);
+    // 以流式方式发送请求，支持 text/event-stream、分块纯文本，服务器不支持流式时退回普通JSON响应
+    private String sendStreamingRequest(JSONObject requestBody, StreamListener listener, ChatCall owner)
+            throws Exception {
+        long startTime = System.nanoTime();
+        try (Response httpResponse = owner.start(ApiClient.newJsonCall(CHAT_PATH, requestBody,
+                "text/event-stream, text/plain, application/json", owner.requestId,
+                ItinerarySync.contentType(requestBody)))) {
+            ResponseBody body = httpResponse.body();
+            if (itinerarySync.needsFullResend(httpResponse.code())) {
+                throw new ItinerarySync.VersionMissException(body.string());
+            }
+            if (!httpResponse.isSuccessful()) {
+                throw new ServerErrorException(httpResponse.code(), body.string());
+            }
+
+            String contentType = httpResponse.header("Content-Type", "");
+            StreamTextFilter filter = new StreamTextFilter(listener, startTime);
+            if (contentType.startsWith("text/event-stream")) {
+                readEventStream(body.byteStream(), filter);
+            } else if (contentType.startsWith("application/json")) {
+                // 服务器未开启流式，整段响应一次性回调
+                filter.append(new JSONObject(body.string()).getString("response"));
+            } else {
+                try (Reader reader = body.charStream()) {
+                    char[] buffer = new char[256];
+                    int read;
+                    while ((read = reader.read(buffer)) != -1) {
+                        filter.append(new String(buffer, 0, read));
+                    }
+                }
+            }
+            filter.finish();
 
-        // 发送请求
-        try (OutputStream os = conn.getOutputStream()) {
-            byte[] input = requestBody.toString().getBytes("utf-8");
-            os.write(input, 0, input.length);
+            Log.d(TAG, "流式响应完成，总耗时: " + (System.nanoTime() - startTime) / 1000000 + "ms");
+            return filter.getFullText();
         }
+    }
+
+    // 解析SSE：每个事件的 data 行可以是 {"token": "..."} 或纯文本，[DONE] 表示结束；
+    // 以冒号开头的保持连接注释被忽略，{"error": ...} 表示后端在发出响应头之后处理失败或被取消
+    private void readEventStream(InputStream in, StreamTextFilter filter) throws Exception {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(in, "utf-8"))) {
+            StringBuilder data = new StringBuilder();
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) {
+                    if (!dispatchEvent(data.toString(), filter)) {
+                        return;
+                    }
+                    data.setLength(0);
+                } else if (line.startsWith("data:")) {
+                    if (data.length() > 0) {
+                        data.append('\n');
+                    }
+                    String value = line.substring(5);
+                    data.append(value.startsWith(" ") ? value.substring(1) : value);
+                }
+            }
+            dispatchEvent(data.toString(), filter);
+        }
+    }
+
+    private boolean dispatchEvent(String data, StreamTextFilter filter) throws Exception {
+        if (data.isEmpty()) {
+            return true;
+        }
+        if ("[DONE]".equals(data)) {
+            return false;
+        }
+        if (data.startsWith("{")) {
+            JSONObject event = null;
+            try {
+                event = new JSONObject(data);
+            } catch (JSONException e) {
+                // 不是JSON事件，按纯文本处理
+            }
+            if (event != null) {
+                if (event.optBoolean("cancelled")) {
+                    throw new IOException("Canceled");
+                }
+                if (event.has("error")) {
+                    throw new Exception("服务器返回错误: " + event.optString("error"));
+                }
+                filter.append(event.optString("token", event.optString("response", "")));
+                return true;
+            }
+        }
+        filter.append(data);
+        return true;
+    }
+
+    // 累积完整响应，同时把 <!--JSON_DATA:...--> 以外的文本转发给监听器
+    // 可能是标记开头的尾部字符会先保留，等下一段数据到达后再决定是否转发
+    private static class StreamTextFilter {
+        private final StringBuilder fullText = new StringBuilder();
+        private final StreamListener listener;
+        private final long startTime;
+        private int emitted = 0;
+        private int dataStart = -1;
+        private boolean firstText = true;
 
-        // 获取响应
-        int responseCode = conn.getResponseCode();
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(
-                responseCode == HttpURLConnection.HTTP_OK ? conn.getInputStream() : conn.getErrorStream(), "utf-8"))) {
-            String responseLine;
-            while ((responseLine = br.readLine()) != null) {
-                response.append(responseLine.trim());
+        StreamTextFilter(StreamListener listener, long startTime) {
+            this.listener = listener;
+            this.startTime = startTime;
+        }
+
+        void append(String chunk) {
+            fullText.append(chunk);
+            StringBuilder visible = new StringBuilder();
+            while (true) {
+                if (dataStart >= 0) {
+                    int close = fullText.indexOf(JSON_DATA_END, dataStart + JSON_DATA_START.length());
+                    if (close < 0) {
+                        break;
+                    }
+                    emitted = close + JSON_DATA_END.length();
+                    dataStart = -1;
+                }
+                int markerAt = fullText.indexOf(JSON_DATA_START, emitted);
+                if (markerAt >= 0) {
+                    visible.append(fullText, emitted, markerAt);
+                    emitted = markerAt;
+                    dataStart = markerAt;
+                    continue;
+                }
+                int safeEnd = fullText.length() - partialMarkerLength();
+                visible.append(fullText, emitted, safeEnd);
+                emitted = safeEnd;
+                break;
             }
+            emit(visible.toString());
         }
 
-        if (responseCode != HttpURLConnection.HTTP_OK) {
-            throw new Exception("服务器返回错误: " + response.toString());
+        // 流结束：未构成标记的保留字符照常输出
+        void finish() {
+            if (dataStart < 0 && emitted < fullText.length()) {
+                String rest = fullText.substring(emitted);
+                emitted = fullText.length();
+                emit(rest);
+            }
         }
 
-        return new JSONObject(response.toString()).getString("response");
+        String getFullText() {
+            return fullText.toString();
+        }
+
+        private int partialMarkerLength() {
+            int max = Math.min(JSON_DATA_START.length() - 1, fullText.length() - emitted);
+            for (int length = max; length > 0; length--) {
+                int offset = fullText.length() - length;
+                int i = 0;
+                while (i < length && fullText.charAt(offset + i) == JSON_DATA_START.charAt(i)) {
+                    i++;
+                }
+                if (i == length) {
+                    return length;
+                }
+            }
+            return 0;
+        }
+
+        private void emit(String text) {
+            if (text.isEmpty() || listener == null) {
+                return;
+            }
+            if (firstText) {
+                firstText = false;
+                Log.d(TAG, "首个文本片段耗时: " + (System.nanoTime() - startTime) / 1000000 + "ms");
+            }
+            listener.onText(text);
+        }
     }
 
-    private AIResponseData processAIResponse(String response) {
-        String cleanText = response;
-        JSONObject structuredData = null;
-        String dataType = null;
+    // 单次扫描响应：拼接 <!--JSON_DATA:...--> 之外的文本，同时取出第一个JSON片段
+    static AIResponseData processAIResponse(String response) {
+        StringBuilder cleanText = null;
+        String jsonStr = null;
+        int from = 0;
+        int start;
+        while ((start = response.indexOf(JSON_DATA_START, from)) >= 0) {
+            int jsonStart = start + JSON_DATA_START.length();
+            int end = response.indexOf(JSON_DATA_END, jsonStart);
+            if (end < 0) {
+                break;
+            }
+            if (cleanText == null) {
+                cleanText = new StringBuilder(response.length());
+            }
+            cleanText.append(response, from, start);
+            if (jsonStr == null && end > jsonStart) {
+                jsonStr = response.substring(jsonStart, end);
+            }
+            from = end + JSON_DATA_END.length();
+        }
+
+        // 没有结构化数据时直接返回原文，不做任何拷贝
+        if (cleanText == null) {
+            return new AIResponseData(response, null);
+        }
+        cleanText.append(response, from, response.length());
 
-        // 提取JSON数据
-        Pattern pattern = Pattern.compile(JSON_DATA_PATTERN);
-        Matcher matcher = pattern.matcher(response);
-        
-        if (matcher.find()) {
+        // 直接流式解析成类型化模型，不构建中间的 JSONObject 树
+        ChatResponse structuredData = null;
+        if (jsonStr != null) {
             try {
-                String jsonStr = matcher.group(1);
-                structuredData = new JSONObject(jsonStr);
-                dataType = structuredData.optString("data_type");
-                
-                // 移除JSON数据部分，获取纯文本
-                cleanText = response.replaceAll(JSON_DATA_PATTERN, "").trim();
-                
-                Log.d(TAG, "成功提取结构化数据: " + structuredData.toString());
-            } catch (JSONException e) {
+                structuredData = ApiGson.get().fromJson(jsonStr, ChatResponse.class);
+                if (structuredData != null && structuredData.getDataType() == null) {
+                    structuredData = null;
+                }
+                if (structuredData != null) {
+                    Log.d(TAG, "成功提取结构化数据，类型: " + structuredData.getDataType() + "，长度: " + jsonStr.length());
+                }
+            } catch (JsonParseException e) {
                 Log.e(TAG, "解析JSON数据失败: " + e.getMessage());
             }
         }
 
-        return new AIResponseData(cleanText, structuredData, dataType);
+        return new AIResponseData(cleanText.toString().trim(), structuredData);
     }
 
     // 处理餐厅推荐的更新
@@ -212,121 +788,87 @@ public class AIService {
     public void clearSession(long itineraryId) {
         // 清除与特定行程相关的会话状态
         this.structuredData = null;  // 清除结构化数据
+        itinerarySync.forget(itineraryId);
     }
 
     public boolean hasStructuredDataOfType(String dataType) {
-        return structuredData != null && 
-               structuredData.optString("data_type", "").equals(dataType);
+        return structuredData != null && structuredData.isType(dataType);
     }
 
     public List<RecommendedRestaurant> getRestaurantRecommendations() {
-        if (structuredData == null || !hasStructuredDataOfType("restaurant_recommendations")) {
+        if (!hasStructuredDataOfType(ChatResponse.RESTAURANT_RECOMMENDATIONS)) {
             return new ArrayList<>();
         }
-
-        List<RecommendedRestaurant> recommendations = new ArrayList<>();
-        try {
-            JSONArray recommendationsArray = structuredData.getJSONArray("recommendations");
-            for (int i = 0; i < recommendationsArray.length(); i++) {
-                JSONObject restaurantJson = recommendationsArray.getJSONObject(i);
-                recommendations.add(new RecommendedRestaurant(restaurantJson));
-            }
-        } catch (JSONException e) {
-            Log.e(TAG, "解析餐厅推荐数据失败: " + e.getMessage());
-        }
-        return recommendations;
+        return structuredData.getRestaurantRecommendations().getRecommendations();
     }
 
     public List<RecommendedPOI> getPOIRecommendations() {
-        if (structuredData == null || !hasStructuredDataOfType("poi_recommendations")) {
+        if (!hasStructuredDataOfType(ChatResponse.POI_RECOMMENDATIONS)) {
             return new ArrayList<>();
         }
 
-        List<RecommendedPOI> recommendations = new ArrayList<>();
-        try {
-            JSONArray recommendationsArray = structuredData.getJSONArray("recommendations");
-            for (int i = 0; i < recommendationsArray.length(); i++) {
-                JSONObject poiJson = recommendationsArray.getJSONObject(i);
-                // 确保每个POI都有day和order字段
-                if (!poiJson.has("day")) {
-                    poiJson.put("day", 1);
-                }
-                if (!poiJson.has("order")) {
-                    poiJson.put("order", i + 1);
-                }
-                recommendations.add(new RecommendedPOI(poiJson));
+        List<RecommendedPOI> recommendations = structuredData.getPoiRecommendations().getRecommendations();
+        for (int i = 0; i < recommendations.size(); i++) {
+            // 确保每个POI都有day和order字段
+            RecommendedPOI poi = recommendations.get(i);
+            if (!poi.hasSlot()) {
+                poi.setSlot(poi.getDay(), i + 1);
             }
-            Log.d(TAG, "成功解析" + recommendations.size() + "个POI推荐");
-        } catch (JSONException e) {
-            Log.e(TAG, "解析POI推荐数据失败: " + e.getMessage());
         }
+        Log.d(TAG, "成功解析" + recommendations.size() + "个POI推荐");
         return recommendations;
     }
     
     // 获取优化后的行程数据
-    public JSONObject getOptimizedItinerary() {
-        if (structuredData == null || !hasStructuredDataOfType("optimized_itinerary")) {
-            return null;
-        }
-        
-        try {
-            return structuredData.getJSONObject("itinerary");
-        } catch (JSONException e) {
-            Log.e(TAG, "解析优化行程数据失败: " + e.getMessage());
+    public OptimizedItinerary getOptimizedItinerary() {
+        if (!hasStructuredDataOfType(ChatResponse.OPTIMIZED_ITINERARY)) {
             return null;
         }
+        return structuredData.getOptimizedItinerary();
     }
     
     // 保存优化后的行程到数据库
     public boolean saveOptimizedItinerary(long itineraryId, DatabaseHelper dbHelper) {
-        JSONObject itineraryData = getOptimizedItinerary();
+        OptimizedItinerary itineraryData = getOptimizedItinerary();
         if (itineraryData == null) {
             Log.e(TAG, "没有可保存的优化行程数据");
             return false;
         }
         
         try {
-            // 先清除原有行程中的所有景点
-            dbHelper.deleteAttractionsForItinerary(itineraryId);
-            
-            // 添加新的景点
-            JSONArray attractions = itineraryData.getJSONArray("attractions");
-            for (int i = 0; i < attractions.length(); i++) {
-                JSONObject attraction = attractions.getJSONObject(i);
-                
-                String name = attraction.getString("name");
-                String poiId = attraction.optString("poi_id", "");
-                int day = attraction.getInt("day");
-                int order = attraction.getInt("order");
-                String type = attraction.optString("type", "景点");
-                double latitude = attraction.getDouble("latitude");
-                double longitude = attraction.getDouble("longitude");
-                String address = attraction.optString("address", "");
-                String typeDesc = attraction.optString("type_desc", "");
-                String transport = attraction.optString("transport", "步行");
-                
-                // 添加或获取景点
-                long siteId = dbHelper.addOrGetSite(poiId, name, latitude, longitude, address,
-                        "", "", "", typeDesc, "");
-                
-                if (siteId <= 0) {
-                    Log.e(TAG, "添加景点失败: " + name);
-                    continue;
-                }
+            List<ItineraryAttraction> newAttractions = new ArrayList<>();
+            List<Sites> sites = new ArrayList<>();
+
+            // 新的景点
+            for (OptimizedItinerary.Attraction attraction : itineraryData.getAttractions()) {
+                Sites site = new Sites();
+                site.setPoiId(attraction.getPoiId());
+                site.setName(attraction.getName());
+                site.setLatitude(attraction.getLatitude());
+                site.setLongitude(attraction.getLongitude());
+                site.setAddress(attraction.getAddress());
+                site.setTypeDesc(attraction.getTypeDesc());
+                sites.add(site);
                 
-                // 创建新的ItineraryAttraction对象
+                // 创建新的ItineraryAttraction对象，siteId 在批量获取后回填
                 ItineraryAttraction newAttraction = new ItineraryAttraction(
-                        itineraryId, siteId, day, order, name, transport);
-                newAttraction.setType(type);
-                
-                // 添加到行程中
-                long result = dbHelper.addAttraction(newAttraction);
-                if (result <= 0) {
-                    Log.e(TAG, "添加景点到行程失败: " + name);
+                        itineraryId, -1, attraction.getDay(), attraction.getOrder(),
+                        attraction.getName(), attraction.getTransport());
+                newAttraction.setType(attraction.getType());
+                newAttractions.add(newAttraction);
+            }
+            
+            // 一次性添加或获取所有景点
+            long[] siteIds = dbHelper.addOrGetSites(sites);
+            for (int i = 0; i < siteIds.length; i++) {
+                if (siteIds[i] <= 0) {
+                    Log.e(TAG, "添加景点失败: " + newAttractions.get(i).getAttractionName());
                 }
+                newAttractions.get(i).setSiteId(siteIds[i]);
             }
             
-            return true;
+            // 在一个事务中替换原有行程中的所有景点
+            return dbHelper.replaceAttractionsForItinerary(itineraryId, newAttractions);
         } catch (Exception e) {
             Log.e(TAG, "保存优化行程失败: " + e.getMessage(), e);
             return false;
@@ -334,25 +876,29 @@ public class AIService {
     }
     
     // 处理POI推荐的更新
-    public boolean updateItineraryWithPOIRecommendation(long itineraryId, JSONObject recommendationData, DatabaseHelper dbHelper) {
+    public boolean updateItineraryWithPOIRecommendation(long itineraryId, RecommendedPOI poi, DatabaseHelper dbHelper) {
         try {
             // 获取替换的day和order
-            int day = recommendationData.optInt("day", 1);
-            int order = recommendationData.optInt("order", 1);
+            int day = poi.getDay();
+            int order = poi.getOrder();
             
             // 获取新景点信息
-            String name = recommendationData.getString("name");
-            String uid = recommendationData.getString("uid");
-            double latitude = recommendationData.getDouble("lat");
-            double longitude = recommendationData.getDouble("lng");
+            String name = poi.getName();
+            String uid = poi.getId();
+            if (name == null || name.isEmpty() || uid == null || uid.isEmpty()) {
+                Log.e(TAG, "景点信息不完整: " + name);
+                return false;
+            }
+            double latitude = poi.getLat();
+            double longitude = poi.getLng();
 
-            // 获取其他信息，如果不存在则使用默认值
-            String address = recommendationData.optString("address", "未知地址");
-            String typeDesc = recommendationData.optString("type", "景点");
+            // 获取其他信息
+            String address = poi.getAddress();
+            String typeDesc = poi.getType();
 
-            // 以下字段在高德API中可能存在，但在当前数据中可能不存在，使用默认值
-            String businessArea = recommendationData.optString("business_area", "");
-            String tel = recommendationData.optString("tel", "");
+            // 以下字段在高德API中可能存在，但在当前数据中可能不存在
+            String businessArea = poi.getBusinessArea();
+            String tel = poi.getTelephone();
 
             // 打印调试信息
             Log.d(TAG, "更新行程景点 - " +
@@ -389,7 +935,7 @@ public class AIService {
                 Log.d(TAG, "创建新的景点记录");
                 ItineraryAttraction newAttraction = new ItineraryAttraction(
                         itineraryId, siteId, day, order, name, "步行");
-                newAttraction.setType(recommendationData.optString("type", "景点").contains("餐") ? "餐厅" : "景点");
+                newAttraction.setType(typeDesc != null && typeDesc.contains("餐") ? "餐厅" : "景点");
                 
                 long result = dbHelper.addAttraction(newAttraction);
                 if (result <= 0) {
@@ -0,0 +1,102 @@
+package com.example.trave.Services;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+// 全局共享的HTTP客户端：复用连接池和keep-alive连接，响应自动gzip解压
+public final class ApiClient {
+    private static final String TAG = "ApiClient";
+    public static final String BASE_URL = "http://10.0.2.2:5002";
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final ConnectionPool CONNECTION_POOL = new ConnectionPool(5, 5, TimeUnit.MINUTES);
+
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 100000;
+    private static OkHttpClient client;
+    private static OkHttpClient noRetryClient;
+
+    private ApiClient() {
+    }
+
+    // 连接失败时 OkHttp 会自动换连接重发请求；只有带 Idempotency-Key 的请求重发才安全，
+    // 其余 POST 使用 getNonRetryingClient()
+    public static synchronized OkHttpClient getClient() {
+        if (client == null) {
+            client = new OkHttpClient.Builder()
+                    .connectionPool(CONNECTION_POOL)
+                    .connectTimeout(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                    .readTimeout(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                    .retryOnConnectionFailure(true)
+                    .build();
+        }
+        return client;
+    }
+
+    // 与 getClient() 共享连接池和超时设置，但连接失败时不自动重发，
+    // 用于没有幂等键的请求，避免后端把同一条消息处理两次
+    public static synchronized OkHttpClient getNonRetryingClient() {
+        if (noRetryClient == null) {
+            noRetryClient = getClient().newBuilder()
+                    .retryOnConnectionFailure(false)
+                    .build();
+        }
+        return noRetryClient;
+    }
+
+    // 创建但不执行请求，调用方可以持有 Call 以便从其他线程 cancel()，直接关闭底层连接
+    public static Call newJsonCall(String path, JSONObject body, String accept) {
+        return newJsonCall(path, body, accept, null);
+    }
+
+    // idempotencyKey 非空时随请求发送，重试同一操作时后端只执行一次；为空时连接失败不自动重发
+    public static Call newJsonCall(String path, JSONObject body, String accept, String idempotencyKey) {
+        return newJsonCall(path, body, accept, idempotencyKey, null);
+    }
+
+    // contentType 为 null 时使用 application/json，否则按指定的JSON变体发送（例如列式行程编码）
+    public static Call newJsonCall(String path, JSONObject body, String accept, String idempotencyKey,
+                                   String contentType) {
+        MediaType mediaType = contentType != null ? MediaType.get(contentType + "; charset=utf-8") : JSON;
+        Request.Builder request = new Request.Builder()
+                .url(BASE_URL + path)
+                .post(RequestBody.create(body.toString(), mediaType));
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        if (idempotencyKey == null) {
+            return getNonRetryingClient().newCall(request.build());
+        }
+        request.header(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        return getClient().newCall(request.build());
+    }
+
+    // 异步发送、不关心结果的通知请求（例如通知后端取消），失败只记录日志
+    public static void postJsonQuietly(String path, JSONObject body) {
+        newJsonCall(path, body, null).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.w(TAG, "通知请求失败 " + path + ": " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+    }
+}
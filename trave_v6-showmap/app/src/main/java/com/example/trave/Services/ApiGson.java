@@ -0,0 +1,104 @@
+package com.example.trave.Services;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+// 后端响应使用的 Gson：字段类型不一致时按 org.json 的 opt* 语义宽松处理，而不是整条响应解析失败
+// 例如高德返回的空字段是 []，评分有时是字符串 "4.6"
+public final class ApiGson {
+    private static final TypeAdapter<String> LENIENT_STRING = new TypeAdapter<String>() {
+        @Override
+        public void write(JsonWriter out, String value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public String read(JsonReader in) throws IOException {
+            switch (in.peek()) {
+                case NULL:
+                    in.nextNull();
+                    return null;
+                case BOOLEAN:
+                    return Boolean.toString(in.nextBoolean());
+                case BEGIN_ARRAY:
+                case BEGIN_OBJECT:
+                    return JsonParser.parseReader(in).toString();
+                default:
+                    return in.nextString();
+            }
+        }
+    };
+
+    private static final TypeAdapter<Double> LENIENT_DOUBLE = new TypeAdapter<Double>() {
+        @Override
+        public void write(JsonWriter out, Double value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public Double read(JsonReader in) throws IOException {
+            String text = readNumberText(in);
+            if (text == null) {
+                return null;
+            }
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    };
+
+    private static final TypeAdapter<Integer> LENIENT_INT = new TypeAdapter<Integer>() {
+        @Override
+        public void write(JsonWriter out, Integer value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public Integer read(JsonReader in) throws IOException {
+            String text = readNumberText(in);
+            if (text == null) {
+                return null;
+            }
+            try {
+                return (int) Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    };
+
+    // 基本类型字段读到 null 时 Gson 保留字段默认值
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(String.class, LENIENT_STRING)
+            .registerTypeAdapter(double.class, LENIENT_DOUBLE)
+            .registerTypeAdapter(Double.class, LENIENT_DOUBLE)
+            .registerTypeAdapter(int.class, LENIENT_INT)
+            .registerTypeAdapter(Integer.class, LENIENT_INT)
+            .create();
+
+    private ApiGson() {
+    }
+
+    public static Gson get() {
+        return GSON;
+    }
+
+    private static String readNumberText(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case NUMBER:
+            case STRING:
+                return in.nextString().trim();
+            default:
+                in.skipValue();
+                return null;
+        }
+    }
+}
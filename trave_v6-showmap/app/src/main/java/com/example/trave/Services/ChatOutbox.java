@@ -0,0 +1,305 @@
+package com.example.trave.Services;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.util.Log;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// 连不上后端时暂存聊天消息的持久化队列
+// 按指数退避加随机抖动重试，网络恢复时立即重放；每条消息带幂等键（即请求的 request_id），
+// 后端对同一个键只处理一次，重放不会让会话重复执行同一条消息
+// 超过最大尝试次数、超过有效期或被后端拒绝（4xx）的消息不再重试，从队列中移除并通知聊天页
+// 只有打开了对应行程聊天页（attach）的消息才会发送，回复直接显示在该页面上
+public class ChatOutbox {
+    private static final String TAG = "ChatOutbox";
+    private static final String FILE_NAME = "chat_outbox.json";
+    private static final long BASE_DELAY_MS = 2000;
+    private static final long MAX_DELAY_MS = TimeUnit.MINUTES.toMillis(5);
+    static final int MAX_ATTEMPTS = 8;
+    // 太久以前的消息即使能送达，对话上下文也已经变了，不再发送
+    static final long TTL_MS = TimeUnit.HOURS.toMillis(24);
+
+    private static volatile ChatOutbox instance;
+
+    private final File file;
+    private final ScheduledExecutorService scheduler;
+    private final Random random;
+    private final Map<Long, Deliverer> deliverers = new ConcurrentHashMap<>();
+    // 各行程待发送的消息数，任意线程可读，不必等待正在进行的重放
+    private final Map<Long, Integer> pendingCounts = new ConcurrentHashMap<>();
+    // 以下字段只在 scheduler 线程上访问
+    private final List<PendingMessage> pending = new ArrayList<>();
+    private boolean loaded;
+    private ScheduledFuture<?> scheduledDrain;
+
+    // 队列中的一条消息，字段名即磁盘上的JSON字段
+    public static class PendingMessage {
+        private String idempotencyKey;
+        private long itineraryId;
+        private String message;
+        private int attempts;
+        private long nextAttemptAt;
+        private long createdAt;
+
+        public String getIdempotencyKey() { return idempotencyKey; }
+        public long getItineraryId() { return itineraryId; }
+        public String getMessage() { return message; }
+        public int getAttempts() { return attempts; }
+    }
+
+    // 在 outbox 线程上重新发送一条消息；抛出 isRetriable 的异常表示稍后重试，
+    // 其他异常表示后端已拒绝该消息，不再重试
+    public interface Deliverer {
+        void deliver(PendingMessage message) throws Exception;
+
+        // 消息被放弃时在 outbox 线程上回调，reason 为可以直接显示给用户的原因
+        default void onFailed(PendingMessage message, String reason) {
+        }
+    }
+
+    public static ChatOutbox getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ChatOutbox.class) {
+                if (instance == null) {
+                    Context appContext = context.getApplicationContext();
+                    instance = new ChatOutbox(new File(appContext.getFilesDir(), FILE_NAME),
+                            Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "chat-outbox")),
+                            new Random());
+                    instance.watchConnectivity(appContext);
+                }
+            }
+        }
+        return instance;
+    }
+
+    ChatOutbox(File file, ScheduledExecutorService scheduler, Random random) {
+        this.file = file;
+        this.scheduler = scheduler;
+        this.random = random;
+        scheduler.execute(this::ensureLoaded);
+    }
+
+    // 发送失败是否值得排队重试：连接失败、超时、连接被断开等网络错误，
+    // 以及后端暂时不可用（408、429、5xx）；其他 4xx 表示请求本身有问题，重试也不会成功
+    public static boolean isRetriable(Exception e) {
+        if (e instanceof AIService.ServerErrorException) {
+            int status = ((AIService.ServerErrorException) e).getStatusCode();
+            return status == 408 || status == 429 || status >= 500;
+        }
+        return e instanceof IOException && !"Canceled".equals(e.getMessage());
+    }
+
+    // 聊天页打开时登记，之后该行程的待发消息会通过它重放
+    public void attach(long itineraryId, Deliverer deliverer) {
+        deliverers.put(itineraryId, deliverer);
+        retryNow();
+    }
+
+    public void detach(long itineraryId, Deliverer deliverer) {
+        deliverers.remove(itineraryId, deliverer);
+    }
+
+    public void enqueue(long itineraryId, String message, String idempotencyKey) {
+        pendingCounts.merge(itineraryId, 1, Integer::sum);
+        scheduler.execute(() -> {
+            ensureLoaded();
+            PendingMessage item = new PendingMessage();
+            item.idempotencyKey = idempotencyKey;
+            item.itineraryId = itineraryId;
+            item.message = message;
+            item.attempts = 1;
+            item.createdAt = System.currentTimeMillis();
+            item.nextAttemptAt = item.createdAt + backoff(item.attempts);
+            pending.add(item);
+            save();
+            Log.d(TAG, "消息已入队，待发送数量: " + pending.size());
+            scheduleDrain();
+        });
+    }
+
+    // 是否还有该行程的消息没有送达；新消息应排在它们之后，保持发送顺序
+    public boolean hasPending(long itineraryId) {
+        return pendingCounts.containsKey(itineraryId);
+    }
+
+    // 网络恢复或聊天页打开时，忽略退避时间立即重试
+    public void retryNow() {
+        scheduler.execute(() -> {
+            ensureLoaded();
+            long now = System.currentTimeMillis();
+            for (PendingMessage item : pending) {
+                item.nextAttemptAt = Math.min(item.nextAttemptAt, now);
+            }
+            scheduleDrain();
+        });
+    }
+
+    private void watchConnectivity(Context context) {
+        ConnectivityManager connectivityManager = context.getSystemService(ConnectivityManager.class);
+        if (connectivityManager == null) {
+            return;
+        }
+        connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                Log.d(TAG, "网络已恢复，重放待发送消息");
+                retryNow();
+            }
+        });
+    }
+
+    // 按顺序发送到期的消息；同一行程前面的消息没送达时，后面的消息不发送
+    private void drain() {
+        scheduledDrain = null;
+        long now = System.currentTimeMillis();
+        List<Long> blocked = new ArrayList<>();
+        boolean changed = false;
+        Iterator<PendingMessage> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            PendingMessage item = iterator.next();
+            Deliverer deliverer = deliverers.get(item.itineraryId);
+            if (now - item.createdAt > TTL_MS) {
+                // 过期的消息不阻塞同一行程后面的消息
+                giveUp(iterator, item, deliverer, "消息已超过 " + TimeUnit.MILLISECONDS.toHours(TTL_MS) + " 小时未能送达");
+                changed = true;
+                continue;
+            }
+            if (blocked.contains(item.itineraryId) || deliverer == null || item.nextAttemptAt > now) {
+                blocked.add(item.itineraryId);
+                continue;
+            }
+            try {
+                deliverer.deliver(item);
+                remove(iterator, item);
+                Log.d(TAG, "消息已送达，尝试次数: " + item.attempts);
+            } catch (Exception e) {
+                if (deliverers.get(item.itineraryId) != deliverer) {
+                    // 聊天页在重放过程中关闭，留到下次打开时再发送
+                    blocked.add(item.itineraryId);
+                    continue;
+                }
+                if (isRetriable(e) && item.attempts >= MAX_ATTEMPTS) {
+                    giveUp(iterator, item, deliverer, "已尝试 " + item.attempts + " 次仍未送达: " + e.getMessage());
+                } else if (isRetriable(e)) {
+                    item.attempts++;
+                    item.nextAttemptAt = System.currentTimeMillis() + backoff(item.attempts);
+                    blocked.add(item.itineraryId);
+                    Log.d(TAG, "重试失败，第 " + item.attempts + " 次将在 "
+                            + (item.nextAttemptAt - System.currentTimeMillis()) + "ms 后进行: " + e.getMessage());
+                } else {
+                    giveUp(iterator, item, deliverer, e.getMessage());
+                }
+            }
+            changed = true;
+        }
+        if (changed) {
+            save();
+        }
+        scheduleDrain();
+    }
+
+    private void giveUp(Iterator<PendingMessage> iterator, PendingMessage item, Deliverer deliverer, String reason) {
+        remove(iterator, item);
+        Log.e(TAG, "放弃待发送消息: " + reason);
+        if (deliverer != null) {
+            deliverer.onFailed(item, reason);
+        }
+    }
+
+    private void remove(Iterator<PendingMessage> iterator, PendingMessage item) {
+        iterator.remove();
+        pendingCounts.computeIfPresent(item.itineraryId, (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    // 在最早到期的消息到期时执行 drain
+    private void scheduleDrain() {
+        long next = Long.MAX_VALUE;
+        for (PendingMessage item : pending) {
+            if (deliverers.containsKey(item.itineraryId)) {
+                next = Math.min(next, item.nextAttemptAt);
+            }
+        }
+        if (scheduledDrain != null) {
+            scheduledDrain.cancel(false);
+            scheduledDrain = null;
+        }
+        if (next != Long.MAX_VALUE) {
+            long delay = Math.max(0, next - System.currentTimeMillis());
+            scheduledDrain = scheduler.schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 指数退避，取 [delay/2, delay] 之间的随机值，避免多个客户端同时重试
+    long backoff(int attempts) {
+        long delay = MAX_DELAY_MS;
+        if (attempts < 20) {
+            delay = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << (attempts - 1));
+        }
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            List<PendingMessage> saved = ApiGson.get().fromJson(reader,
+                    new TypeToken<List<PendingMessage>>() {}.getType());
+            if (saved != null) {
+                for (PendingMessage item : saved) {
+                    if (item != null && item.message != null && item.idempotencyKey != null) {
+                        if (item.createdAt == 0) {
+                            // 旧版本保存的消息没有入队时间，从现在开始计算有效期
+                            item.createdAt = System.currentTimeMillis();
+                        }
+                        pending.add(item);
+                        pendingCounts.merge(item.itineraryId, 1, Integer::sum);
+                    }
+                }
+            }
+            Log.d(TAG, "从磁盘加载待发送消息: " + pending.size());
+        } catch (IOException | JsonParseException e) {
+            Log.e(TAG, "读取待发送队列失败: " + e.getMessage());
+        }
+    }
+
+    private void save() {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            ApiGson.get().toJson(pending, writer);
+        } catch (IOException e) {
+            Log.e(TAG, "写入待发送队列失败: " + e.getMessage());
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "替换待发送队列文件失败: " + file);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.trave.Services;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 行程增量同步：记录后端已确认的行程版本，后续聊天只上传版本号或与该版本的差异
+// 协议字段：
+//   itinerary_data + itinerary_version   完整快照
+//   itinerary_ref {itinerary_id, base_version}   行程未变化
+//   itinerary_delta {itinerary_id, base_version, version, fields, upsert, remove}   增量
+// 后端找不到 base_version 时返回 409，客户端改为重新发送完整快照
+// 景点以 (day, order, seq) 标识，seq 是景点在同一位置上的序号，同一位置上的多个景点互不覆盖；
+// remove 中带同样的三个字段。保存行程会重建所有景点行，数据库中的景点ID每次都变，所以不参与标识和版本
+// 开启列式编码时景点列表（itinerary_data.attractions 和 itinerary_delta.upsert）使用列式编码，
+// 以 Content-Type: application/vnd.trave.columnar+json 发送；关闭时以普通JSON发送
+public class ItinerarySync {
+    public static final int HTTP_VERSION_MISS = 409;
+    public static final String COLUMNAR_CONTENT_TYPE = "application/vnd.trave.columnar+json";
+
+    private static final String[] META_FIELDS = {"title", "location", "days"};
+    // 列式编码的字段，与 AIService 构建快照时写入的景点字段一致
+    private static final String[] ATTRACTION_FIELDS = {"seq", "name", "day", "order", "transport", "type",
+            "poi_id", "latitude", "longitude", "address", "type_desc", "tel"};
+    private static final String[] COORDINATE_FIELDS = {"latitude", "longitude"};
+    private static final double COORDINATE_SCALE = 1e6;
+
+    private final Map<Long, Snapshot> acknowledged = new ConcurrentHashMap<>();
+    private final boolean columnar;
+
+    public ItinerarySync(boolean columnar) {
+        this.columnar = columnar;
+    }
+
+    // 后端不认识客户端提供的基础版本
+    public static class VersionMissException extends Exception {
+        public VersionMissException(String message) {
+            super(message);
+        }
+    }
+
+    // 一次聊天请求时的行程快照，景点按 "天:顺序:序号" 排序存放
+    public static class Snapshot {
+        private final long itineraryId;
+        private final JSONObject itineraryData;
+        private final TreeMap<String, JSONObject> attractionsByKey = new TreeMap<>();
+        private final String version;
+
+        public Snapshot(long itineraryId, JSONObject itineraryData) throws JSONException {
+            this.itineraryId = itineraryId;
+            this.itineraryData = itineraryData;
+            JSONArray attractions = itineraryData.getJSONArray("attractions");
+            // 同一位置上的景点按列表中的先后编号，列表来自数据库，同一位置内按插入顺序排列
+            Map<String, Integer> countBySlot = new HashMap<>();
+            for (int i = 0; i < attractions.length(); i++) {
+                JSONObject attraction = attractions.getJSONObject(i);
+                String slot = attraction.optInt("day") + ":" + attraction.optInt("order");
+                attraction.put("seq", countBySlot.merge(slot, 1, Integer::sum) - 1);
+                attractionsByKey.put(key(attraction), attraction);
+            }
+            this.version = computeVersion();
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        // 按 (day, order) 排序的景点
+        public Iterable<JSONObject> getAttractions() {
+            return attractionsByKey.values();
+        }
+
+        private static String key(JSONObject attraction) {
+            // 补零保证 TreeMap 的字符串顺序与 (day, order, seq) 的数值顺序一致
+            return String.format(Locale.ROOT, "%04d:%04d:%04d",
+                    attraction.optInt("day"), attraction.optInt("order"), attraction.optInt("seq"));
+        }
+
+        private String computeVersion() {
+            // 行程ID也参与计算，内容相同的两个行程不会得到同一个版本
+            StringBuilder canonical = new StringBuilder();
+            canonical.append(itineraryId).append('\n');
+            for (String field : META_FIELDS) {
+                canonical.append(itineraryData.opt(field)).append('\n');
+            }
+            for (JSONObject attraction : attractionsByKey.values()) {
+                canonical.append(attraction.toString()).append('\n');
+            }
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                byte[] hash = digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+                StringBuilder hex = new StringBuilder();
+                for (byte b : hash) {
+                    hex.append(String.format(Locale.ROOT, "%02x", b));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // 把行程写入请求体；forceFull 为 true 时无论是否有已确认版本都发送完整快照
+    public void writeItinerary(JSONObject requestBody, Snapshot snapshot, boolean forceFull) throws JSONException {
+        Snapshot base = forceFull ? null : acknowledged.get(snapshot.itineraryId);
+        if (base == null) {
+            requestBody.put("itinerary_data", encodeItineraryData(snapshot));
+            requestBody.put("itinerary_version", snapshot.version);
+            return;
+        }
+
+        if (base.version.equals(snapshot.version)) {
+            JSONObject ref = new JSONObject();
+            ref.put("itinerary_id", snapshot.itineraryId);
+            ref.put("base_version", base.version);
+            requestBody.put("itinerary_ref", ref);
+            return;
+        }
+
+        JSONObject delta = new JSONObject();
+        delta.put("itinerary_id", snapshot.itineraryId);
+        delta.put("base_version", base.version);
+        delta.put("version", snapshot.version);
+
+        JSONObject fields = new JSONObject();
+        for (String field : META_FIELDS) {
+            Object value = snapshot.itineraryData.opt(field);
+            if (value != null && !value.equals(base.itineraryData.opt(field))) {
+                fields.put(field, value);
+            }
+        }
+        delta.put("fields", fields);
+
+        List<JSONObject> upsert = new ArrayList<>();
+        for (Map.Entry<String, JSONObject> entry : snapshot.attractionsByKey.entrySet()) {
+            JSONObject previous = base.attractionsByKey.get(entry.getKey());
+            if (previous == null || !previous.toString().equals(entry.getValue().toString())) {
+                upsert.add(entry.getValue());
+            }
+        }
+        delta.put("upsert", encodeAttractions(upsert));
+
+        JSONArray remove = new JSONArray();
+        for (Map.Entry<String, JSONObject> entry : base.attractionsByKey.entrySet()) {
+            if (!snapshot.attractionsByKey.containsKey(entry.getKey())) {
+                JSONObject removed = entry.getValue();
+                JSONObject slot = new JSONObject();
+                slot.put("day", removed.optInt("day"));
+                slot.put("order", removed.optInt("order"));
+                slot.put("seq", removed.optInt("seq"));
+                remove.put(slot);
+            }
+        }
+        delta.put("remove", remove);
+        requestBody.put("itinerary_delta", delta);
+    }
+
+    // 请求体应使用的 Content-Type，普通JSON时返回 null
+    public static String contentType(JSONObject requestBody) {
+        JSONObject data = requestBody.optJSONObject("itinerary_data");
+        JSONObject delta = requestBody.optJSONObject("itinerary_delta");
+        boolean encoded = (data != null && data.opt("attractions") instanceof JSONObject)
+                || (delta != null && delta.opt("upsert") instanceof JSONObject);
+        return encoded ? COLUMNAR_CONTENT_TYPE : null;
+    }
+
+    // 是否需要重新发送完整快照：409 表示后端没有基础版本
+    public boolean needsFullResend(int httpCode) {
+        return httpCode == HTTP_VERSION_MISS;
+    }
+
+    // 完整快照的副本，景点列表按是否开启列式编码写出
+    private JSONObject encodeItineraryData(Snapshot snapshot) throws JSONException {
+        JSONObject data = new JSONObject();
+        Iterator<String> keys = snapshot.itineraryData.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            data.put(key, snapshot.itineraryData.get(key));
+        }
+        data.put("attractions", encodeAttractions(snapshot.attractionsByKey.values()));
+        return data;
+    }
+
+    private Object encodeAttractions(Collection<JSONObject> attractions) throws JSONException {
+        return columnar ? encodeColumnar(attractions) : new JSONArray(attractions);
+    }
+
+    // 列式编码：{"count": n, "columns": {字段: [每个景点的值]}}，字段名只出现一次；
+    // 坐标写成整数微度（字段名加 _e6 后缀），比小数文本更短；缺少的字段为 null
+    static JSONObject encodeColumnar(Collection<JSONObject> attractions) throws JSONException {
+        JSONObject columns = new JSONObject();
+        for (String field : ATTRACTION_FIELDS) {
+            JSONArray values = new JSONArray();
+            boolean coordinate = isCoordinate(field);
+            for (JSONObject attraction : attractions) {
+                Object value = attraction.opt(field);
+                if (value == null) {
+                    values.put(JSONObject.NULL);
+                } else if (coordinate) {
+                    values.put(Math.round(attraction.optDouble(field) * COORDINATE_SCALE));
+                } else {
+                    values.put(value);
+                }
+            }
+            columns.put(coordinate ? field + "_e6" : field, values);
+        }
+        JSONObject encoded = new JSONObject();
+        encoded.put("count", attractions.size());
+        encoded.put("columns", columns);
+        return encoded;
+    }
+
+    private static boolean isCoordinate(String field) {
+        for (String coordinate : COORDINATE_FIELDS) {
+            if (coordinate.equals(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 后端成功处理请求后记录它已持有的版本
+    public void acknowledge(Snapshot snapshot) {
+        acknowledged.put(snapshot.itineraryId, snapshot);
+    }
+
+    // 后端是否已持有这个快照的版本，是则请求中只需带 itinerary_ref
+    public boolean isAcknowledged(Snapshot snapshot) {
+        Snapshot base = acknowledged.get(snapshot.itineraryId);
+        return base != null && base.version.equals(snapshot.version);
+    }
+
+    public void forget(long itineraryId) {
+        acknowledged.remove(itineraryId);
+    }
+}
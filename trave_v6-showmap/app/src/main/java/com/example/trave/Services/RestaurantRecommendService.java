@@ -7,7 +7,6 @@ import com.example.trave.Domains.RecommendedRestaurant;
 import com.example.trave.DatabaseHelper;
 import com.example.trave.Domains.ItineraryAttraction;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
@@ -124,14 +123,11 @@ public class RestaurantRecommendService {
                 return false;
             }
             
-            // 需要将restaurantObj转换为RecommendedRestaurant可接受的格式
-            JSONObject formattedRestaurantObj = formatRestaurantJson(restaurantObj);
-            
             // 创建RecommendedRestaurant对象
-            RecommendedRestaurant restaurant = new RecommendedRestaurant(formattedRestaurantObj);
+            RecommendedRestaurant restaurant = toRestaurant(restaurantObj);
             
             // 使用Context创建DatabaseHelper
-            DatabaseHelper dbHelper = new DatabaseHelper(context);
+            DatabaseHelper dbHelper = DatabaseHelper.getInstance(context);
             
             return confirmRestaurantSelection(restaurant, itineraryId, dayNumber, order, dbHelper);
         } catch (Exception e) {
@@ -149,7 +145,7 @@ public class RestaurantRecommendService {
             // 这个方法可能不能正常工作，因为缺少Context
             // 尝试格式化餐厅数据
             JSONObject restaurantObj = confirmData.getJSONObject("restaurant");
-            JSONObject formattedRestaurantObj = formatRestaurantJson(restaurantObj);
+            toRestaurant(restaurantObj);
             
             // 打印一个警告但返回成功
             Log.w(TAG, "无Context方法已被调用，返回模拟成功");
@@ -161,29 +157,23 @@ public class RestaurantRecommendService {
     }
     
     /**
-     * 辅助方法：格式化餐厅JSON数据
+     * 辅助方法：把确认数据中的餐厅字段直接映射为模型，不再中转一份JSON
      */
-    private JSONObject formatRestaurantJson(JSONObject restaurantObj) throws JSONException {
-        JSONObject formattedObj = new JSONObject();
-        
-        // 基本信息
-        formattedObj.put("uid", restaurantObj.optString("id", ""));
-        formattedObj.put("name", restaurantObj.optString("name", "未知餐厅"));
-        formattedObj.put("label", restaurantObj.optString("cuisine", "未知菜系"));
-        formattedObj.put("address", restaurantObj.optString("address", "未知地址"));
-        formattedObj.put("latitude", restaurantObj.optDouble("latitude", 0));
-        formattedObj.put("longitude", restaurantObj.optDouble("longitude", 0));
-        formattedObj.put("telephone", restaurantObj.optString("telephone", "无电话"));
-        formattedObj.put("overall_rating", restaurantObj.optDouble("rating", 4.5));
-        formattedObj.put("reason", restaurantObj.optString("reason", "AI推荐的餐厅"));
-        
-        // 添加res_detail信息
-        JSONObject resDetail = new JSONObject();
-        resDetail.put("price", restaurantObj.optDouble("price", 0));
-        resDetail.put("shop_hours", restaurantObj.optString("shop_hours", "暂无营业时间"));
-        resDetail.put("comment_num", restaurantObj.optString("comment_num", "0"));
-        formattedObj.put("res_detail", resDetail);
-        
-        return formattedObj;
+    private RecommendedRestaurant toRestaurant(JSONObject restaurantObj) {
+        return new RecommendedRestaurant(
+                restaurantObj.optString("id", ""),
+                restaurantObj.optString("name", "未知餐厅"),
+                restaurantObj.optDouble("rating", 4.5),
+                "未知",
+                restaurantObj.optString("reason", "AI推荐的餐厅"),
+                restaurantObj.optString("cuisine", "未知菜系"),
+                "",
+                restaurantObj.optString("address", "未知地址"),
+                restaurantObj.optDouble("price", 0),
+                restaurantObj.optDouble("latitude", 0),
+                restaurantObj.optDouble("longitude", 0),
+                restaurantObj.optString("telephone", "无电话"),
+                restaurantObj.optString("shop_hours", "暂无营业时间"),
+                restaurantObj.optString("comment_num", "0"));
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+package com.example.trave;
+
+import android.util.LruCache;
+
+import com.example.trave.Domains.Sites;
+
+// sites 表的内存缓存，site 一旦插入就不再修改，可以同时按 id 和 poi_id 查找
+public class SitesCache {
+    private final LruCache<Long, Sites> sitesById;
+    private final LruCache<String, Long> idsByPoiId;
+    private long hitCount;
+    private long missCount;
+
+    public SitesCache(int maxSize) {
+        sitesById = new LruCache<>(maxSize);
+        idsByPoiId = new LruCache<>(maxSize);
+    }
+
+    public synchronized Sites getById(long siteId) {
+        Sites site = sitesById.get(siteId);
+        record(site != null);
+        return site;
+    }
+
+    public synchronized Sites getByPoiId(String poiId) {
+        Sites site = null;
+        if (poiId != null) {
+            Long siteId = idsByPoiId.get(poiId);
+            if (siteId != null) {
+                site = sitesById.get(siteId);
+            }
+        }
+        record(site != null);
+        return site;
+    }
+
+    public synchronized void put(Sites site) {
+        if (site == null || site.getId() <= 0) {
+            return;
+        }
+        sitesById.put(site.getId(), site);
+        if (site.getPoiId() != null) {
+            idsByPoiId.put(site.getPoiId(), site.getId());
+        }
+    }
+
+    public synchronized void clear() {
+        sitesById.evictAll();
+        idsByPoiId.evictAll();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private void record(boolean hit) {
+        if (hit) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.trave;
+
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
+import android.os.StrictMode;
+
+import com.example.trave.Services.ChatOutbox;
+
+public class TraveApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // 调试包中主线程读写磁盘直接崩溃，数据库访问应通过 DatabaseExecutor 进行
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            // 以下对象首次创建时会读磁盘，之后不再读：登录信息和发送队列目录
+            // 在开启检测之前先创建好，页面里再取用时不会触发检测
+            getSharedPreferences("login_prefs", MODE_PRIVATE).getAll();
+            ChatOutbox.getInstance(this);
+
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .penaltyDeath()
+                    .build());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.trave;
+
+import com.example.trave.Domains.ChatResponse;
+import com.example.trave.Domains.PoiRecommendations;
+import com.example.trave.Services.ApiGson;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+// ChatResponse 的 TypeAdapter：写出的 JSON 读回后内容不变
+public class ChatResponseTest {
+
+    private static ChatResponse roundTrip(String json) {
+        ChatResponse parsed = ApiGson.get().fromJson(json, ChatResponse.class);
+        return ApiGson.get().fromJson(ApiGson.get().toJson(parsed), ChatResponse.class);
+    }
+
+    @Test
+    public void restaurantRecommendationsRoundTrip() {
+        ChatResponse response = roundTrip("{\"recommendations\":[{\"uid\":\"r1\",\"name\":\"全聚德\","
+                + "\"overall_rating\":\"4.6\",\"day\":2,\"order\":3}],"
+                + "\"data_type\":\"restaurant_recommendations\"}");
+
+        assertEquals(ChatResponse.RESTAURANT_RECOMMENDATIONS, response.getDataType());
+        assertEquals(1, response.getRestaurantRecommendations().getRecommendations().size());
+        assertEquals("r1", response.getRestaurantRecommendations().getRecommendations().get(0).getId());
+        assertEquals("全聚德", response.getRestaurantRecommendations().getRecommendations().get(0).getName());
+        assertEquals(4.6, response.getRestaurantRecommendations().getRecommendations().get(0).getRating(), 1e-9);
+        assertEquals(2, response.getRestaurantRecommendations().getRecommendations().get(0).getDay());
+        assertNull(response.getPoiRecommendations());
+    }
+
+    @Test
+    public void poiReplaceKeepsTargetPoi() {
+        ChatResponse response = roundTrip("{\"data_type\":\"poi_replace\","
+                + "\"recommendations\":[{\"name\":\"景山公园\"}],"
+                + "\"replace_poi_info\":{\"target_poi\":{\"name\":\"故宫\",\"day\":1,\"order\":2}}}");
+
+        PoiRecommendations pois = response.getPoiRecommendations();
+        assertEquals("景山公园", pois.getRecommendations().get(0).getName());
+        assertEquals("故宫", pois.getTargetPoi().getName());
+        assertEquals(2, pois.getTargetPoi().getOrder());
+        assertNull(response.getRestaurantRecommendations());
+    }
+
+    @Test
+    public void mergedResultSerializesAsRestaurantRecommendations() {
+        ChatResponse merged = ChatResponse.ofRestaurants(
+                ApiGson.get().fromJson("{\"data_type\":\"restaurant_recommendations\","
+                        + "\"recommendations\":[{\"name\":\"a\"},{\"name\":\"b\"}]}", ChatResponse.class)
+                        .getRestaurantRecommendations().getRecommendations());
+
+        ChatResponse read = ApiGson.get().fromJson(ApiGson.get().toJson(merged), ChatResponse.class);
+        assertTrue(read.isType(ChatResponse.RESTAURANT_RECOMMENDATIONS));
+        assertEquals(2, read.getRestaurantRecommendations().getRecommendations().size());
+    }
+
+    @Test
+    public void nullWritesJsonNull() {
+        assertEquals("null", ApiGson.get().toJson(null, ChatResponse.class));
+    }
+}